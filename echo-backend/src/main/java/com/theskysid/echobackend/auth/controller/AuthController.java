@@ -4,10 +4,13 @@ import com.theskysid.echobackend.auth.dto.request.LoginRequestDTO;
 import com.theskysid.echobackend.auth.dto.request.RegisterRequestDTO;
 import com.theskysid.echobackend.auth.dto.request.SignupOtpRequestDTO;
 import com.theskysid.echobackend.auth.dto.response.LoginResponseDTO;
+import com.theskysid.echobackend.auth.password.PasswordHashingRejectedException;
+import com.theskysid.echobackend.auth.ratelimit.RateLimitExceededException;
 import com.theskysid.echobackend.user.dto.UserDTO;
 import com.theskysid.echobackend.user.entity.User;
 import com.theskysid.echobackend.user.repository.UserRepository;
 import com.theskysid.echobackend.auth.service.AuthenticationService;
+import com.theskysid.echobackend.messaging.service.PresenceBroadcaster;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
@@ -30,6 +33,9 @@ public class AuthController {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private PresenceBroadcaster presenceBroadcaster;
+
     @Value("${app.secure-cookie:false}")
     private boolean secureCookie;
 
@@ -67,19 +73,39 @@ public class AuthController {
             return ResponseEntity.ok()
                     .header(HttpHeaders.SET_COOKIE, responseCookie.toString())
                     .body(signupResponse.getUserDTO());
+        } catch (PasswordHashingRejectedException e) {
+            return busy(e);
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
 
     @PostMapping("/logout")
-    public ResponseEntity<String> logout() {
-        return authenticationService.logout();
+    public ResponseEntity<String> logout(Authentication authentication) {
+        return authenticationService.logout(authentication != null ? authentication.getName() : null);
     }
 
+    // Everyone online, or only the caller's online friends when presence is friend-scoped
     @GetMapping("/getonlineusers")
-    public ResponseEntity<List<String>> getOnlineUsers() {
-        return ResponseEntity.ok(authenticationService.getOnlineUsers());
+    public ResponseEntity<List<String>> getOnlineUsers(Authentication authentication) {
+        if (authentication == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(presenceBroadcaster.onlineUsersVisibleTo(authentication.getName()));
+    }
+
+    @ExceptionHandler(RateLimitExceededException.class)
+    public ResponseEntity<Map<String, String>> rateLimited(RateLimitExceededException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .body(Map.of("error", e.getMessage()));
+    }
+
+    @ExceptionHandler(PasswordHashingRejectedException.class)
+    public ResponseEntity<Map<String, String>> busy(PasswordHashingRejectedException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Map.of("error", e.getMessage()));
     }
 
     @GetMapping("/getcurrentuser")
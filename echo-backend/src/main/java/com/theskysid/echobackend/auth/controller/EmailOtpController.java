@@ -3,6 +3,7 @@ package com.theskysid.echobackend.auth.controller;
 import com.theskysid.echobackend.auth.dto.OtpVerifyDTO;
 import com.theskysid.echobackend.auth.dto.request.OtpRequestDTO;
 import com.theskysid.echobackend.auth.otp.entity.OtpVerification.IdentifierType;
+import com.theskysid.echobackend.auth.ratelimit.RateLimitExceededException;
 import com.theskysid.echobackend.auth.service.EmailOtpService;
 import com.theskysid.echobackend.auth.service.OtpService;
 import com.theskysid.echobackend.auth.dto.response.LoginResponseDTO;
@@ -35,7 +36,7 @@ public class EmailOtpController {
      * POST /auth/email-otp/send
      * Send a 6-digit OTP to the given email address.
      * Creates a new user if one doesn't exist for this email.
-     * Rate limited: max 3 requests per 10 minutes per email.
+     * Rate limited per IP and per email (by default 3 requests, refilled over 10 minutes).
      */
     @PostMapping("/send")
     public ResponseEntity<?> sendOtp(@RequestBody OtpRequestDTO request) {
@@ -43,6 +44,10 @@ public class EmailOtpController {
             String normalizedEmail = IdentifierNormalizer.normalizeEmail(request.getEmail());
             emailOtpService.sendOtp(normalizedEmail);
             return ResponseEntity.ok(Map.of("message", "OTP sent to " + normalizedEmail));
+        } catch (RateLimitExceededException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(Map.of("error", e.getMessage()));
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
                     .body(Map.of("error", e.getMessage()));
@@ -4,6 +4,7 @@ import com.theskysid.echobackend.auth.dto.OtpVerifyDTO;
 import com.theskysid.echobackend.auth.dto.request.OtpRequestDTO;
 import com.theskysid.echobackend.auth.dto.response.LoginResponseDTO;
 import com.theskysid.echobackend.auth.otp.entity.OtpVerification.IdentifierType;
+import com.theskysid.echobackend.auth.ratelimit.RateLimitExceededException;
 import com.theskysid.echobackend.auth.service.OtpService;
 import com.theskysid.echobackend.auth.service.SmsOtpService;
 import com.theskysid.echobackend.auth.util.IdentifierNormalizer;
@@ -35,7 +36,7 @@ public class PhoneOtpController {
      * POST /auth/phone-otp/send
      * Send a 6-digit OTP via SMS to the given phone number.
      * Creates a new user if one doesn't exist for this phone.
-     * Rate limited: max 3 requests per 10 minutes per phone.
+     * Rate limited per IP and per phone (by default 3 requests, refilled over 10 minutes).
      */
     @PostMapping("/send")
     public ResponseEntity<?> sendOtp(@RequestBody OtpRequestDTO request) {
@@ -43,6 +44,10 @@ public class PhoneOtpController {
             String normalizedPhone = IdentifierNormalizer.normalizePhone(request.getPhone());
             smsOtpService.sendOtp(normalizedPhone);
             return ResponseEntity.ok(Map.of("message", "OTP sent to " + normalizedPhone));
+        } catch (RateLimitExceededException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(Map.of("error", e.getMessage()));
         } catch (RuntimeException e) {
             return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
                     .body(Map.of("error", e.getMessage()));
@@ -1,12 +1,14 @@
 package com.theskysid.echobackend.auth.jwt;
 
-import com.theskysid.echobackend.user.repository.UserRepository;
+import com.theskysid.echobackend.auth.service.TokenEpochService;
+import com.theskysid.echobackend.user.service.UserIdentityCache;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
@@ -22,7 +24,14 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private JwtService jwtService;
 
     @Autowired
-    private UserRepository userRepository;
+    private UserIdentityCache userIdentityCache;
+
+    @Autowired
+    private TokenEpochService tokenEpochService;
+
+    // Trust the signed claims (checked against the revocation epoch) instead of loading the user
+    @Value("${auth.stateless:false}")
+    private boolean stateless;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
@@ -56,14 +65,27 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         try {
-            userId = jwtService.extractUserId(jwtToken);
+            // Signature and expiry are checked once here; repeat tokens come from JwtService's cache
+            var verified = jwtService.verify(jwtToken).orElse(null);
+            userId = verified != null ? verified.userId() : null;
+
+            // Revocation (logout, rename, unlink) applies in both modes; the check is in memory
+            if (userId != null && tokenEpochService.isRevoked(userId, verified.epoch())) {
+                userId = null;
+            }
 
             if (userId != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                var userDetails = userRepository.findById(userId).orElse(null);
+                String username = null;
+                if (stateless) {
+                    username = verified.username();
+                } else {
+                    var userDetails = userIdentityCache.findById(userId).orElse(null);
+                    username = userDetails != null ? userDetails.getUsername() : null;
+                }
 
-                if (userDetails != null && jwtService.isTokenValid(jwtToken, userDetails)) {
+                if (username != null) {
                     UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                            userDetails.getUsername(), null, Collections.emptyList());
+                            username, null, Collections.emptyList());
 
                     authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
 
@@ -1,52 +1,127 @@
 package com.theskysid.echobackend.auth.jwt;
 
+import com.theskysid.echobackend.auth.service.TokenEpochService;
 import com.theskysid.echobackend.user.entity.User;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.security.Keys;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Service
 public class JwtService {
 
+    private static final String EPOCH_CLAIM = "epoch";
+
+    @Autowired
+    private TokenEpochService tokenEpochService;
+
     @Value("${jwt.secret}")
     private String secretKey;
 
     @Value("${jwt.expiration}")
     private Long jwtexpiration;
 
-    // Method to Extract the user Id
-    public Long extractUserId(String jwtToken) {
+    @Value("${jwt.cache.max-size:10000}")
+    private int cacheMaxSize;
+
+    private SecretKey signInKey;
+    private JwtParser parser;
 
-        String userIdStr = extractClaim(jwtToken, claims -> claims.get("userId", String.class));
+    // Verified tokens by SHA-256 digest (the raw bearer token is never kept). Lookups take no lock;
+    // expired entries are swept, and past max-size those expiring soonest go first.
+    private final Map<String, VerifiedToken> verifiedTokens = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean();
 
-        return userIdStr != null ? Long.parseLong(userIdStr) : null;
+    /**
+     * Claims of a token whose signature has been checked. Immutable; the expiry still has to be
+     * compared against the clock on each use. Tokens issued before epochs existed have epoch 0.
+     */
+    public record VerifiedToken(Long userId, String username, long epoch, Instant expiresAt) {
+
+        public boolean isExpired(Instant now) {
+            return expiresAt == null || !expiresAt.isAfter(now);
+        }
     }
 
-    // Method to Extract the username
-    public String extractUsername(String jwtToken) {
-        return extractClaim(jwtToken, Claims::getSubject);
+    @PostConstruct
+    public void init() {
+        signInKey = Keys.hmacShaKeyFor(secretKey.getBytes());
+        parser = Jwts.parser().verifyWith(signInKey).build();
+    }
+
+    /**
+     * Verify a token's signature and expiry. The first call parses it once; later calls for the
+     * same token are answered from the cache until it expires. Empty for invalid or expired tokens.
+     */
+    public Optional<VerifiedToken> verify(String jwtToken) {
+        Instant now = Instant.now();
+        String digest = digest(jwtToken);
+        VerifiedToken cached = verifiedTokens.get(digest);
+        if (cached != null) {
+            if (!cached.isExpired(now)) {
+                return Optional.of(cached);
+            }
+            verifiedTokens.remove(digest, cached);
+            return Optional.empty();
+        }
+
+        VerifiedToken verified;
+        try {
+            verified = toVerifiedToken(parser.parseSignedClaims(jwtToken).getPayload());
+        } catch (JwtException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        if (verified.userId() == null || verified.isExpired(now)) {
+            return Optional.empty();
+        }
+        verifiedTokens.put(digest, verified);
+        if (verifiedTokens.size() > cacheMaxSize) {
+            evictSoonestExpiring();
+        }
+        return Optional.of(verified);
     }
 
-    private <T> T extractClaim(String jwtToken, Function<Claims, T> claimResolver) {
+    /**
+     * Drop cached tokens that have expired.
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void evictExpired() {
+        Instant now = Instant.now();
+        verifiedTokens.values().removeIf(token -> token.isExpired(now));
+    }
 
-        final Claims claims = extractAllClaims(jwtToken);
-        return claimResolver.apply(claims);
+    // Method to Extract the user Id
+    public Long extractUserId(String jwtToken) {
+        return verify(jwtToken).map(VerifiedToken::userId).orElse(null);
     }
 
-    private Claims extractAllClaims(String jwtToken) {
-        return Jwts.parser().verifyWith(getSignInKey()).build().parseSignedClaims(jwtToken).getPayload();
+    // Method to Extract the username
+    public String extractUsername(String jwtToken) {
+        return verify(jwtToken).map(VerifiedToken::username).orElse(null);
     }
 
     public SecretKey getSignInKey() {
-        return Keys.hmacShaKeyFor(secretKey.getBytes());
+        return signInKey;
     }
 
     public String generateToken(User user) {
@@ -58,27 +133,58 @@ public class JwtService {
 
         Map<String, Object> claims = new HashMap(extraClaims);
         claims.put("userId", user.getId().toString());
+        claims.put(EPOCH_CLAIM, tokenEpochService.epochForNewToken(user.getId()));
 
         return Jwts.builder().claims(claims).subject(user.getUsername()).issuedAt(new Date(System.currentTimeMillis()))
                 .expiration(new Date(System.currentTimeMillis() + jwtexpiration)).signWith(getSignInKey()).compact();
     }
 
     public boolean isTokenValid(String jwtToken, User user) {
-
-        final Long UserIdfromToken = extractUserId(jwtToken);
-
-        final Long userIdDetails = user.getId();
-
-        return (UserIdfromToken != null && UserIdfromToken.equals(userIdDetails) && !isTokenExpired(jwtToken));
-
+        return verify(jwtToken)
+                .map(token -> token.userId().equals(user.getId()))
+                .orElse(false);
     }
 
-    private boolean isTokenExpired(String jwtToken) {
-        return extractExpiration(jwtToken).before(new Date());
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    // Trim to 90% of the bound so overflow sweeps stay rare; one thread sweeps, the rest carry on
+    private void evictSoonestExpiring() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            evictExpired();
+            int excess = verifiedTokens.size() - cacheMaxSize * 9 / 10;
+            if (excess <= 0) {
+                return;
+            }
+            verifiedTokens.entrySet().stream()
+                    .sorted(Comparator.comparing(entry -> entry.getValue().expiresAt()))
+                    .limit(excess)
+                    .toList()
+                    .forEach(entry -> verifiedTokens.remove(entry.getKey(), entry.getValue()));
+        } finally {
+            evicting.set(false);
+        }
     }
 
-    private Date extractExpiration(String jwtToken) {
+    private static VerifiedToken toVerifiedToken(Claims claims) {
+        String userIdStr = claims.get("userId", String.class);
+        Number epoch = claims.get(EPOCH_CLAIM, Number.class);
+        Date expiration = claims.getExpiration();
+        return new VerifiedToken(
+                userIdStr != null ? Long.parseLong(userIdStr) : null,
+                claims.getSubject(),
+                epoch != null ? epoch.longValue() : 0,
+                expiration != null ? expiration.toInstant() : null);
+    }
 
-        return extractClaim(jwtToken, Claims::getExpiration);
+    private static String digest(String jwtToken) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(jwtToken.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
 }
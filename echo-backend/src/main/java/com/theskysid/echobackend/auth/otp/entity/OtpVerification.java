@@ -26,6 +26,7 @@ public class OtpVerification {
     @Column(nullable = false)
     private LocalDateTime expiry;
 
+    // Requests in the window starting at windowStart: the limit shared by all nodes (see OtpService)
     @Column(nullable = false)
     private int requestCount;
 
@@ -1,9 +1,22 @@
 package com.theskysid.echobackend.auth.otp.repository;
 
 import com.theskysid.echobackend.auth.otp.entity.OtpVerification;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
 import java.util.Optional;
 
 public interface OtpVerificationRepository extends JpaRepository<OtpVerification, Long> {
     Optional<OtpVerification> findByIdentifierAndType(String identifier, OtpVerification.IdentifierType type);
+
+    /**
+     * The identifier's row, locked until the transaction ends, so every node counts requests against it in turn.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT o FROM OtpVerification o WHERE o.identifier = :identifier AND o.type = :type")
+    Optional<OtpVerification> findForUpdate(@Param("identifier") String identifier,
+                                            @Param("type") OtpVerification.IdentifierType type);
 }
\ No newline at end of file
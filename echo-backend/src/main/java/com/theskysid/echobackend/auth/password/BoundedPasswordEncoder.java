@@ -0,0 +1,141 @@
+package com.theskysid.echobackend.auth.password;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a (BCrypt) PasswordEncoder on its own fixed pool, so a burst of logins or signups cannot take
+ * every CPU from the rest of the server.
+ * <ul>
+ *     <li>At most threads hashes run at once; up to queueCapacity more wait. Beyond that, calls fail
+ *     immediately with {@link PasswordHashingRejectedException} (503) instead of piling up.</li>
+ *     <li>The calling request thread waits for its result, but does no hashing itself.</li>
+ *     <li>echo.password.queue.wait and echo.password.hash{op} record the time spent waiting for and doing
+ *     the work; echo.password.rejected counts shed calls.</li>
+ * </ul>
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder {
+
+    private static final Logger logger = LoggerFactory.getLogger(BoundedPasswordEncoder.class);
+
+    private final PasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final Timer queueWait;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Counter rejected;
+
+    public BoundedPasswordEncoder(PasswordEncoder delegate, int threads, int queueCapacity, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(queueCapacity, 1)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "echo-password-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+
+        this.queueWait = Timer.builder("echo.password.queue.wait")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.encodeTimer = Timer.builder("echo.password.hash")
+                .tag("op", "encode")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.matchesTimer = Timer.builder("echo.password.hash")
+                .tag("op", "matches")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.rejected = meterRegistry.counter("echo.password.rejected");
+        Gauge.builder("echo.password.queue.depth", executor, e -> e.getQueue().size()).register(meterRegistry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run(encodeTimer, () -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run(matchesTimer, () -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    /**
+     * Time one encode on the calling thread and log it, so the configured cost can be checked
+     * against this machine. Call once at startup.
+     */
+    public void logCost(String description) {
+        long start = System.nanoTime();
+        delegate.encode("benchmark-password");
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        logger.info("{}: one hash takes {} ms; {} threads hash at most ~{}/s", description, millis,
+                executor.getMaximumPoolSize(), millis == 0 ? "n/a" : executor.getMaximumPoolSize() * 1000 / millis);
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    private <T> T run(Timer timer, Callable<T> work) {
+        long submittedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                queueWait.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+                return timer.recordCallable(work);
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new PasswordHashingRejectedException();
+        }
+
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    // The hash is already queued; finish waiting and restore the flag
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.theskysid.echobackend.auth.password;
+
+/**
+ * The password hashing pool is saturated; the request should be retried later (HTTP 503).
+ */
+public class PasswordHashingRejectedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PasswordHashingRejectedException() {
+        super("Server is busy. Please try again in a moment.");
+    }
+}
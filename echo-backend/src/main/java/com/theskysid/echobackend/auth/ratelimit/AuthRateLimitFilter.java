@@ -0,0 +1,58 @@
+package com.theskysid.echobackend.auth.ratelimit;
+
+import com.theskysid.echobackend.auth.ratelimit.RateLimiter.Limit;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Per-IP limit on the login, signup and OTP endpoints, applied before the request body is read.
+ * Runs inside the security chain after CORS, so rejected browsers still see the 429.
+ */
+@Component
+public class AuthRateLimitFilter extends OncePerRequestFilter {
+
+    private static final List<String> LIMITED_PREFIXES = List.of(
+            "/auth/login",
+            "/auth/signup",
+            "/auth/email-otp/",
+            "/auth/phone-otp/");
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        if (!"POST".equals(request.getMethod())) {
+            return true;
+        }
+        String path = request.getServletPath();
+        return LIMITED_PREFIXES.stream().noneMatch(path::startsWith);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        try {
+            // server.forward-headers-strategy makes this the client address behind the proxy
+            rateLimiter.acquire(Limit.AUTH_IP, request.getRemoteAddr());
+        } catch (RateLimitExceededException e) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.getWriter().write("{\"error\":\"" + e.getMessage() + "\"}");
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+}
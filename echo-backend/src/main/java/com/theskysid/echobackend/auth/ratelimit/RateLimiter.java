@@ -0,0 +1,176 @@
+package com.theskysid.echobackend.auth.ratelimit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * In-memory token buckets for the unauthenticated and abuse-prone endpoints, checked before any
+ * database, BCrypt or SMTP/SMS work.
+ * <ul>
+ *     <li>Each {@link Limit} allows a burst of capacity requests per key, refilled evenly over its period.</li>
+ *     <li>A bucket is a single AtomicLong holding the time at which it will be full again (GCRA),
+ *     updated with a CAS loop: no locks on the request path.</li>
+ *     <li>Full buckets carry no state, so the sweep drops them. Past rate-limit.max-keys per limit
+ *     the buckets closest to full are dropped, which can only make a key more lenient.</li>
+ *     <li>Buckets are per node and start full after a restart. OTP issuance, the limit that matters
+ *     across nodes, is also counted in the identifier's otp_verifications row (see OtpService).</li>
+ * </ul>
+ */
+@Component
+public class RateLimiter {
+
+    public enum Limit {
+        /** Any request to the login, signup and OTP endpoints, by client IP. */
+        AUTH_IP,
+        /** Password logins, by lower-cased username. */
+        LOGIN_IDENTIFIER,
+        /** OTPs issued, by email or phone. */
+        OTP_IDENTIFIER,
+        /** OTPs requested by a signed-in user to link an email or phone, by user id. */
+        OTP_USER
+    }
+
+    private record Policy(long intervalNanos, long burstNanos) {
+
+        static Policy of(int capacity, Duration period) {
+            long interval = period.toNanos() / Math.max(capacity, 1);
+            return new Policy(interval, interval * (Math.max(capacity, 1) - 1));
+        }
+    }
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${rate-limit.max-keys:100000}")
+    private int maxKeys;
+
+    @Value("${rate-limit.auth-ip.capacity:20}")
+    private int authIpCapacity;
+
+    @Value("${rate-limit.auth-ip.period-seconds:60}")
+    private long authIpPeriodSeconds;
+
+    @Value("${rate-limit.login.capacity:10}")
+    private int loginCapacity;
+
+    @Value("${rate-limit.login.period-seconds:300}")
+    private long loginPeriodSeconds;
+
+    @Value("${otp.rate-limit.max-requests:3}")
+    private int otpCapacity;
+
+    @Value("${otp.rate-limit.window-minutes:10}")
+    private long otpWindowMinutes;
+
+    @Value("${rate-limit.otp-user.capacity:5}")
+    private int otpUserCapacity;
+
+    @Value("${rate-limit.otp-user.period-seconds:600}")
+    private long otpUserPeriodSeconds;
+
+    private final Map<Limit, Policy> policies = new EnumMap<>(Limit.class);
+    private final Map<Limit, Map<String, AtomicLong>> buckets = new EnumMap<>(Limit.class);
+    private final Map<Limit, Counter> rejections = new EnumMap<>(Limit.class);
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    // Monotonic nanoseconds; replaced in tests
+    private LongSupplier nanoClock = System::nanoTime;
+
+    @PostConstruct
+    public void init() {
+        policies.put(Limit.AUTH_IP, Policy.of(authIpCapacity, Duration.ofSeconds(authIpPeriodSeconds)));
+        policies.put(Limit.LOGIN_IDENTIFIER, Policy.of(loginCapacity, Duration.ofSeconds(loginPeriodSeconds)));
+        policies.put(Limit.OTP_IDENTIFIER, Policy.of(otpCapacity, Duration.ofMinutes(otpWindowMinutes)));
+        policies.put(Limit.OTP_USER, Policy.of(otpUserCapacity, Duration.ofSeconds(otpUserPeriodSeconds)));
+        for (Limit limit : Limit.values()) {
+            Map<String, AtomicLong> map = new ConcurrentHashMap<>();
+            buckets.put(limit, map);
+            String tag = limit.name().toLowerCase(Locale.ROOT);
+            rejections.put(limit, meterRegistry.counter("echo.rate-limit.rejected", "limit", tag));
+            Gauge.builder("echo.rate-limit.keys", map, Map::size).tag("limit", tag).register(meterRegistry);
+        }
+    }
+
+    /**
+     * Take one token from the key's bucket, or throw {@link RateLimitExceededException} with the time
+     * until one is available. Null keys are not limited.
+     */
+    public void acquire(Limit limit, String key) {
+        if (key == null) {
+            return;
+        }
+        Policy policy = policies.get(limit);
+        Map<String, AtomicLong> map = buckets.get(limit);
+        long now = nanoClock.getAsLong();
+
+        AtomicLong fullAt = map.get(key);
+        if (fullAt == null) {
+            fullAt = map.computeIfAbsent(key, ignored -> new AtomicLong(now));
+            if (map.size() > maxKeys) {
+                evictClosestToFull(limit, now);
+            }
+        }
+        while (true) {
+            long current = fullAt.get();
+            long start = Math.max(current, now);
+            long wait = start - now - policy.burstNanos();
+            if (wait > 0) {
+                rejections.get(limit).increment();
+                throw new RateLimitExceededException(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + 999_999_999)));
+            }
+            if (fullAt.compareAndSet(current, start + policy.intervalNanos())) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drop buckets that have refilled completely.
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void evictFull() {
+        long now = nanoClock.getAsLong();
+        buckets.values().forEach(map -> map.values().removeIf(fullAt -> fullAt.get() - now <= 0));
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    // Trim to 90% of the bound so overflow sweeps stay rare
+    private void evictClosestToFull(Limit limit, long now) {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            Map<String, AtomicLong> map = buckets.get(limit);
+            map.values().removeIf(fullAt -> fullAt.get() - now <= 0);
+            int excess = map.size() - maxKeys * 9 / 10;
+            if (excess <= 0) {
+                return;
+            }
+            map.entrySet().stream()
+                    .sorted(Comparator.comparingLong(entry -> entry.getValue().get() - now))
+                    .limit(excess)
+                    .toList()
+                    .forEach(entry -> map.remove(entry.getKey(), entry.getValue()));
+        } finally {
+            evicting.set(false);
+        }
+    }
+}
@@ -5,14 +5,21 @@ import com.theskysid.echobackend.auth.dto.request.RegisterRequestDTO;
 import com.theskysid.echobackend.auth.dto.request.SignupOtpRequestDTO;
 import com.theskysid.echobackend.auth.dto.response.LoginResponseDTO;
 import com.theskysid.echobackend.auth.otp.entity.OtpVerification.IdentifierType;
+import com.theskysid.echobackend.auth.ratelimit.RateLimiter;
+import com.theskysid.echobackend.auth.ratelimit.RateLimiter.Limit;
 import com.theskysid.echobackend.auth.util.IdentifierNormalizer;
 import com.theskysid.echobackend.user.dto.UserDTO;
 import com.theskysid.echobackend.auth.jwt.JwtService;
 import com.theskysid.echobackend.user.entity.AuthProvider;
 import com.theskysid.echobackend.user.entity.User;
 import com.theskysid.echobackend.user.repository.UserRepository;
+import com.theskysid.echobackend.user.service.UserIdentityCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseCookie;
 import org.springframework.http.ResponseEntity;
@@ -20,16 +27,25 @@ import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
-import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
 
 @Service
 public class AuthenticationService {
 
+    private static final Logger logger = LoggerFactory.getLogger(AuthenticationService.class);
+
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserIdentityCache userIdentityCache;
+
+    @Autowired
+    private TokenEpochService tokenEpochService;
+
     @Autowired
     private PasswordEncoder passwordEncoder;
 
@@ -40,10 +56,10 @@ public class AuthenticationService {
     private JwtService jwtService;
 
     @Autowired
-    private OnlineUserService onlineUserService;
+    private OtpService otpService;
 
     @Autowired
-    private OtpService otpService;
+    private RateLimiter rateLimiter;
 
     @Value("${app.secure-cookie:true}")
     private boolean secureCookie;
@@ -72,11 +88,15 @@ public class AuthenticationService {
         user.setPassword(passwordEncoder.encode(registerRequestDTO.getPassword()));
         user.setEmail(email);
         user.setAuthProvider(AuthProvider.EMAIL);
-        return convertToUserDTO(userRepository.save(user));
+        User saved = userRepository.save(user);
+        userIdentityCache.invalidate(saved.getId());
+        return convertToUserDTO(saved);
     }
 
     public LoginResponseDTO login(LoginRequestDTO loginRequestDTO) {
         String username = IdentifierNormalizer.normalizeUsername(loginRequestDTO.getUsername());
+        // Before BCrypt: password guessing against one account is capped whatever IPs it comes from
+        rateLimiter.acquire(Limit.LOGIN_IDENTIFIER, username != null ? username.toLowerCase(Locale.ROOT) : null);
         authenticationManager.authenticate(
                 new UsernamePasswordAuthenticationToken(
                         username, loginRequestDTO.getPassword()));
@@ -96,7 +116,19 @@ public class AuthenticationService {
     }
 
     public User resolveAuthenticatedUser(String username) {
-        return userRepository.findByUsernameIgnoreCase(username)
+        return userIdentityCache.findByUsername(username)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+    }
+
+    /**
+     * The caller's row read from the database and locked until the surrounding transaction ends.
+     * Write paths must use this: {@link #resolveAuthenticatedUser} returns a cached copy, and saving
+     * that back would rewrite every column from a possibly stale snapshot.
+     */
+    public User lockAuthenticatedUser(String username) {
+        Long userId = resolveAuthenticatedUser(username).getId();
+        return userRepository.findByIdForUpdate(userId)
+                .filter(user -> user.getUsername().equalsIgnoreCase(username))
                 .orElseThrow(() -> new RuntimeException("User not found"));
     }
 
@@ -142,10 +174,23 @@ public class AuthenticationService {
         }
 
         User saved = userRepository.save(user);
+        userIdentityCache.invalidate(saved.getId());
+        if (existingUser.isPresent()) {
+            // A password was set on an existing account: sessions opened before no longer count
+            tokenEpochService.revokeAll(saved.getId());
+        }
         return issueLoginResponse(saved);
     }
 
-    public ResponseEntity<String> logout() {
+    /**
+     * Clear the JWT cookie. When the caller is known, their epoch is bumped so the token itself
+     * (and any other token issued to them) stops being accepted, not just the cookie.
+     */
+    public ResponseEntity<String> logout(String username) {
+        if (username != null) {
+            userIdentityCache.findByUsername(username)
+                    .ifPresent(user -> tokenEpochService.revokeAll(user.getId()));
+        }
         ResponseCookie cookie = ResponseCookie.from("JWT", "")
                 .httpOnly(true)
                 .secure(secureCookie)
@@ -158,19 +203,34 @@ public class AuthenticationService {
                 .body("Logged out successfully");
     }
 
-    public List<String> getOnlineUsers() {
-        return new java.util.ArrayList<>(onlineUserService.getOnlineUsernames());
+    /**
+     * The JWT cookie as set on login.
+     */
+    public ResponseCookie jwtCookie(String token) {
+        return ResponseCookie.from("JWT", token)
+                .httpOnly(true)
+                .secure(secureCookie)
+                .path("/")
+                .maxAge(60 * 60)
+                .sameSite("Lax")
+                .build();
     }
 
+    /**
+     * Resolve a username, email or phone number to its account in a single query. A username match
+     * wins over an email match, which wins over a phone match.
+     */
     public Optional<User> findByIdentifier(String identifier) {
         String normalized = IdentifierNormalizer.normalizeIdentifier(identifier);
         if (normalized == null || normalized.isBlank()) {
             return Optional.empty();
         }
 
-        return userRepository.findByUsernameIgnoreCase(normalized)
-                .or(() -> userRepository.findByEmailIgnoreCase(IdentifierNormalizer.normalizeEmail(normalized)))
-                .or(() -> findByIdentifier(normalized, IdentifierType.PHONE));
+        String digits = IdentifierNormalizer.phoneDigits(normalized);
+        return userRepository.findByAnyIdentifier(
+                normalized.toLowerCase(Locale.ROOT),
+                IdentifierNormalizer.isEmail(normalized) ? IdentifierNormalizer.normalizeEmail(normalized) : "",
+                digits != null ? digits : "");
     }
 
     public Optional<User> findByIdentifier(String identifier, IdentifierType type) {
@@ -183,42 +243,29 @@ public class AuthenticationService {
     private Optional<User> resolveUserForOtpLogin(String identifier, IdentifierType type) {
         String normalized = normalizeByType(identifier, type);
         return findByIdentifier(normalized, type)
-                .or(() -> type == IdentifierType.PHONE
-                        ? findByPhoneFlexible(identifier)
-                        : Optional.empty())
                 .or(() -> findByIdentifier(normalized));
     }
 
+    // phone_digits ignores "+" and formatting, so one indexed lookup covers every stored variant
     private Optional<User> findByPhoneFlexible(String phone) {
         String normalizedPhone = IdentifierNormalizer.normalizePhone(phone);
-        if (normalizedPhone.isEmpty()) {
+        String digits = IdentifierNormalizer.phoneDigits(normalizedPhone);
+        if (digits == null) {
             return Optional.empty();
         }
+        return userRepository.findByPhoneDigits(digits, normalizedPhone);
+    }
 
-        String digitsOnly = normalizedPhone.replaceAll("\\D", "");
-        Optional<User> byDigits = userRepository.findByPhoneDigits(digitsOnly);
-        if (byDigits.isPresent()) {
-            return byDigits;
-        }
-
-        Optional<User> direct = userRepository.findByPhone(normalizedPhone);
-        if (direct.isPresent()) {
-            return direct;
-        }
-
-        if (normalizedPhone.startsWith("+")) {
-            direct = userRepository.findByPhone(normalizedPhone.substring(1));
-            if (direct.isPresent()) {
-                return direct;
-            }
-        } else {
-            direct = userRepository.findByPhone("+" + normalizedPhone);
-            if (direct.isPresent()) {
-                return direct;
-            }
+    /**
+     * One-time fill of users.phone_digits for rows saved before the column existed.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Transactional
+    public void backfillPhoneDigits() {
+        int backfilled = userRepository.backfillPhoneDigits();
+        if (backfilled > 0) {
+            logger.info("Backfilled phone digits for {} users", backfilled);
         }
-
-        return userRepository.findByPhone(digitsOnly);
     }
 
     public UserDTO convertToUserDTO(User user) {
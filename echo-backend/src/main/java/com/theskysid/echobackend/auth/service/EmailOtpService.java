@@ -1,11 +1,14 @@
 package com.theskysid.echobackend.auth.service;
 
 import com.theskysid.echobackend.auth.util.IdentifierNormalizer;
+import com.theskysid.echobackend.notification.entity.OutboxNotification.Channel;
+import com.theskysid.echobackend.notification.service.NotificationOutboxService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.mail.SimpleMailMessage;
-import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
 
 @Service
 public class EmailOtpService {
@@ -14,19 +17,22 @@ public class EmailOtpService {
     private OtpService otpService;
 
     @Autowired
-    private JavaMailSender mailSender;
+    private NotificationOutboxService notificationOutboxService;
 
     @Value("${otp.expiry-minutes:5}")
     private int otpExpiryMinutes;
 
+    /**
+     * Issue an OTP and queue the email in the same transaction; it is sent once this commits.
+     * An earlier code still waiting to be sent to this address is dropped.
+     */
+    @Transactional
     public void sendOtp(String email) {
         String normalizedEmail = IdentifierNormalizer.normalizeEmail(email);
         String otp = otpService.createOrUpdateForEmail(normalizedEmail);
-        SimpleMailMessage message = new SimpleMailMessage();
-        message.setTo(normalizedEmail);
-        message.setSubject("Echo Messaging - Your OTP Code");
-        message.setText("Your OTP code is: " + otp + "\n\nThis code expires in " + otpExpiryMinutes
-                + " minutes.\nDo not share this code with anyone.");
-        mailSender.send(message);
+        notificationOutboxService.enqueueReplacing(Channel.EMAIL, normalizedEmail, "Echo Messaging - Your OTP Code",
+                "Your OTP code is: " + otp + "\n\nThis code expires in " + otpExpiryMinutes
+                        + " minutes.\nDo not share this code with anyone.",
+                LocalDateTime.now().plusMinutes(otpExpiryMinutes));
     }
 }
@@ -10,6 +10,7 @@ import com.theskysid.echobackend.user.dto.UserDTO;
 import com.theskysid.echobackend.user.entity.AuthProvider;
 import com.theskysid.echobackend.user.entity.User;
 import com.theskysid.echobackend.user.repository.UserRepository;
+import com.theskysid.echobackend.user.service.UserIdentityCache;
 import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -23,6 +24,9 @@ public class GoogleOAuthService {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private UserIdentityCache userIdentityCache;
+
     @Autowired
     private JwtService jwtService;
 
@@ -58,7 +62,9 @@ public class GoogleOAuthService {
                 if (existing != null) {
                     existing.setGoogleId(googleId);
                     existing.setAuthProvider(AuthProvider.GOOGLE);
-                    return userRepository.save(existing);
+                    User saved = userRepository.save(existing);
+                    userIdentityCache.invalidate(saved.getId());
+                    return saved;
                 }
                 User newUser = new User();
                 newUser.setGoogleId(googleId);
@@ -1,122 +1,195 @@
 package com.theskysid.echobackend.auth.service;
 
-import com.theskysid.echobackend.messaging.entity.ChatMessage;
+import com.theskysid.echobackend.auth.util.HashedTimingWheel;
+import com.theskysid.echobackend.auth.util.HashedTimingWheel.Timeout;
 import jakarta.annotation.PreDestroy;
-import org.springframework.messaging.simp.SimpMessageSendingOperations;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
-import java.time.LocalDateTime;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
-
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Who is connected, by username and STOMP session.
+ * <ul>
+ *     <li>Each user's entry is only changed inside ConcurrentHashMap.compute on its key, so users never
+ *     contend with each other and reads (isOnline, onlineAmong, getOnlineUsernames) take no lock.</li>
+ *     <li>When a user's last session closes they stay online for a grace period; reconnecting within it
+ *     cancels the pending LEAVE and does not broadcast a new JOIN. The grace timers live on a
+ *     {@link HashedTimingWheel}, so a disconnect storm costs a queue insert per user.</li>
+ *     <li>Every online/offline transition is published as a {@link PresenceChanged} event; who hears
+ *     about it is up to the listener (PresenceBroadcaster).</li>
+ *     <li>Events are published after compute returns, so a user's JOIN and LEAVE can reach listeners
+ *     in either order. Each carries a sequence number taken inside compute; a listener drops an event
+ *     for which {@link #isLatest} is false, since a newer one for that user is on its way.</li>
+ * </ul>
+ */
 @Service
 public class OnlineUserService {
 
     private static final long DISCONNECT_GRACE_PERIOD_SECONDS = 2;
 
-    private final SimpMessageSendingOperations messagingTemplate;
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
-        Thread thread = new Thread(runnable, "echo-online-user-presence");
-        thread.setDaemon(true);
-        return thread;
-    });
+    /**
+     * A user came online (first session, not a reconnect within the grace period) or went offline
+     * (grace period over). sequence increases with each transition of the same user.
+     */
+    public record PresenceChanged(String username, boolean online, long sequence) {
+    }
+
+    private final ApplicationEventPublisher eventPublisher;
+    private final long gracePeriodMillis;
+    private final HashedTimingWheel offlineTimers =
+            new HashedTimingWheel("echo-online-user-presence", 100, TimeUnit.MILLISECONDS, 64);
+
+    private final Map<String, Presence> presenceByUsername = new ConcurrentHashMap<>();
+    private final Map<String, String> usernameBySessionId = new ConcurrentHashMap<>();
+    private final AtomicLong sequences = new AtomicLong();
+
+    /**
+     * A user's open sessions and, while they have none, the pending LEAVE. Only mutated inside
+     * compute on the user's key.
+     */
+    private static final class Presence {
 
-    private final Map<String, Set<String>> sessionsByUsername = new HashMap<>();
-    private final Map<String, String> usernameBySessionId = new HashMap<>();
-    private final Map<String, ScheduledFuture<?>> pendingOfflineTasks = new HashMap<>();
+        private final Set<String> sessions = new HashSet<>();
+        private final long joinSequence;
+        private Timeout pendingOffline;
 
-    public OnlineUserService(SimpMessageSendingOperations messagingTemplate) {
-        this.messagingTemplate = messagingTemplate;
+        private Presence(long joinSequence) {
+            this.joinSequence = joinSequence;
+        }
+
+        private boolean cancelPendingOffline() {
+            if (pendingOffline == null) {
+                return false;
+            }
+            pendingOffline.cancel();
+            pendingOffline = null;
+            return true;
+        }
     }
 
-    public synchronized boolean registerSession(String username, String sessionId) {
+    @Autowired
+    public OnlineUserService(ApplicationEventPublisher eventPublisher) {
+        this(eventPublisher, TimeUnit.SECONDS.toMillis(DISCONNECT_GRACE_PERIOD_SECONDS));
+    }
+
+    // Tests shorten the grace period
+    OnlineUserService(ApplicationEventPublisher eventPublisher, long gracePeriodMillis) {
+        this.eventPublisher = eventPublisher;
+        this.gracePeriodMillis = gracePeriodMillis;
+    }
+
+    /**
+     * Record a session for the user. True if this brings them online (a JOIN should be broadcast):
+     * not when they already had a session or were reconnecting within the grace period.
+     */
+    public boolean registerSession(String username, String sessionId) {
         if (username == null || username.isBlank() || sessionId == null || sessionId.isBlank()) {
             return false;
         }
 
-        String existingUsername = usernameBySessionId.get(sessionId);
+        String existingUsername = usernameBySessionId.put(sessionId, username);
         if (username.equals(existingUsername)) {
             return false;
         }
 
-        boolean reconnectingDuringGrace = cancelPendingOffline(username);
-        Set<String> activeSessions = sessionsByUsername.computeIfAbsent(username, ignored -> new HashSet<>());
-        boolean shouldBroadcastJoin = activeSessions.isEmpty() && !reconnectingDuringGrace;
-
-        activeSessions.add(sessionId);
-        usernameBySessionId.put(sessionId, username);
-        return shouldBroadcastJoin;
+        boolean[] shouldBroadcastJoin = new boolean[1];
+        Presence current = presenceByUsername.compute(username, (ignored, presence) -> {
+            if (presence == null) {
+                presence = new Presence(sequences.incrementAndGet());
+                shouldBroadcastJoin[0] = true;
+            } else {
+                boolean reconnectingDuringGrace = presence.cancelPendingOffline();
+                shouldBroadcastJoin[0] = presence.sessions.isEmpty() && !reconnectingDuringGrace;
+            }
+            presence.sessions.add(sessionId);
+            return presence;
+        });
+        if (shouldBroadcastJoin[0]) {
+            eventPublisher.publishEvent(new PresenceChanged(username, true, current.joinSequence));
+        }
+        return shouldBroadcastJoin[0];
     }
 
-    public synchronized void unregisterSession(String sessionId) {
+    public void unregisterSession(String sessionId) {
         String username = usernameBySessionId.remove(sessionId);
         if (username == null) {
             return;
         }
 
-        Set<String> activeSessions = sessionsByUsername.get(username);
-        if (activeSessions == null) {
-            return;
-        }
+        presenceByUsername.computeIfPresent(username, (ignored, presence) -> {
+            if (presence.sessions.remove(sessionId) && presence.sessions.isEmpty()) {
+                presence.cancelPendingOffline();
+                presence.pendingOffline = offlineTimers.schedule(
+                        timeout -> goOfflineIfStillDisconnected(username, timeout),
+                        gracePeriodMillis,
+                        TimeUnit.MILLISECONDS);
+            }
+            return presence;
+        });
+    }
 
-        activeSessions.remove(sessionId);
-        if (!activeSessions.isEmpty()) {
-            return;
+    public boolean isOnline(String username) {
+        return presenceByUsername.containsKey(username);
+    }
+
+    /**
+     * The subset of the given usernames that are online.
+     */
+    public Set<String> onlineAmong(Collection<String> usernames) {
+        Set<String> online = new HashSet<>();
+        for (String username : usernames) {
+            if (presenceByUsername.containsKey(username)) {
+                online.add(username);
+            }
         }
+        return online;
+    }
 
-        ScheduledFuture<?> offlineTask = scheduler.schedule(
-                () -> broadcastLeaveIfStillOffline(username),
-                DISCONNECT_GRACE_PERIOD_SECONDS,
-                TimeUnit.SECONDS);
-        pendingOfflineTasks.put(username, offlineTask);
+    /**
+     * False if the user has changed state again since the event: a JOIN whose session has since gone
+     * offline (or come back as a newer JOIN), or a LEAVE for a user who is online again.
+     */
+    public boolean isLatest(PresenceChanged event) {
+        Presence presence = presenceByUsername.get(event.username());
+        if (event.online()) {
+            return presence != null && presence.joinSequence == event.sequence();
+        }
+        return presence == null;
     }
 
-    public synchronized boolean isOnline(String username) {
-        return sessionsByUsername.containsKey(username);
+    public int onlineCount() {
+        return presenceByUsername.size();
     }
 
-    public synchronized Set<String> getOnlineUsernames() {
-        return Collections.unmodifiableSet(new HashSet<>(sessionsByUsername.keySet()));
+    public Set<String> getOnlineUsernames() {
+        return Set.copyOf(presenceByUsername.keySet());
     }
 
     @PreDestroy
     public void shutdown() {
-        scheduler.shutdownNow();
+        offlineTimers.stop();
     }
 
-    private void broadcastLeaveIfStillOffline(String username) {
-        synchronized (this) {
-            ScheduledFuture<?> task = pendingOfflineTasks.get(username);
-            Set<String> activeSessions = sessionsByUsername.get(username);
-            if (task == null || (activeSessions != null && !activeSessions.isEmpty())) {
-                return;
+    // Runs on the timing wheel thread: only the timeout still registered for the user may take them offline
+    private void goOfflineIfStillDisconnected(String username, Timeout timeout) {
+        long[] leaveSequence = new long[1];
+        presenceByUsername.computeIfPresent(username, (ignored, presence) -> {
+            if (presence.pendingOffline != timeout || !presence.sessions.isEmpty()) {
+                return presence;
             }
-
-            pendingOfflineTasks.remove(username);
-            sessionsByUsername.remove(username);
-        }
-
-        ChatMessage chatMessage = new ChatMessage();
-        chatMessage.setType(ChatMessage.MessageType.LEAVE);
-        chatMessage.setSender(username);
-        chatMessage.setTimestamp(LocalDateTime.now());
-        messagingTemplate.convertAndSend("/topic/public", chatMessage);
-    }
-
-    private boolean cancelPendingOffline(String username) {
-        ScheduledFuture<?> pendingTask = pendingOfflineTasks.remove(username);
-        if (pendingTask == null) {
-            return false;
+            leaveSequence[0] = sequences.incrementAndGet();
+            return null;
+        });
+        if (leaveSequence[0] != 0) {
+            eventPublisher.publishEvent(new PresenceChanged(username, false, leaveSequence[0]));
         }
-
-        pendingTask.cancel(false);
-        return true;
     }
 }
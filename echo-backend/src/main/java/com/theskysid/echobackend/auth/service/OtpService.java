@@ -3,11 +3,16 @@ package com.theskysid.echobackend.auth.service;
 import com.theskysid.echobackend.auth.otp.entity.OtpVerification;
 import com.theskysid.echobackend.auth.otp.entity.OtpVerification.IdentifierType;
 import com.theskysid.echobackend.auth.otp.repository.OtpVerificationRepository;
+import com.theskysid.echobackend.auth.ratelimit.RateLimitExceededException;
+import com.theskysid.echobackend.auth.ratelimit.RateLimiter;
+import com.theskysid.echobackend.auth.ratelimit.RateLimiter.Limit;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.security.SecureRandom;
+import java.time.Duration;
 import java.time.LocalDateTime;
 
 @Service
@@ -16,6 +21,9 @@ public class OtpService {
     @Autowired
     private OtpVerificationRepository otpRepository;
 
+    @Autowired
+    private RateLimiter rateLimiter;
+
     @Value("${otp.expiry-minutes:5}")
     private int otpExpiryMinutes;
 
@@ -31,17 +39,26 @@ public class OtpService {
         return String.valueOf(100000 + SECURE_RANDOM.nextInt(900000));
     }
 
+    @Transactional
     public String createOrUpdateForEmail(String email) {
         return generateAndSaveOtp(email, IdentifierType.EMAIL);
     }
 
+    @Transactional
     public String createOrUpdateForPhone(String phone) {
         return generateAndSaveOtp(phone, IdentifierType.PHONE);
     }
 
+    /**
+     * Rate limited per identifier (otp.rate-limit.*) twice: this node's token bucket turns floods away
+     * before anything is read, then the count in the identifier's locked row enforces the same limit
+     * across all nodes and restarts.
+     */
     private String generateAndSaveOtp(String identifier, IdentifierType type) {
+        rateLimiter.acquire(Limit.OTP_IDENTIFIER, type + ":" + identifier);
+
         OtpVerification record = otpRepository
-                .findByIdentifierAndType(identifier, type)
+                .findForUpdate(identifier, type)
                 .orElseGet(() -> {
                     OtpVerification o = new OtpVerification();
                     o.setIdentifier(identifier);
@@ -51,7 +68,7 @@ public class OtpService {
                     return o;
                 });
 
-        checkRateLimit(record);
+        checkSharedLimit(record);
 
         String otp = generateOtp();
         record.setOtpCode(otp);
@@ -79,19 +96,19 @@ public class OtpService {
         return true;
     }
 
-    private void checkRateLimit(OtpVerification record) {
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    private void checkSharedLimit(OtpVerification record) {
         LocalDateTime now = LocalDateTime.now();
-        if (record.getWindowStart() == null ||
-                now.isAfter(record.getWindowStart().plusMinutes(rateLimitWindowMinutes))) {
+        LocalDateTime windowEnd = record.getWindowStart().plusMinutes(rateLimitWindowMinutes);
+        if (now.isAfter(windowEnd)) {
             record.setRequestCount(0);
             record.setWindowStart(now);
             return;
         }
         if (record.getRequestCount() >= maxOtpRequests) {
-            throw new RuntimeException("OTP rate limit exceeded. Try again after "
-                    + rateLimitWindowMinutes + " minutes.");
+            throw new RateLimitExceededException(Math.max(1, Duration.between(now, windowEnd).toSeconds()));
         }
-
     }
 }
 
@@ -1,11 +1,14 @@
 package com.theskysid.echobackend.auth.service;
 
 import com.theskysid.echobackend.auth.util.IdentifierNormalizer;
-import com.twilio.rest.api.v2010.account.Message;
-import com.twilio.type.PhoneNumber;
+import com.theskysid.echobackend.notification.entity.OutboxNotification.Channel;
+import com.theskysid.echobackend.notification.service.NotificationOutboxService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
 
 @Service
 public class SmsOtpService {
@@ -13,18 +16,22 @@ public class SmsOtpService {
     @Autowired
     private OtpService otpService;
 
-    @Value("${twilio.phone-number}")
-    private String twilioPhoneNumber;
+    @Autowired
+    private NotificationOutboxService notificationOutboxService;
 
     @Value("${otp.expiry-minutes:5}")
     private int otpExpiryMinutes;
 
+    /**
+     * Issue an OTP and queue the SMS in the same transaction; it is sent once this commits.
+     * An earlier code still waiting to be sent to this number is dropped.
+     */
+    @Transactional
     public void sendOtp(String phone) {
         String normalizedPhone = IdentifierNormalizer.normalizePhone(phone);
         String otp = otpService.createOrUpdateForPhone(normalizedPhone);
-        Message.creator(
-                new PhoneNumber(normalizedPhone),
-                new PhoneNumber(twilioPhoneNumber),
-                "Your Echo Messaging OTP code is: " + otp + ". Expires in " + otpExpiryMinutes + " minutes.").create();
+        notificationOutboxService.enqueueReplacing(Channel.SMS, normalizedPhone, null,
+                "Your Echo Messaging OTP code is: " + otp + ". Expires in " + otpExpiryMinutes + " minutes.",
+                LocalDateTime.now().plusMinutes(otpExpiryMinutes));
     }
 }
@@ -0,0 +1,115 @@
+package com.theskysid.echobackend.auth.service;
+
+import com.theskysid.echobackend.auth.token.entity.UserTokenEpoch;
+import com.theskysid.echobackend.auth.token.repository.UserTokenEpochRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory view of user_token_epochs, used to revoke JWTs without a per-request query.
+ * <ul>
+ *     <li>Tokens carry the epoch current when they were issued; a token whose epoch is below the
+ *     user's current epoch is revoked.</li>
+ *     <li>Only epochs bumped within the last token lifetime are held: any token issued before an
+ *     older bump has expired anyway, so forgetting it cannot let a revoked token through.</li>
+ *     <li>Bumps made by other nodes are picked up by polling rows updated since the last refresh.
+ *     Both the row stamps and the refresh watermark come from the database clock.</li>
+ * </ul>
+ */
+@Service
+public class TokenEpochService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenEpochService.class);
+
+    // Re-read a margin before the last refresh: a bump is stamped when its statement runs and may
+    // commit after a refresh has already read past that time
+    private static final Duration REFRESH_OVERLAP = Duration.ofSeconds(30);
+
+    @Autowired
+    private UserTokenEpochRepository userTokenEpochRepository;
+
+    @Value("${jwt.expiration}")
+    private Long jwtExpirationMillis;
+
+    private final Map<Long, Epoch> epochsByUser = new ConcurrentHashMap<>();
+
+    private volatile LocalDateTime lastRefresh;
+
+    private record Epoch(long value, LocalDateTime updatedAt) {
+    }
+
+    @PostConstruct
+    public void init() {
+        LocalDateTime now = userTokenEpochRepository.databaseNow();
+        userTokenEpochRepository.findByUpdatedAtAfter(now.minus(tokenLifetime())).forEach(this::apply);
+        lastRefresh = now;
+        logger.info("Loaded {} recent token revocations", epochsByUser.size());
+    }
+
+    public long currentEpoch(Long userId) {
+        Epoch epoch = epochsByUser.get(userId);
+        return epoch == null ? 0 : epoch.value();
+    }
+
+    /**
+     * The epoch to stamp on a token issued now. Read from user_token_epochs rather than the local view,
+     * which can miss a bump made on another node since the last refresh; a token stamped with the older
+     * epoch would be revoked by that refresh. The row is applied locally as well.
+     */
+    public long epochForNewToken(Long userId) {
+        userTokenEpochRepository.findById(userId).ifPresent(this::apply);
+        return currentEpoch(userId);
+    }
+
+    public boolean isRevoked(Long userId, long tokenEpoch) {
+        return tokenEpoch < currentEpoch(userId);
+    }
+
+    /**
+     * Revoke every token issued to the user so far. Commits on its own, so the revocation sticks even
+     * if the caller's transaction rolls back, and is visible locally before this returns.
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void revokeAll(Long userId) {
+        userTokenEpochRepository.bump(userId);
+        userTokenEpochRepository.findById(userId).ifPresent(this::apply);
+    }
+
+    /**
+     * Pick up bumps from other nodes and forget epochs older than a token lifetime.
+     */
+    @Scheduled(fixedDelayString = "${auth.token-epochs.refresh-ms:5000}")
+    public void refresh() {
+        LocalDateTime now = userTokenEpochRepository.databaseNow();
+        userTokenEpochRepository.findByUpdatedAtAfter(lastRefresh.minus(REFRESH_OVERLAP)).forEach(this::apply);
+        lastRefresh = now;
+
+        LocalDateTime cutoff = now.minus(tokenLifetime());
+        epochsByUser.values().removeIf(epoch -> epoch.updatedAt().isBefore(cutoff));
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    // Epochs only move forward, whatever order rows arrive in
+    private void apply(UserTokenEpoch row) {
+        Epoch incoming = new Epoch(row.getEpoch(), row.getUpdatedAt());
+        epochsByUser.merge(row.getUserId(), incoming,
+                (existing, candidate) -> candidate.value() > existing.value() ? candidate : existing);
+    }
+
+    private Duration tokenLifetime() {
+        return Duration.ofMillis(jwtExpirationMillis);
+    }
+}
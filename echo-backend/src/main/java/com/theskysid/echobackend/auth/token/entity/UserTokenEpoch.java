@@ -0,0 +1,27 @@
+package com.theskysid.echobackend.auth.token.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import java.time.LocalDateTime;
+
+/**
+ * Per-user token revocation counter. Tokens carry the epoch they were issued under; bumping it
+ * revokes every token issued before. Users that never revoked anything have no row (epoch 0).
+ */
+@Entity
+@Data
+@Table(name = "user_token_epochs", indexes = {
+        @Index(name = "idx_token_epoch_updated_at", columnList = "updated_at")
+})
+public class UserTokenEpoch {
+
+    @Id
+    @Column(name = "user_id")
+    private Long userId;
+
+    @Column(nullable = false)
+    private long epoch;
+
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+}
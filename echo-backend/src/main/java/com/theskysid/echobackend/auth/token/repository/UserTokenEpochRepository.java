@@ -0,0 +1,31 @@
+package com.theskysid.echobackend.auth.token.repository;
+
+import com.theskysid.echobackend.auth.token.entity.UserTokenEpoch;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface UserTokenEpochRepository extends JpaRepository<UserTokenEpoch, Long> {
+
+    List<UserTokenEpoch> findByUpdatedAtAfter(LocalDateTime since);
+
+    /**
+     * The database clock, which stamps every bump; refreshes are measured against it rather than
+     * each node's own clock.
+     */
+    @Query(value = "SELECT LOCALTIMESTAMP", nativeQuery = true)
+    LocalDateTime databaseNow();
+
+    /**
+     * Increment a user's epoch, creating the row on first use. Stamped with the database clock.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO user_token_epochs (user_id, epoch, updated_at) VALUES (:userId, 1, LOCALTIMESTAMP) " +
+            "ON CONFLICT (user_id) DO UPDATE SET epoch = user_token_epochs.epoch + 1, updated_at = LOCALTIMESTAMP",
+            nativeQuery = true)
+    int bump(@Param("userId") Long userId);
+}
@@ -0,0 +1,172 @@
+package com.theskysid.echobackend.auth.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Hashed timing wheel for many short, mostly-cancelled timeouts (e.g. disconnect grace periods).
+ * <ul>
+ *     <li>Scheduling and cancelling are O(1) and lock-free: new timeouts go through a concurrent queue,
+ *     cancelling just flags the timeout.</li>
+ *     <li>One thread advances the wheel every tick and runs the timeouts that are due, so tasks must be
+ *     short. Timeouts fire up to one tick late, never early.</li>
+ *     <li>Timeouts longer than one turn of the wheel stay in their slot until their deadline.</li>
+ * </ul>
+ */
+public final class HashedTimingWheel {
+
+    private static final Logger logger = LoggerFactory.getLogger(HashedTimingWheel.class);
+
+    public interface Task {
+        void run(Timeout timeout);
+    }
+
+    public static final class Timeout {
+
+        private final Task task;
+        private final long deadlineNanos;
+        private volatile boolean cancelled;
+
+        private Timeout(Task task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Stop the task from running, if it has not started yet.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private final long tickNanos;
+    private final int mask;
+    private final Queue<Timeout>[] slots;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final LongSupplier clock;
+    private final Thread worker;
+    private final long startNanos;
+
+    private volatile boolean running = true;
+    private long tick;
+
+    public HashedTimingWheel(String threadName, long tickDuration, TimeUnit unit, int slotCount) {
+        this(threadName, unit.toNanos(tickDuration), slotCount, System::nanoTime);
+    }
+
+    /**
+     * Without a thread name no worker is started and the caller drives the wheel through {@link #advance()}.
+     */
+    @SuppressWarnings("unchecked")
+    HashedTimingWheel(String threadName, long tickNanos, int slotCount, LongSupplier clock) {
+        this.tickNanos = tickNanos;
+        int size = Integer.highestOneBit(Math.max(slotCount, 2) - 1) << 1;
+        this.mask = size - 1;
+        this.slots = (Queue<Timeout>[]) new Queue<?>[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new ArrayDeque<>();
+        }
+        this.clock = clock;
+        this.startNanos = clock.getAsLong();
+        if (threadName == null) {
+            this.worker = null;
+            return;
+        }
+        this.worker = new Thread(this::run, threadName);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public Timeout schedule(Task task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, clock.getAsLong() + unit.toNanos(delay));
+        pending.add(timeout);
+        return timeout;
+    }
+
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    /**
+     * Run every tick that is due by the clock, on the calling thread.
+     */
+    void advance() {
+        while (nextTickAt() - clock.getAsLong() <= 0) {
+            advanceOneTick();
+        }
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    private void run() {
+        while (running) {
+            long sleep = nextTickAt() - clock.getAsLong();
+            if (sleep > 0) {
+                LockSupport.parkNanos(sleep);
+                continue;
+            }
+            advanceOneTick();
+        }
+    }
+
+    private long nextTickAt() {
+        return startNanos + (tick + 1) * tickNanos;
+    }
+
+    private void advanceOneTick() {
+        tick++;
+        transferPending();
+        expire(slots[(int) (tick & mask)]);
+    }
+
+    // Only the worker touches the slots, so they need no synchronization
+    private void transferPending() {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            long dueTick = Math.max(ceilDiv(timeout.deadlineNanos - startNanos, tickNanos), tick);
+            slots[(int) (dueTick & mask)].add(timeout);
+        }
+    }
+
+    private void expire(Queue<Timeout> slot) {
+        long now = clock.getAsLong();
+        for (int remaining = slot.size(); remaining > 0; remaining--) {
+            Timeout timeout = slot.poll();
+            if (timeout.cancelled) {
+                continue;
+            }
+            if (timeout.deadlineNanos - now > 0) {
+                // Due on a later turn of the wheel
+                slot.add(timeout);
+                continue;
+            }
+            try {
+                timeout.task.run(timeout);
+            } catch (RuntimeException e) {
+                logger.warn("Timing wheel task failed", e);
+            }
+        }
+    }
+
+    private static long ceilDiv(long value, long divisor) {
+        return value <= 0 ? 0 : (value + divisor - 1) / divisor;
+    }
+}
@@ -33,4 +33,15 @@ public final class IdentifierNormalizer {
         String digitsOnly = normalized.replaceAll("\\D", "");
         return hasLeadingPlus ? "+" + digitsOnly : digitsOnly;
     }
+
+    /**
+     * The digits of a phone number, or null if it has none. This is what users.phone_digits holds.
+     */
+    public static String phoneDigits(String phone) {
+        if (phone == null) {
+            return null;
+        }
+        String digitsOnly = phone.replaceAll("\\D", "");
+        return digitsOnly.isEmpty() ? null : digitsOnly;
+    }
 }
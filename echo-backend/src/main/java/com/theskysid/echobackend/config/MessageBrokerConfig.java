@@ -0,0 +1,83 @@
+package com.theskysid.echobackend.config;
+
+import com.theskysid.echobackend.messaging.broker.ShardedBrokerMessageHandler;
+import com.theskysid.echobackend.messaging.websocket.FlowControlledSubProtocolWebSocketHandler;
+import com.theskysid.echobackend.messaging.websocket.OutboundFlowMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.user.UserDestinationResolver;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.config.annotation.DelegatingWebSocketMessageBrokerConfiguration;
+
+/**
+ * Replaces {@code @EnableWebSocketMessageBroker} so the in-process broker can be swapped.
+ * All {@link org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer}
+ * beans (see {@link WebSocketConfig}) are still picked up as before.
+ *
+ * websocket.broker.mode = sharded (default) | simple
+ * <p>
+ * Also swaps in {@link FlowControlledSubProtocolWebSocketHandler} so outbound buffering per
+ * session sheds typing/presence frames before closing a slow consumer.
+ */
+@Configuration(proxyBeanMethods = false)
+public class MessageBrokerConfig extends DelegatingWebSocketMessageBrokerConfiguration {
+
+    @Value("${websocket.broker.mode:sharded}")
+    private String brokerMode;
+
+    // 0 = one shard per available core
+    @Value("${websocket.broker.shards:0}")
+    private int shards;
+
+    @Value("${websocket.broker.cache-limit:1024}")
+    private int cacheLimit;
+
+    // Buffered bytes above which new TYPING / JOIN / LEAVE frames are discarded for a session
+    @Value("${websocket.outbound.drop-threshold:65536}")
+    private int dropThreshold;
+
+    @Autowired
+    private OutboundFlowMetrics outboundFlowMetrics;
+
+    @Bean
+    @Override
+    public WebSocketHandler subProtocolWebSocketHandler(
+            @Qualifier("clientInboundChannel") AbstractSubscribableChannel clientInboundChannel,
+            @Qualifier("clientOutboundChannel") AbstractSubscribableChannel clientOutboundChannel) {
+
+        FlowControlledSubProtocolWebSocketHandler handler = new FlowControlledSubProtocolWebSocketHandler(
+                clientInboundChannel, clientOutboundChannel, dropThreshold, outboundFlowMetrics);
+        handler.setPhase(getPhase());
+        return handler;
+    }
+
+    @Bean
+    @Override
+    public AbstractBrokerMessageHandler simpleBrokerMessageHandler(
+            @Qualifier("clientInboundChannel") AbstractSubscribableChannel clientInboundChannel,
+            @Qualifier("clientOutboundChannel") AbstractSubscribableChannel clientOutboundChannel,
+            @Qualifier("brokerChannel") AbstractSubscribableChannel brokerChannel,
+            UserDestinationResolver userDestinationResolver) {
+
+        AbstractBrokerMessageHandler handler = super.simpleBrokerMessageHandler(
+                clientInboundChannel, clientOutboundChannel, brokerChannel, userDestinationResolver);
+
+        if (!"sharded".equalsIgnoreCase(brokerMode) || !(handler instanceof SimpleBrokerMessageHandler simpleBroker)) {
+            return handler;
+        }
+
+        int shardCount = shards > 0 ? shards : Runtime.getRuntime().availableProcessors();
+        ShardedBrokerMessageHandler shardedBroker = new ShardedBrokerMessageHandler(
+                clientInboundChannel, clientOutboundChannel, brokerChannel,
+                simpleBroker.getDestinationPrefixes(), shardCount, cacheLimit);
+        shardedBroker.setTaskScheduler(simpleBroker.getTaskScheduler());
+        shardedBroker.setHeartbeatValue(simpleBroker.getHeartbeatValue());
+        return shardedBroker;
+    }
+}
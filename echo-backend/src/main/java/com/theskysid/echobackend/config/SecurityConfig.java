@@ -1,7 +1,10 @@
 package com.theskysid.echobackend.config;
 
 import com.theskysid.echobackend.auth.jwt.JwtAuthenticationFilter;
+import com.theskysid.echobackend.auth.password.BoundedPasswordEncoder;
+import com.theskysid.echobackend.auth.ratelimit.AuthRateLimitFilter;
 import com.theskysid.echobackend.user.service.CustomUserDetails;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -32,6 +35,21 @@ public class SecurityConfig {
     @Autowired
     private JwtAuthenticationFilter jwtAuthenticationFilter;
 
+    @Autowired
+    private AuthRateLimitFilter authRateLimitFilter;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${password.bcrypt-strength:10}")
+    private int bcryptStrength;
+
+    @Value("${password.hashing.threads:0}")
+    private int hashingThreads;
+
+    @Value("${password.hashing.queue-capacity:64}")
+    private int hashingQueueCapacity;
+
     @Value("${allowed-origins:https://echomessaging.duckdns.org,http://localhost:5173}")
     private String allowedOrigins;
 
@@ -52,10 +70,11 @@ public class SecurityConfig {
                         .requestMatchers("/h2-console/**").permitAll()
                         .requestMatchers("/auth/getonlineusers", "/auth/getcurrentuser", "/api/**").authenticated()
                         .requestMatchers("/actuator/health").permitAll()
-                        .requestMatchers("/ws/**").permitAll()
+                        .requestMatchers("/ws/**", "/ws-native").permitAll()
                         .anyRequest().authenticated())
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authenticationProvider(authenticationProvider())
+                .addFilterBefore(authRateLimitFilter, UsernamePasswordAuthenticationFilter.class)
                 .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
 
         return http.build();
@@ -66,9 +85,15 @@ public class SecurityConfig {
         return new CustomUserDetails();
     }
 
-    @Bean
+    /**
+     * BCrypt on a dedicated bounded pool; see {@link BoundedPasswordEncoder}.
+     */
+    @Bean(destroyMethod = "shutdown")
     public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+        BoundedPasswordEncoder encoder = new BoundedPasswordEncoder(new BCryptPasswordEncoder(bcryptStrength),
+                hashingThreads, hashingQueueCapacity, meterRegistry);
+        encoder.logCost("BCrypt cost " + bcryptStrength);
+        return encoder;
     }
 
     @Bean
@@ -91,7 +116,7 @@ public class SecurityConfig {
         corsConfiguration.setAllowedMethods(Arrays.asList("GET", "POST", "PUT", "DELETE", "OPTIONS"));
         corsConfiguration.setAllowedHeaders(List.of("*"));
         corsConfiguration.setAllowCredentials(true);
-        corsConfiguration.setExposedHeaders(List.of("Set-Cookie"));
+        corsConfiguration.setExposedHeaders(List.of("Set-Cookie", "X-Next-Cursor", "Retry-After"));
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
         source.registerCorsConfiguration("/**", corsConfiguration);
         return source;
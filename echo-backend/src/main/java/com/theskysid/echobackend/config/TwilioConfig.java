@@ -3,9 +3,11 @@ package com.theskysid.echobackend.config;
 import com.twilio.Twilio;
 import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Configuration;
 
 @Configuration
+@ConditionalOnProperty(name = "notification.sms.provider", havingValue = "twilio", matchIfMissing = true)
 public class TwilioConfig {
 
     @Value("${twilio.account-sid}")
@@ -1,19 +1,40 @@
 package com.theskysid.echobackend.config;
 
 import org.springframework.beans.factory.annotation.Value;
+import com.theskysid.echobackend.messaging.websocket.BinaryFrameEncoding;
+import com.theskysid.echobackend.messaging.websocket.SessionOrderedVirtualThreadExecutor;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
-import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
+import java.util.List;
+
+// The message broker itself is enabled by MessageBrokerConfig, which picks up this configurer
 @Configuration
-@EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
    @Value("${allowed-origins:https://echomessaging.duckdns.org,http://localhost:5173}")
    private String allowedOrigins;
 
+   // "pool" = Spring's default thread pools, "virtual" = virtual thread per frame, ordered per session
+   @Value("${websocket.executor.mode:pool}")
+   private String executorMode;
+
+   // Per-session outbound limits; a client over either one is disconnected as a slow consumer
+   @Value("${websocket.outbound.send-time-limit-ms:10000}")
+   private int sendTimeLimitMillis;
+
+   @Value("${websocket.outbound.buffer-size-limit:524288}")
+   private int sendBufferSizeLimit;
+
+   @Autowired
+   private BinaryFrameEncoding binaryFrameEncoding;
+
    // changes the http to websocket protocol
 
    @Override
@@ -25,6 +46,7 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
       // If a message is sent to /topic or /queue or /user,
       // the broker will deliver it to whoever is subscribed.
       // here for the broadcast it to everyone
+      // (MessageBrokerConfig swaps in the sharded broker unless websocket.broker.mode=simple)
       config.enableSimpleBroker("/topic", "/queue", "/user");
       // Broker, deliver messages sent to those /user paths.
 
@@ -37,6 +59,9 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
       // Example: /user/sid/queue/private
       config.setUserDestinationPrefix("/user");
       // Build private message paths using /user.
+
+      // Lets CBOR sessions share one encoding of each broadcast (see BinaryFrameEncoding)
+      config.configureBrokerChannel().interceptors(binaryFrameEncoding.brokerChannelInterceptor());
    }
 
    @Override
@@ -52,5 +77,42 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
             // Enables SockJS fallback if WebSocket cannot connect.
             .withSockJS();
+
+      // Plain WebSocket endpoint (no SockJS). Only these sessions can opt into
+      // binary CBOR frames with the CONNECT header "echo-encoding: cbor".
+      registry.addEndpoint("/ws-native")
+            .setAllowedOriginPatterns(allowedOrigins)
+            .addInterceptors(binaryFrameEncoding.nativeEndpointInterceptor());
+   }
+
+   @Override
+   public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+      // application/cbor payloads from binary clients; keep the default JSON/string converters too
+      messageConverters.add(binaryFrameEncoding.cborMessageConverter());
+      // Outbound objects: same JSON as the default converter, plus the object for direct CBOR encoding
+      messageConverters.add(binaryFrameEncoding.jsonMessageConverter());
+      return true;
+   }
+
+   @Override
+   public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+      registration.setSendTimeLimit(sendTimeLimitMillis);
+      registration.setSendBufferSizeLimit(sendBufferSizeLimit);
+   }
+
+   @Override
+   public void configureClientInboundChannel(ChannelRegistration registration) {
+      registration.interceptors(binaryFrameEncoding);
+      if ("virtual".equalsIgnoreCase(executorMode)) {
+         registration.executor(new SessionOrderedVirtualThreadExecutor("echo-ws-inbound-"));
+      }
+   }
+
+   @Override
+   public void configureClientOutboundChannel(ChannelRegistration registration) {
+      registration.interceptors(binaryFrameEncoding);
+      if ("virtual".equalsIgnoreCase(executorMode)) {
+         registration.executor(new SessionOrderedVirtualThreadExecutor("echo-ws-outbound-"));
+      }
    }
 }
@@ -6,10 +6,11 @@ import com.theskysid.echobackend.friendship.dto.FriendRequestDTO;
 import com.theskysid.echobackend.friendship.dto.FriendUserDTO;
 import com.theskysid.echobackend.friendship.dto.FriendshipDTO;
 import com.theskysid.echobackend.friendship.entity.Friendship;
-import com.theskysid.echobackend.friendship.entity.FriendshipStatus;
 import com.theskysid.echobackend.friendship.repository.FriendshipRepository;
 import com.theskysid.echobackend.friendship.service.FriendshipService;
+import com.theskysid.echobackend.friendship.service.FriendshipService.Relationship;
 import com.theskysid.echobackend.user.entity.User;
+import com.theskysid.echobackend.user.service.UserSearchService.SearchPage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -19,13 +20,16 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/friends")
 public class FriendshipController {
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    private static final int MAX_SEARCH_RESULTS = 50;
+
     @Autowired
     private FriendshipService friendshipService;
 
@@ -48,12 +52,14 @@ public class FriendshipController {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Not authenticated"));
         }
         User currentUser = authenticationService.resolveAuthenticatedUser(authentication.getName());
-        List<FriendUserDTO> friends = friendshipRepository.findAcceptedFriendships(currentUser).stream()
+        List<Friendship> friendships = friendshipRepository.findAcceptedFriendships(currentUser);
+        Set<String> online = onlineUserService.onlineAmong(friendships.stream()
+                .map(friendship -> otherUser(friendship, currentUser).getUsername())
+                .toList());
+        List<FriendUserDTO> friends = friendships.stream()
                 .map(friendship -> {
-                    User otherUser = friendship.getRequester().getId().equals(currentUser.getId())
-                            ? friendship.getAddressee()
-                            : friendship.getRequester();
-                    return toFriendUserDTO(otherUser, "ACCEPTED", friendship.getId());
+                    User otherUser = otherUser(friendship, currentUser);
+                    return toFriendUserDTO(otherUser, "ACCEPTED", friendship.getId(), online.contains(otherUser.getUsername()));
                 })
                 .collect(Collectors.toList());
         return ResponseEntity.ok(friends);
@@ -103,25 +109,35 @@ public class FriendshipController {
     }
 
     /**
-     * GET /api/friends/search?q={query} — search users by username
+     * GET /api/friends/search?q={query}&limit=20&cursor={token} — ranked username search
+     * (exact, then prefix, then substring); the next page's cursor is returned in X-Next-Cursor
      */
     @GetMapping("/search")
     @Transactional(readOnly = true)
-    public ResponseEntity<?> searchUsers(@RequestParam("q") String query, Authentication authentication) {
+    public ResponseEntity<?> searchUsers(
+            @RequestParam("q") String query,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit,
+            Authentication authentication) {
         if (authentication == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Not authenticated"));
         }
         try {
             User currentUser = authenticationService.resolveAuthenticatedUser(authentication.getName());
-            List<FriendUserDTO> results = friendshipService.searchUsers(currentUser, query).stream()
-                .map(user -> {
-                        Optional<Friendship> friendship = friendshipRepository.findBetweenUsers(currentUser, user);
-                        String status = resolveRelationshipStatus(currentUser, friendship);
-                        Long friendshipId = friendship.map(Friendship::getId).orElse(null);
-                        return toFriendUserDTO(user, status, friendshipId);
+            SearchPage page = friendshipService.searchUsers(currentUser, query, cursor,
+                    Math.max(1, Math.min(limit, MAX_SEARCH_RESULTS)));
+            Map<Long, Relationship> relationships = friendshipService.resolveRelationships(currentUser, page.users());
+            List<FriendUserDTO> results = page.users().stream()
+                    .map(user -> {
+                        Relationship relationship = relationships.get(user.getId());
+                        return toFriendUserDTO(user, relationship.status(), relationship.friendshipId(), relationship.online());
                     })
                     .collect(Collectors.toList());
-            return ResponseEntity.ok(results);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+            if (page.nextCursor() != null) {
+                response.header(NEXT_CURSOR_HEADER, page.nextCursor());
+            }
+            return response.body(results);
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
@@ -224,33 +240,20 @@ public class FriendshipController {
                 .build();
     }
 
-    private FriendUserDTO toFriendUserDTO(User user, String friendshipStatus, Long friendshipId) {
+    private static User otherUser(Friendship friendship, User currentUser) {
+        return friendship.getRequester().getId().equals(currentUser.getId())
+                ? friendship.getAddressee()
+                : friendship.getRequester();
+    }
+
+    private FriendUserDTO toFriendUserDTO(User user, String friendshipStatus, Long friendshipId, boolean online) {
         return FriendUserDTO.builder()
                 .id(user.getId())
                 .friendshipId(friendshipId)
                 .username(user.getUsername())
                 .displayName(user.getDisplayName())
-                .online(onlineUserService.isOnline(user.getUsername()))
+                .online(online)
                 .friendshipStatus(friendshipStatus)
                 .build();
     }
-
-    /**
-     * Determine the relationship status between two users for search results.
-     */
-    private String resolveRelationshipStatus(User currentUser, Optional<Friendship> friendship) {
-        if (friendship.isEmpty()) {
-            return "NONE";
-        }
-        Friendship f = friendship.get();
-        if (f.getStatus() == FriendshipStatus.ACCEPTED) {
-            return "ACCEPTED";
-        }
-        if (f.getStatus() == FriendshipStatus.PENDING) {
-            return f.getRequester().getId().equals(currentUser.getId())
-                    ? "PENDING_OUTGOING"
-                    : "PENDING_INCOMING";
-        }
-        return "NONE";
-    }
 }
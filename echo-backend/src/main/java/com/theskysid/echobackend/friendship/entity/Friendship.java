@@ -16,6 +16,8 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 @Table(name = "friendships", uniqueConstraints = {
         @UniqueConstraint(columnNames = {"requester_id", "addressee_id"})
+}, indexes = {
+        @Index(name = "idx_friendship_addressee", columnList = "addressee_id")
 })
 public class Friendship {
 
@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -48,4 +49,19 @@ public interface FriendshipRepository extends JpaRepository<Friendship, Long> {
             "((f.requester = :userA AND f.addressee = :userB) OR " +
             "(f.requester = :userB AND f.addressee = :userA))")
     boolean areFriends(@Param("userA") User userA, @Param("userB") User userB);
+
+    /**
+     * Friendship rows of any status between one user and any of the candidates, in either direction.
+     * Requester and addressee are not fetched; only their ids are read.
+     */
+    @Query("SELECT f FROM Friendship f WHERE (f.requester.id = :userId AND f.addressee.id IN :candidateIds) " +
+            "OR (f.addressee.id = :userId AND f.requester.id IN :candidateIds)")
+    List<Friendship> findBetweenUserAndAny(@Param("userId") Long userId, @Param("candidateIds") Collection<Long> candidateIds);
+
+    /**
+     * Ids of every user with an accepted friendship with the given user, in either direction.
+     */
+    @Query("SELECT CASE WHEN f.requester.id = :userId THEN f.addressee.id ELSE f.requester.id END FROM Friendship f " +
+            "WHERE f.status = 'ACCEPTED' AND (f.requester.id = :userId OR f.addressee.id = :userId)")
+    List<Long> findAcceptedFriendIds(@Param("userId") Long userId);
 }
@@ -0,0 +1,269 @@
+package com.theskysid.echobackend.friendship.service;
+
+import com.theskysid.echobackend.friendship.repository.FriendshipRepository;
+import com.theskysid.echobackend.messaging.relay.CacheInvalidation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory adjacency of accepted friendships, so {@link FriendshipService#areFriends} is a
+ * memory lookup instead of a query.
+ * <ul>
+ *     <li>A user's friend ids are loaded on first lookup (one query) and held as a primitive
+ *     {@link LongHashSet}. A pair is answered from whichever of the two users is loaded.</li>
+ *     <li>Accepting and removing a friendship update loaded entries in place, after commit.
+ *     A removal also applies immediately, and a rolled-back transaction evicts both users instead.</li>
+ *     <li>Other nodes hear about a committed change through a {@link CacheInvalidation} (sent over
+ *     the broker relay) and evict both users.</li>
+ *     <li>A load that overlaps any update is returned to its caller but not cached, so a stale
+ *     read can never be installed after the update it missed.</li>
+ *     <li>Every entry is reloaded friendship.graph.max-age-minutes after it was loaded, however often it
+ *     is used; this bounds staleness if an invalidation from another node is lost.</li>
+ *     <li>Memory is bounded: at most friendship.graph.max-users entries (least recently used are
+ *     evicted past that), and entries idle for friendship.graph.idle-minutes are dropped.</li>
+ * </ul>
+ */
+@Component
+public class FriendshipGraph {
+
+    private static final String CACHE_NAME = "friendship-graph";
+
+    @Autowired
+    private FriendshipRepository friendshipRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${friendship.graph.max-users:100000}")
+    private int maxUsers;
+
+    @Value("${friendship.graph.idle-minutes:30}")
+    private long idleMinutes;
+
+    @Value("${friendship.graph.max-age-minutes:10}")
+    private long maxAgeMinutes;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private final Map<Long, Adjacency> adjacencyByUser = new ConcurrentHashMap<>();
+
+    // Bumped before every update; a load only installs if no update started while it ran
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private Counter hits;
+    private Counter misses;
+
+    @PostConstruct
+    public void init() {
+        hits = meterRegistry.counter("echo.friendship.graph.lookups", "result", "hit");
+        misses = meterRegistry.counter("echo.friendship.graph.lookups", "result", "miss");
+        meterRegistry.gauge("echo.friendship.graph.users", adjacencyByUser, Map::size);
+    }
+
+    public boolean areFriends(long userA, long userB) {
+        if (userA == userB) {
+            return false;
+        }
+        Adjacency adjacency = current(userA);
+        long other = userB;
+        if (adjacency == null) {
+            adjacency = current(userB);
+            other = userA;
+        }
+        if (adjacency != null) {
+            hits.increment();
+            adjacency.touch();
+            return adjacency.friends.contains(other);
+        }
+        misses.increment();
+        return load(userA).contains(userB);
+    }
+
+    /**
+     * Ids of the user's accepted friends, loading them on a miss.
+     */
+    public long[] friendIdsOf(long userId) {
+        Adjacency adjacency = current(userId);
+        if (adjacency != null) {
+            hits.increment();
+            adjacency.touch();
+            return adjacency.friends.toArray();
+        }
+        misses.increment();
+        return load(userId).toArray();
+    }
+
+    /**
+     * An accepted friendship between the two users; applied to the cache once the caller's transaction commits.
+     */
+    public void friendshipAdded(long userA, long userB) {
+        onCommit(() -> {
+            addEdge(userA, userB);
+            publishInvalidation(userA, userB);
+        }, () -> evict(userA, userB));
+    }
+
+    /**
+     * A removed friendship; applied immediately and again after commit, evicted on rollback.
+     */
+    public void friendshipRemoved(long userA, long userB) {
+        removeEdge(userA, userB);
+        onCommit(() -> {
+            removeEdge(userA, userB);
+            publishInvalidation(userA, userB);
+        }, () -> evict(userA, userB));
+    }
+
+    /**
+     * A friendship changed on another node: forget both users here.
+     */
+    @EventListener
+    public void onCacheInvalidation(CacheInvalidation invalidation) {
+        if (invalidation.remote() && CACHE_NAME.equals(invalidation.cache())) {
+            generation.incrementAndGet();
+            adjacencyByUser.remove(invalidation.id());
+        }
+    }
+
+    /**
+     * Drop entries nobody has looked up for idle-minutes, and entries past max-age-minutes.
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void evictIdle() {
+        long now = System.currentTimeMillis();
+        long idleCutoff = now - idleMinutes * 60_000;
+        long loadCutoff = now - maxAgeMinutes * 60_000;
+        adjacencyByUser.values().removeIf(adjacency ->
+                adjacency.lastAccessMillis < idleCutoff || adjacency.loadedAtMillis < loadCutoff);
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    // The loaded entry, unless it is past max-age (then the caller loads it again)
+    private Adjacency current(long userId) {
+        Adjacency adjacency = adjacencyByUser.get(userId);
+        if (adjacency != null && System.currentTimeMillis() - adjacency.loadedAtMillis > maxAgeMinutes * 60_000) {
+            adjacencyByUser.remove(userId, adjacency);
+            return null;
+        }
+        return adjacency;
+    }
+
+    private void publishInvalidation(long userA, long userB) {
+        eventPublisher.publishEvent(CacheInvalidation.local(CACHE_NAME, userA));
+        eventPublisher.publishEvent(CacheInvalidation.local(CACHE_NAME, userB));
+    }
+
+    private LongHashSet load(long userId) {
+        long startGeneration = generation.get();
+        LongHashSet friends = LongHashSet.of(friendshipRepository.findAcceptedFriendIds(userId));
+        // compute holds the key's lock, so an update either sees this entry or has already bumped the generation
+        adjacencyByUser.compute(userId, (ignored, existing) ->
+                generation.get() == startGeneration ? new Adjacency(friends) : existing);
+        if (adjacencyByUser.size() > maxUsers) {
+            evictLeastRecentlyUsed();
+        }
+        return friends;
+    }
+
+    private void addEdge(long userA, long userB) {
+        generation.incrementAndGet();
+        adjacencyByUser.computeIfPresent(userA, (ignored, adjacency) -> adjacency.replace(adjacency.friends.with(userB)));
+        adjacencyByUser.computeIfPresent(userB, (ignored, adjacency) -> adjacency.replace(adjacency.friends.with(userA)));
+    }
+
+    private void removeEdge(long userA, long userB) {
+        generation.incrementAndGet();
+        adjacencyByUser.computeIfPresent(userA, (ignored, adjacency) -> adjacency.replace(adjacency.friends.without(userB)));
+        adjacencyByUser.computeIfPresent(userB, (ignored, adjacency) -> adjacency.replace(adjacency.friends.without(userA)));
+    }
+
+    private void evict(long userA, long userB) {
+        generation.incrementAndGet();
+        adjacencyByUser.remove(userA);
+        adjacencyByUser.remove(userB);
+    }
+
+    // Trim to 90% of the bound so overflow sweeps stay rare
+    private void evictLeastRecentlyUsed() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int excess = adjacencyByUser.size() - maxUsers * 9 / 10;
+            if (excess <= 0) {
+                return;
+            }
+            adjacencyByUser.entrySet().stream()
+                    .sorted(Comparator.comparingLong(entry -> entry.getValue().lastAccessMillis))
+                    .limit(excess)
+                    .map(Map.Entry::getKey)
+                    .toList()
+                    .forEach(adjacencyByUser::remove);
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private static void onCommit(Runnable committed, Runnable rolledBack) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            committed.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                (status == STATUS_COMMITTED ? committed : rolledBack).run();
+            }
+        });
+    }
+
+    private static final class Adjacency {
+
+        private final LongHashSet friends;
+        // When the ids were read from the database; in-place updates keep it, touch never moves it
+        private final long loadedAtMillis;
+        private volatile long lastAccessMillis;
+
+        private Adjacency(LongHashSet friends) {
+            this(friends, System.currentTimeMillis());
+        }
+
+        private Adjacency(LongHashSet friends, long loadedAtMillis) {
+            this.friends = friends;
+            this.loadedAtMillis = loadedAtMillis;
+            this.lastAccessMillis = System.currentTimeMillis();
+        }
+
+        // Only write when the second changes, so hot lookups do not keep dirtying the cache line
+        private void touch() {
+            long now = System.currentTimeMillis();
+            if (now - lastAccessMillis >= 1_000) {
+                lastAccessMillis = now;
+            }
+        }
+
+        private Adjacency replace(LongHashSet updated) {
+            Adjacency adjacency = new Adjacency(updated, loadedAtMillis);
+            adjacency.lastAccessMillis = lastAccessMillis;
+            return adjacency;
+        }
+    }
+}
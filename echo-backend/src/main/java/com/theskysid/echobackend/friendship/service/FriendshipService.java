@@ -1,22 +1,35 @@
 package com.theskysid.echobackend.friendship.service;
 
+import com.theskysid.echobackend.auth.service.OnlineUserService;
 import com.theskysid.echobackend.friendship.entity.Friendship;
 import com.theskysid.echobackend.friendship.entity.FriendshipStatus;
 import com.theskysid.echobackend.friendship.repository.FriendshipRepository;
+import com.theskysid.echobackend.messaging.websocket.SessionContextRegistry;
 import com.theskysid.echobackend.user.entity.User;
 import com.theskysid.echobackend.user.repository.UserRepository;
+import com.theskysid.echobackend.user.service.UserSearchService;
+import com.theskysid.echobackend.user.service.UserSearchService.SearchPage;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
 public class FriendshipService {
 
+    /**
+     * The current user's relationship to another user, as shown in search results and friend lists.
+     */
+    public record Relationship(String status, Long friendshipId, boolean online) {
+    }
+
     @Autowired
     private FriendshipRepository friendshipRepository;
 
@@ -26,6 +39,18 @@ public class FriendshipService {
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
+    @Autowired
+    private SessionContextRegistry sessionContextRegistry;
+
+    @Autowired
+    private FriendshipGraph friendshipGraph;
+
+    @Autowired
+    private UserSearchService userSearchService;
+
+    @Autowired
+    private OnlineUserService onlineUserService;
+
     private void sendFriendEvent(User targetUser, String type, String otherUsername) {
         try {
             if (targetUser == null) {
@@ -105,6 +130,7 @@ public class FriendshipService {
         friendship.setStatus(FriendshipStatus.ACCEPTED);
         Friendship saved = friendshipRepository.save(friendship);
         friendshipRepository.flush();
+        friendshipGraph.friendshipAdded(friendship.getRequester().getId(), friendship.getAddressee().getId());
         sendFriendEvent(friendship.getRequester(), "FRIEND_REQUEST_ACCEPTED", friendship.getAddressee().getUsername());
         sendFriendEvent(friendship.getAddressee(), "FRIEND_REQUEST_ACCEPTED_BY_YOU", friendship.getRequester().getUsername());
         return saved;
@@ -196,6 +222,9 @@ public class FriendshipService {
         User uB = friendship.getAddressee();
         friendshipRepository.delete(friendship);
         friendshipRepository.flush();
+        friendshipGraph.friendshipRemoved(uA.getId(), uB.getId());
+        sessionContextRegistry.invalidateUser(uA.getId());
+        sessionContextRegistry.invalidateUser(uB.getId());
         sendFriendEvent(uA, "FRIEND_REMOVED", uB.getUsername());
         sendFriendEvent(uB, "FRIEND_REMOVED", uA.getUsername());
     }
@@ -230,24 +259,83 @@ public class FriendshipService {
     }
 
     /**
-     * Search users by username. Excludes the current user from results.
+     * Search users by username, ranked exact > prefix > substring. Excludes the current user from results.
+     */
+    public SearchPage searchUsers(User currentUser, String query, String cursor, int limit) {
+        return userSearchService.search(currentUser, query, cursor, limit);
+    }
+
+    /**
+     * How the current user relates to each candidate, keyed by candidate id: friendship status
+     * (NONE, ACCEPTED, PENDING_OUTGOING, PENDING_INCOMING), friendship id and presence.
+     * One query for all friendship rows and one presence snapshot, however many candidates.
+     * Should a pair have several rows, ACCEPTED wins over PENDING, which wins over REJECTED.
+     * Used by search results and conversation lists.
      */
     @Transactional(readOnly = true)
-    public List<User> searchUsers(User currentUser, String query) {
-        if (query == null || query.trim().length() < 2) {
-            throw new RuntimeException("Search query must be at least 2 characters");
+    public Map<Long, Relationship> resolveRelationships(User currentUser, Collection<User> candidates) {
+        if (candidates.isEmpty()) {
+            return Map.of();
         }
-
-        return userRepository.searchByUsername(query.trim()).stream()
-                .filter(u -> !u.getId().equals(currentUser.getId()))
-                .collect(Collectors.toList());
+        List<Long> candidateIds = candidates.stream().map(User::getId).toList();
+        Map<Long, Friendship> friendshipByOtherId = new HashMap<>();
+        for (Friendship friendship : friendshipRepository.findBetweenUserAndAny(currentUser.getId(), candidateIds)) {
+            Long requesterId = friendship.getRequester().getId();
+            friendshipByOtherId.merge(requesterId.equals(currentUser.getId()) ? friendship.getAddressee().getId() : requesterId,
+                    friendship, FriendshipService::stronger);
+        }
+        Set<String> online = onlineUserService.onlineAmong(candidates.stream().map(User::getUsername).toList());
+
+        Map<Long, Relationship> relationships = new HashMap<>();
+        for (User candidate : candidates) {
+            Friendship friendship = friendshipByOtherId.get(candidate.getId());
+            relationships.put(candidate.getId(), new Relationship(
+                    relationshipStatus(currentUser, friendship),
+                    friendship != null ? friendship.getId() : null,
+                    online.contains(candidate.getUsername())));
+        }
+        return relationships;
     }
 
     /**
      * Check if two users are friends. Used by the DM system.
+     * Answered from {@link FriendshipGraph}; only a user's first lookup reads the database.
      */
-    @Transactional(readOnly = true)
     public boolean areFriends(User userA, User userB) {
-        return friendshipRepository.areFriends(userA, userB);
+        return friendshipGraph.areFriends(userA.getId(), userB.getId());
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    // Of two rows for the same pair, the one that says more about the relationship; the newer on a tie
+    private static Friendship stronger(Friendship a, Friendship b) {
+        int byStatus = Integer.compare(statusPrecedence(a.getStatus()), statusPrecedence(b.getStatus()));
+        if (byStatus != 0) {
+            return byStatus < 0 ? a : b;
+        }
+        return a.getId() > b.getId() ? a : b;
+    }
+
+    private static int statusPrecedence(FriendshipStatus status) {
+        return switch (status) {
+            case ACCEPTED -> 0;
+            case PENDING -> 1;
+            case REJECTED -> 2;
+        };
+    }
+
+    private static String relationshipStatus(User currentUser, Friendship friendship) {
+        if (friendship == null) {
+            return "NONE";
+        }
+        if (friendship.getStatus() == FriendshipStatus.ACCEPTED) {
+            return "ACCEPTED";
+        }
+        if (friendship.getStatus() == FriendshipStatus.PENDING) {
+            return friendship.getRequester().getId().equals(currentUser.getId())
+                    ? "PENDING_OUTGOING"
+                    : "PENDING_INCOMING";
+        }
+        return "NONE";
     }
 }
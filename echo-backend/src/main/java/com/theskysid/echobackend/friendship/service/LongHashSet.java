@@ -0,0 +1,138 @@
+package com.theskysid.echobackend.friendship.service;
+
+import java.util.Collection;
+
+/**
+ * Immutable set of primitive longs: open addressing with linear probing, kept at most half full.
+ * About 16 bytes per element and no boxing. Updates return a copy, so readers need no locking.
+ */
+final class LongHashSet {
+
+    static final LongHashSet EMPTY = new LongHashSet(new long[2], false, 0);
+
+    // 0 marks an empty slot; the value 0 itself is tracked by containsZero
+    private final long[] slots;
+    private final boolean containsZero;
+    private final int size;
+
+    private LongHashSet(long[] slots, boolean containsZero, int size) {
+        this.slots = slots;
+        this.containsZero = containsZero;
+        this.size = size;
+    }
+
+    static LongHashSet of(Collection<Long> values) {
+        long[] slots = new long[capacityFor(values.size())];
+        boolean containsZero = false;
+        int size = 0;
+        for (Long value : values) {
+            if (value == 0) {
+                if (!containsZero) {
+                    containsZero = true;
+                    size++;
+                }
+            } else if (insert(slots, value)) {
+                size++;
+            }
+        }
+        return new LongHashSet(slots, containsZero, size);
+    }
+
+    boolean contains(long value) {
+        if (value == 0) {
+            return containsZero;
+        }
+        int mask = slots.length - 1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            long slot = slots[i];
+            if (slot == value) {
+                return true;
+            }
+            if (slot == 0) {
+                return false;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    long[] toArray() {
+        long[] values = new long[size];
+        int i = 0;
+        if (containsZero) {
+            values[i++] = 0;
+        }
+        for (long slot : slots) {
+            if (slot != 0) {
+                values[i++] = slot;
+            }
+        }
+        return values;
+    }
+
+    LongHashSet with(long value) {
+        if (contains(value)) {
+            return this;
+        }
+        if (value == 0) {
+            return new LongHashSet(slots, true, size + 1);
+        }
+        long[] copy = new long[capacityFor(size + 1)];
+        copyInto(copy, 0);
+        insert(copy, value);
+        return new LongHashSet(copy, containsZero, size + 1);
+    }
+
+    LongHashSet without(long value) {
+        if (!contains(value)) {
+            return this;
+        }
+        if (value == 0) {
+            return new LongHashSet(slots, false, size - 1);
+        }
+        // Rebuild rather than shift probe chains; removals are rare
+        long[] copy = new long[capacityFor(size - 1)];
+        copyInto(copy, value);
+        return new LongHashSet(copy, containsZero, size - 1);
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    private void copyInto(long[] target, long skip) {
+        for (long slot : slots) {
+            if (slot != 0 && slot != skip) {
+                insert(target, slot);
+            }
+        }
+    }
+
+    private static boolean insert(long[] slots, long value) {
+        int mask = slots.length - 1;
+        for (int i = mix(value) & mask; ; i = (i + 1) & mask) {
+            long slot = slots[i];
+            if (slot == value) {
+                return false;
+            }
+            if (slot == 0) {
+                slots[i] = value;
+                return true;
+            }
+        }
+    }
+
+    // Smallest power of two that keeps the table at most half full
+    private static int capacityFor(int elements) {
+        int capacity = 2;
+        while (capacity < elements * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int mix(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,165 @@
+package com.theskysid.echobackend.messaging.broker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderInitializer;
+import org.springframework.util.MultiValueMap;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drop-in replacement for Spring's {@link SimpleBrokerMessageHandler} that keeps the same
+ * destination semantics ("/topic", "/queue", "/user") but spreads the work across cores:
+ * <ul>
+ *     <li>the subscription index is a {@link ShardedSubscriptionRegistry} (sharded by destination hash)</li>
+ *     <li>every fan-out is split by session hash and delivered by one single-threaded dispatcher per shard,
+ *     so a given session is always served by the same dispatcher and sees messages in publish order</li>
+ * </ul>
+ * Even a DM to one or two sessions goes through their dispatchers: delivering it on the publishing
+ * thread could overtake a broadcast still queued for the same session.
+ * When a dispatcher's queue is full the publishing thread blocks until there is room: delivering on
+ * the caller instead would overtake the frames already queued for those sessions.
+ * Server heartbeats are still driven by the base class; writes performed by the shard dispatchers
+ * are not counted as heartbeat activity.
+ */
+public final class ShardedBrokerMessageHandler extends SimpleBrokerMessageHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardedBrokerMessageHandler.class);
+
+    private static final int DISPATCH_QUEUE_CAPACITY = 10_000;
+
+    private final int shardCount;
+
+    @Nullable
+    private volatile ExecutorService[] dispatchers;
+
+    public ShardedBrokerMessageHandler(SubscribableChannel clientInboundChannel, MessageChannel clientOutboundChannel,
+                                       SubscribableChannel brokerChannel, Collection<String> destinationPrefixes,
+                                       int shardCount, int cacheLimit) {
+        super(clientInboundChannel, clientOutboundChannel, brokerChannel, destinationPrefixes);
+        this.shardCount = shardCount;
+        setSubscriptionRegistry(new ShardedSubscriptionRegistry(shardCount, cacheLimit));
+    }
+
+    @Override
+    public void startInternal() {
+        ExecutorService[] executors = new ExecutorService[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            String threadName = "echo-broker-shard-" + i;
+            executors[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                    new LinkedBlockingQueue<>(DISPATCH_QUEUE_CAPACITY),
+                    runnable -> {
+                        Thread thread = new Thread(runnable, threadName);
+                        thread.setDaemon(true);
+                        return thread;
+                    },
+                    ShardedBrokerMessageHandler::blockUntilQueued);
+        }
+        this.dispatchers = executors;
+        super.startInternal();
+    }
+
+    @Override
+    public void stopInternal() {
+        super.stopInternal();
+        ExecutorService[] executors = this.dispatchers;
+        this.dispatchers = null;
+        if (executors != null) {
+            for (ExecutorService executor : executors) {
+                executor.shutdown();
+            }
+        }
+    }
+
+    @Override
+    protected void sendMessageToSubscribers(@Nullable String destination, Message<?> message) {
+        MultiValueMap<String, String> subscriptions = getSubscriptionRegistry().findSubscriptions(message);
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+
+        ExecutorService[] executors = this.dispatchers;
+        if (executors == null) {
+            subscriptions.forEach((sessionId, subscriptionIds) -> deliver(sessionId, subscriptionIds, message));
+            return;
+        }
+
+        List<List<Map.Entry<String, List<String>>>> partitions = new ArrayList<>(executors.length);
+        for (int i = 0; i < executors.length; i++) {
+            partitions.add(null);
+        }
+        for (Map.Entry<String, List<String>> entry : subscriptions.entrySet()) {
+            int shard = Math.floorMod(entry.getKey().hashCode(), executors.length);
+            List<Map.Entry<String, List<String>>> partition = partitions.get(shard);
+            if (partition == null) {
+                partition = new ArrayList<>();
+                partitions.set(shard, partition);
+            }
+            partition.add(entry);
+        }
+
+        for (int shard = 0; shard < executors.length; shard++) {
+            List<Map.Entry<String, List<String>>> partition = partitions.get(shard);
+            if (partition == null) {
+                continue;
+            }
+            try {
+                executors[shard].execute(() -> {
+                    for (Map.Entry<String, List<String>> entry : partition) {
+                        deliver(entry.getKey(), entry.getValue(), message);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                logger.warn("Dropped delivery to {} sessions on shard {}: {}", partition.size(), shard, ex.getMessage());
+            }
+        }
+    }
+
+    private static void blockUntilQueued(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("broker is stopping");
+        }
+        try {
+            executor.getQueue().put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("interrupted while waiting for a full shard queue", e);
+        }
+    }
+
+    private void deliver(String sessionId, List<String> subscriptionIds, Message<?> message) {
+        MessageHeaderInitializer headerInitializer = getHeaderInitializer();
+        for (String subscriptionId : subscriptionIds) {
+            SimpMessageHeaderAccessor headerAccessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            if (headerInitializer != null) {
+                headerInitializer.initHeaders(headerAccessor);
+            }
+            headerAccessor.setSessionId(sessionId);
+            headerAccessor.setSubscriptionId(subscriptionId);
+            headerAccessor.copyHeadersIfAbsent(message.getHeaders());
+            headerAccessor.setLeaveMutable(true);
+            Message<?> reply = MessageBuilder.createMessage(message.getPayload(), headerAccessor.getMessageHeaders());
+            try {
+                getClientOutboundChannel().send(reply);
+            } catch (Throwable ex) {
+                logger.error("Failed to deliver message to session {}: {}", sessionId, ex.getMessage());
+            }
+        }
+    }
+}
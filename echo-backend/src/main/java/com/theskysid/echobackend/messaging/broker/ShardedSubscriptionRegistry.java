@@ -0,0 +1,84 @@
+package com.theskysid.echobackend.messaging.broker;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
+import org.springframework.messaging.simp.broker.SubscriptionRegistry;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.PathMatcher;
+
+/**
+ * Subscription registry split into independent {@link DefaultSubscriptionRegistry} shards.
+ * Plain destinations live in exactly one shard (chosen by destination hash), so SUBSCRIBE
+ * traffic for different destinations never contends on the same cache. Pattern subscriptions
+ * are copied into every shard so each shard can answer a lookup on its own.
+ */
+public class ShardedSubscriptionRegistry implements SubscriptionRegistry {
+
+    private final DefaultSubscriptionRegistry[] shards;
+
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+
+    public ShardedSubscriptionRegistry(int shardCount, int cacheLimit) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount must be at least 1");
+        }
+        this.shards = new DefaultSubscriptionRegistry[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            DefaultSubscriptionRegistry shard = new DefaultSubscriptionRegistry();
+            shard.setCacheLimit(cacheLimit);
+            shard.setPathMatcher(pathMatcher);
+            this.shards[i] = shard;
+        }
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    @Override
+    public void registerSubscription(Message<?> subscribeMessage) {
+        String destination = SimpMessageHeaderAccessor.getDestination(subscribeMessage.getHeaders());
+        if (destination == null || !pathMatcher.isPattern(destination)) {
+            shardFor(destination).registerSubscription(subscribeMessage);
+            return;
+        }
+
+        for (DefaultSubscriptionRegistry shard : shards) {
+            shard.registerSubscription(subscribeMessage);
+        }
+    }
+
+    @Override
+    public void unregisterSubscription(Message<?> unsubscribeMessage) {
+        // UNSUBSCRIBE frames carry no destination, so every shard has to be asked
+        for (DefaultSubscriptionRegistry shard : shards) {
+            shard.unregisterSubscription(unsubscribeMessage);
+        }
+    }
+
+    @Override
+    public void unregisterAllSubscriptions(String sessionId) {
+        for (DefaultSubscriptionRegistry shard : shards) {
+            shard.unregisterAllSubscriptions(sessionId);
+        }
+    }
+
+    @Override
+    public MultiValueMap<String, String> findSubscriptions(Message<?> message) {
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination == null) {
+            return new LinkedMultiValueMap<>();
+        }
+        return shardFor(destination).findSubscriptions(message);
+    }
+
+    private DefaultSubscriptionRegistry shardFor(String destination) {
+        if (destination == null) {
+            return shards[0];
+        }
+        return shards[Math.floorMod(destination.hashCode(), shards.length)];
+    }
+}
@@ -5,8 +5,12 @@ import com.theskysid.echobackend.friendship.service.FriendshipService;
 import com.theskysid.echobackend.auth.util.IdentifierNormalizer;
 import com.theskysid.echobackend.messaging.entity.ChatMessage;
 import com.theskysid.echobackend.messaging.repository.ChatMessageRepository;
+import com.theskysid.echobackend.messaging.service.ChatMessageWriteBehind;
+import com.theskysid.echobackend.messaging.service.PresenceBroadcaster;
+import com.theskysid.echobackend.messaging.service.TypingIndicatorService;
+import com.theskysid.echobackend.messaging.websocket.FlowControlledSessionDecorator.FrameType;
 import com.theskysid.echobackend.user.entity.User;
-import com.theskysid.echobackend.user.repository.UserRepository;
+import com.theskysid.echobackend.user.service.UserIdentityCache;
 import com.theskysid.echobackend.user.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.MessageMapping;
@@ -17,6 +21,7 @@ import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
 
 import java.time.LocalDateTime;
+import java.util.Map;
 
 @Controller
 public class ChatController {
@@ -34,21 +39,29 @@ public class ChatController {
     private OnlineUserService onlineUserService;
 
     @Autowired
-    private UserRepository userRepository;
+    private UserIdentityCache userIdentityCache;
 
     @Autowired
     private FriendshipService friendshipService;
+
+    @Autowired
+    private ChatMessageWriteBehind chatMessageWriteBehind;
+
+    @Autowired
+    private TypingIndicatorService typingIndicatorService;
+
+    @Autowired
+    private PresenceBroadcaster presenceBroadcaster;
 
     //first the hit endpoint is checked in the config then accordingly it hits the specific methods
 
     @MessageMapping("/chat.addUser")
-    @SendTo("/topic/public") //automatic broadcasting to all the users
-    public ChatMessage addUser(@Payload ChatMessage chatMessage, SimpMessageHeaderAccessor headerAccessor) {
+    public void addUser(@Payload ChatMessage chatMessage, SimpMessageHeaderAccessor headerAccessor) {
         String username = IdentifierNormalizer.normalizeUsername(chatMessage.getSender());
         String sessionId = headerAccessor.getSessionId();
 
         if (username.isBlank() || !userService.userExists(username)) {
-            return null;
+            return;
         }
 
         if (headerAccessor.getSessionAttributes() != null) {
@@ -56,8 +69,10 @@ public class ChatController {
         }
 
         boolean shouldBroadcastJoin = onlineUserService.registerSession(username, sessionId);
-        if (!shouldBroadcastJoin) {
-            return null;
+        presenceBroadcaster.requestSnapshot(username);
+        // With friend-scoped presence the JOIN goes to friends only, through PresenceBroadcaster
+        if (!shouldBroadcastJoin || presenceBroadcaster.isFriendScoped()) {
+            return;
         }
 
         chatMessage.setSender(username);
@@ -69,14 +84,24 @@ public class ChatController {
             chatMessage.setContent("");
         }
 
-        return chatMessage;
+        // Sent by hand rather than through @SendTo so the JOIN is tagged as sheddable presence
+        messagingTemplate.convertAndSend("/topic/public", chatMessage, FrameType.PRESENCE.headers());
     }
 
     @MessageMapping("/chat.sendMessage")
     @SendTo("/topic/public")
-    public ChatMessage sendMessage(@Payload ChatMessage chatMessage) {
+    public ChatMessage sendMessage(@Payload ChatMessage chatMessage, SimpMessageHeaderAccessor headerAccessor) {
 
-        if (!userService.userExists(chatMessage.getSender())) {
+        // Typing is ephemeral: trust the identity bound to the socket and throttle, no database
+        if (chatMessage.getType() == ChatMessage.MessageType.TYPING) {
+            String sessionUsername = resolveSocketUsername(headerAccessor);
+            if (sessionUsername == null || !sessionUsername.equalsIgnoreCase(chatMessage.getSender())) {
+                return null;
+            }
+            if (!typingIndicatorService.shouldForward(sessionUsername, TypingIndicatorService.GLOBAL_SCOPE)) {
+                return null;
+            }
+        } else if (!userService.userExists(chatMessage.getSender())) {
             return null;
         }
 
@@ -88,12 +113,25 @@ public class ChatController {
             chatMessage.setContent("");
         }
 
-        // Save only real chat messages
+        // Save only real chat messages (batched write-behind, never on this thread)
         if (chatMessage.getType() == ChatMessage.MessageType.CHAT) {
-            return chatMessageRepository.save(chatMessage);
+            if (chatMessageWriteBehind.isAckAfterCommit()) {
+                chatMessageWriteBehind.enqueue(chatMessage,
+                        saved -> messagingTemplate.convertAndSend("/topic/public", saved),
+                        this::notifyNotSaved);
+                return null;
+            }
+            chatMessageWriteBehind.enqueue(chatMessage, null, this::notifyNotSaved);
+            return chatMessage;
+        }
+
+        // TYPING → broadcast only, tagged so slow sessions shed it first
+        if (chatMessage.getType() == ChatMessage.MessageType.TYPING) {
+            messagingTemplate.convertAndSend("/topic/public", chatMessage, FrameType.TYPING.headers());
+            return null;
         }
 
-        // TYPING / JOIN / LEAVE → broadcast only
+        // JOIN / LEAVE → broadcast only
         return chatMessage;
     }
 
@@ -110,9 +148,9 @@ public class ChatController {
             return;
         }
 
-        User sender = userRepository.findByUsernameIgnoreCase(senderUsername)
+        User sender = userIdentityCache.findByUsername(senderUsername)
                 .orElseThrow(() -> new RuntimeException("Sender not found"));
-        User recipient = userRepository.findByUsernameIgnoreCase(recipientUsername)
+        User recipient = userIdentityCache.findByUsername(recipientUsername)
                 .orElseThrow(() -> new RuntimeException("Recipient not found"));
 
         if (!friendshipService.areFriends(sender, recipient)) {
@@ -140,6 +178,13 @@ public class ChatController {
         messagingTemplate.convertAndSend(senderDestination, savedMessage);
     }
 
+    // The write-behind gave up on the message (database down or queue full)
+    private void notifyNotSaved(ChatMessage chatMessage) {
+        messagingTemplate.convertAndSend("/user/" + chatMessage.getSender() + "/queue/errors", Map.of(
+                "type", "MESSAGE_NOT_SAVED",
+                "error", "Your message could not be saved. Please try again."));
+    }
+
     private String resolveSocketUsername(SimpMessageHeaderAccessor headerAccessor) {
         if (headerAccessor.getUser() != null && headerAccessor.getUser().getName() != null) {
             return IdentifierNormalizer.normalizeUsername(headerAccessor.getUser().getName());
@@ -1,14 +1,17 @@
 package com.theskysid.echobackend.messaging.controller;
 
 import com.theskysid.echobackend.auth.service.AuthenticationService;
-import com.theskysid.echobackend.auth.service.OnlineUserService;
+import com.theskysid.echobackend.friendship.service.FriendshipService;
+import com.theskysid.echobackend.friendship.service.FriendshipService.Relationship;
 import com.theskysid.echobackend.messaging.dto.ConversationDTO;
 import com.theskysid.echobackend.messaging.dto.DirectMessageDTO;
+import com.theskysid.echobackend.messaging.dto.MessageHistoryPageDTO;
 import com.theskysid.echobackend.messaging.dto.RetentionUpdateDTO;
 import com.theskysid.echobackend.messaging.entity.Conversation;
 import com.theskysid.echobackend.messaging.entity.DirectMessage;
 import com.theskysid.echobackend.messaging.entity.RetentionPolicy;
 import com.theskysid.echobackend.messaging.service.DirectMessageService;
+import com.theskysid.echobackend.messaging.service.DirectMessageService.MessageCursor;
 import com.theskysid.echobackend.user.entity.User;
 import com.theskysid.echobackend.user.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -29,6 +32,8 @@ import java.util.stream.Collectors;
 @RequestMapping("/api/conversations")
 public class ConversationController {
 
+    private static final int MAX_PAGE_SIZE = 200;
+
     @Autowired
     private DirectMessageService directMessageService;
 
@@ -36,7 +41,7 @@ public class ConversationController {
     private AuthenticationService authenticationService;
 
     @Autowired
-    private OnlineUserService onlineUserService;
+    private FriendshipService friendshipService;
 
     @Autowired
     private UserRepository userRepository;
@@ -55,8 +60,13 @@ public class ConversationController {
         }
         try {
             User currentUser = authenticationService.resolveAuthenticatedUser(authentication.getName());
-            List<ConversationDTO> dtos = directMessageService.getConversations(currentUser).stream()
-                    .map(conv -> toConversationDTO(conv, currentUser))
+            List<Conversation> conversations = directMessageService.getConversations(currentUser);
+            // One friendship query and one presence snapshot for the whole list
+            Map<Long, Relationship> relationships = friendshipService.resolveRelationships(currentUser,
+                    conversations.stream().map(conv -> conv.getOtherParticipant(currentUser)).toList());
+            List<ConversationDTO> dtos = conversations.stream()
+                    .map(conv -> toConversationDTO(conv, currentUser,
+                            relationships.get(conv.getOtherParticipant(currentUser).getId())))
                     .collect(Collectors.toList());
             return ResponseEntity.ok(dtos);
         } catch (RuntimeException e) {
@@ -88,6 +98,59 @@ public class ConversationController {
         }
     }
 
+    /**
+     * GET /api/conversations/{id}/messages/cursor?before={token}&limit=50 — keyset-paginated history,
+     * newest first; pass nextCursor back as "before" to load older messages
+     */
+    @GetMapping("/{id}/messages/cursor")
+    @Transactional(readOnly = true)
+    public ResponseEntity<?> getMessagesBefore(
+            @PathVariable Long id,
+            @RequestParam(required = false) String before,
+            @RequestParam(defaultValue = "50") int limit,
+            Authentication authentication) {
+        if (authentication == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Not authenticated"));
+        }
+        try {
+            int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+            MessageCursor cursor = before == null || before.isBlank() ? null : MessageCursor.decode(before);
+            User currentUser = authenticationService.resolveAuthenticatedUser(authentication.getName());
+            Conversation conversation = directMessageService.getConversation(id, currentUser);
+
+            List<DirectMessage> rows = directMessageService.getMessagesBefore(conversation, currentUser, cursor, pageSize);
+            boolean hasOlder = rows.size() > pageSize;
+            List<DirectMessage> page = hasOlder ? rows.subList(0, pageSize) : rows;
+
+            List<DirectMessageDTO> messages = page.stream()
+                    .map(message -> toDirectMessageDTO(message, conversation))
+                    .collect(Collectors.toList());
+            return ResponseEntity.ok(MessageHistoryPageDTO.builder()
+                    .messages(messages)
+                    .nextCursor(hasOlder ? MessageCursor.of(page.get(page.size() - 1)).encode() : null)
+                    .build());
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * POST /api/conversations/{id}/read — reset the caller's unread count for a conversation
+     */
+    @PostMapping("/{id}/read")
+    public ResponseEntity<?> markRead(@PathVariable Long id, Authentication authentication) {
+        if (authentication == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Not authenticated"));
+        }
+        try {
+            User currentUser = authenticationService.resolveAuthenticatedUser(authentication.getName());
+            directMessageService.markRead(id, currentUser);
+            return ResponseEntity.ok(Map.of("message", "Conversation marked as read"));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
     /**
      * PUT /api/conversations/{id}/retention — update conversation retention policy
      */
@@ -156,23 +219,41 @@ public class ConversationController {
 
     private ConversationDTO toConversationDTO(Conversation conversation, User currentUser) {
         User otherUser = conversation.getOtherParticipant(currentUser);
+        return toConversationDTO(conversation, currentUser,
+                friendshipService.resolveRelationships(currentUser, List.of(otherUser)).get(otherUser.getId()));
+    }
+
+    private ConversationDTO toConversationDTO(Conversation conversation, User currentUser, Relationship relationship) {
+        User otherUser = conversation.getOtherParticipant(currentUser);
+        Long lastSenderId = conversation.getLastMessageSenderId();
+        String lastSender = lastSenderId == null ? null
+                : lastSenderId.equals(currentUser.getId()) ? currentUser.getUsername() : otherUser.getUsername();
         return ConversationDTO.builder()
                 .id(conversation.getId())
                 .otherUserId(otherUser.getId())
                 .otherUsername(otherUser.getUsername())
                 .otherDisplayName(otherUser.getDisplayName())
-                .otherUserOnline(onlineUserService.isOnline(otherUser.getUsername()))
+                .otherUserOnline(relationship.online())
+                .friendshipStatus(relationship.status())
                 .retentionPolicy(conversation.getRetentionPolicy().name())
+                .lastMessagePreview(conversation.getLastMessagePreview())
+                .lastMessageSenderUsername(lastSender)
+                .lastMessageAt(conversation.getLastMessageAt())
+                .unreadCount(conversation.getUnreadCountFor(currentUser))
                 .createdAt(conversation.getCreatedAt())
                 .updatedAt(conversation.getUpdatedAt())
                 .build();
     }
 
     private DirectMessageDTO toDirectMessageDTO(DirectMessage message) {
-        User recipient = message.getConversation().getOtherParticipant(message.getSender());
+        return toDirectMessageDTO(message, message.getConversation());
+    }
+
+    private DirectMessageDTO toDirectMessageDTO(DirectMessage message, Conversation conversation) {
+        User recipient = conversation.getOtherParticipant(message.getSender());
         return DirectMessageDTO.builder()
                 .id(message.getId())
-                .conversationId(message.getConversation().getId())
+                .conversationId(conversation.getId())
                 .senderId(message.getSender().getId())
                 .senderUsername(message.getSender().getUsername())
                 .recipientUsername(recipient.getUsername())
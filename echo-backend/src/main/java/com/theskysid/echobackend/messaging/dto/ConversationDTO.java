@@ -13,7 +13,13 @@ public class ConversationDTO {
     private String otherUsername;
     private String otherDisplayName;
     private boolean otherUserOnline;
+    // NONE, ACCEPTED, PENDING_OUTGOING or PENDING_INCOMING, as in friend search results
+    private String friendshipStatus;
     private String retentionPolicy;
+    private String lastMessagePreview;
+    private String lastMessageSenderUsername;
+    private LocalDateTime lastMessageAt;
+    private int unreadCount;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 }
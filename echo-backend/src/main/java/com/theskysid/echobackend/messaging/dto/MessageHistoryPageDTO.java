@@ -0,0 +1,14 @@
+package com.theskysid.echobackend.messaging.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class MessageHistoryPageDTO {
+    private List<DirectMessageDTO> messages;
+    // Pass back as ?before= to load the next (older) page; null when there is nothing older
+    private String nextCursor;
+}
@@ -0,0 +1,17 @@
+package com.theskysid.echobackend.messaging.dto;
+
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+public class PresenceDeltaDTO {
+    // True for the full list of online friends sent when a session joins; online replaces what the client had
+    private boolean snapshot;
+    private List<String> online;
+    private List<String> offline;
+    private LocalDateTime timestamp;
+}
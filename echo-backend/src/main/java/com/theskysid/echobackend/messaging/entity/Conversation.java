@@ -16,9 +16,14 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 @Table(name = "conversations", uniqueConstraints = {
         @UniqueConstraint(columnNames = {"participant_one_id", "participant_two_id"})
+}, indexes = {
+        @Index(name = "idx_conversation_active_count", columnList = "active_message_count"),
+        @Index(name = "idx_conversation_participant_two", columnList = "participant_two_id")
 })
 public class Conversation {
 
+    public static final int PREVIEW_LENGTH = 200;
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -41,6 +46,30 @@ public class Conversation {
     @Column(name = "updated_at", nullable = false)
     private LocalDateTime updatedAt;
 
+    // Non-expired messages; maintained on send and by the expiry job
+    @Column(name = "active_message_count", nullable = false, columnDefinition = "integer default 0")
+    private int activeMessageCount;
+
+    @Column(name = "last_message_at")
+    private LocalDateTime lastMessageAt;
+
+    // Inbox read model: preview of the latest message, and unread counts per participant slot
+    @Column(name = "last_message_preview", length = PREVIEW_LENGTH)
+    private String lastMessagePreview;
+
+    @Column(name = "last_message_sender_id")
+    private Long lastMessageSenderId;
+
+    @Column(name = "unread_count_one", nullable = false, columnDefinition = "integer default 0")
+    private int unreadCountOne;
+
+    @Column(name = "unread_count_two", nullable = false, columnDefinition = "integer default 0")
+    private int unreadCountTwo;
+
+    // NULL only on conversations that predate the counters, until the startup backfill has counted them
+    @Column(name = "counters_initialised")
+    private Boolean countersInitialised;
+
     @PrePersist
     protected void onCreate() {
         this.createdAt = LocalDateTime.now();
@@ -48,6 +77,9 @@ public class Conversation {
         if (this.retentionPolicy == null) {
             this.retentionPolicy = RetentionPolicy.ONE_DAY;
         }
+        if (this.countersInitialised == null) {
+            this.countersInitialised = true;
+        }
     }
 
     @PreUpdate
@@ -63,6 +95,13 @@ public class Conversation {
                 || participantTwo.getId().equals(user.getId());
     }
 
+    /**
+     * Unread messages for one of the participants.
+     */
+    public int getUnreadCountFor(User user) {
+        return participantOne.getId().equals(user.getId()) ? unreadCountOne : unreadCountTwo;
+    }
+
     /**
      * Get the other participant in the conversation.
      */
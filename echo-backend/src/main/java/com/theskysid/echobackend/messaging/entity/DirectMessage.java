@@ -15,7 +15,7 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Table(name = "direct_messages", indexes = {
-        @Index(name = "idx_dm_conversation", columnList = "conversation_id"),
+        @Index(name = "idx_dm_conversation_timestamp_id", columnList = "conversation_id, timestamp, id"),
         @Index(name = "idx_dm_expires_at", columnList = "expires_at")
 })
 public class DirectMessage {
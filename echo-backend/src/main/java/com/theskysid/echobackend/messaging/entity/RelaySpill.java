@@ -0,0 +1,30 @@
+package com.theskysid.echobackend.messaging.entity;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * A relayed broker frame too large for a NOTIFY payload; only its id goes over the channel.
+ * Written, read and purged with plain JDBC by PostgresBrokerRelay (rows live for a few minutes),
+ * mapped here so the table is created and migrated by ddl-auto like every other table.
+ */
+@Entity
+@Data
+@NoArgsConstructor
+@Table(name = "broker_relay_spill")
+public class RelaySpill {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // A serialized RelayFrame
+    @Column(nullable = false, columnDefinition = "TEXT")
+    private String payload;
+
+    @Column(name = "created_at", nullable = false, columnDefinition = "timestamp default now()")
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,15 @@
+package com.theskysid.echobackend.messaging.relay;
+
+/**
+ * Application event saying that one entry of a node-local cache is stale.
+ * <p>
+ * A cache publishes it with {@code remote = false} once its own change has committed;
+ * {@link PostgresBrokerRelay} (when enabled) forwards it over the relay channel and republishes it
+ * on the other nodes with {@code remote = true}, where the same cache drops the entry.
+ */
+public record CacheInvalidation(String cache, long id, boolean remote) {
+
+    public static CacheInvalidation local(String cache, long id) {
+        return new CacheInvalidation(cache, id, false);
+    }
+}
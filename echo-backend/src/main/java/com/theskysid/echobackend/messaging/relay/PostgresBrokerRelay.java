@@ -0,0 +1,384 @@
+package com.theskysid.echobackend.messaging.relay;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.theskysid.echobackend.messaging.entity.RelaySpill;
+import com.theskysid.echobackend.messaging.websocket.FlowControlledSessionDecorator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Relays broker messages between backend nodes through Postgres LISTEN/NOTIFY.
+ * <p>
+ * Every MESSAGE sent to the local brokerChannel (SimpMessagingTemplate.convertAndSend, @SendTo)
+ * is queued in a bounded local queue and published in batches, so a global-chat burst becomes a
+ * handful of NOTIFYs rather than one per frame. Other nodes re-inject the frames into their own
+ * brokerChannel, where the broker and the user-destination resolver deliver them to locally
+ * connected sessions. Re-injected frames are tagged so they are never relayed again.
+ * <p>
+ * NOTIFY payloads are limited to 8000 bytes; a single frame larger than that is written to the
+ * broker_relay_spill table ({@link RelaySpill}) and only its id is sent over the channel.
+ * <p>
+ * LISTEN holds its connection for as long as the node runs, so the listener opens its own through
+ * the driver rather than borrowing one from the pool: a pooled connection would sit checked out
+ * forever and still be retired under it when it reaches the pool's maxLifetime.
+ * <p>
+ * The same channel carries {@link CacheInvalidation}s: local ones are sent to the other nodes right
+ * away (they are rare), and received ones are republished there as remote application events.
+ */
+@Component
+@ConditionalOnProperty(name = "websocket.relay.enabled", havingValue = "true")
+public class PostgresBrokerRelay implements ChannelInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostgresBrokerRelay.class);
+
+    static final String RELAY_ORIGIN_HEADER = "echoRelayOrigin";
+
+    private static final int MAX_NOTIFY_PAYLOAD_BYTES = 7900;
+    private static final int ENVELOPE_OVERHEAD_BYTES = 128;
+    private static final int FRAME_OVERHEAD_BYTES = 64;
+    private static final Pattern CHANNEL_NAME = Pattern.compile("[a-z_][a-z0-9_]*");
+
+    @Autowired
+    private DataSourceProperties dataSourceProperties;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    @Qualifier("brokerChannel")
+    private AbstractSubscribableChannel brokerChannel;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${websocket.relay.channel:echo_broker}")
+    private String channelName;
+
+    @Value("${websocket.relay.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${websocket.relay.max-batch:200}")
+    private int maxBatch;
+
+    @Value("${websocket.relay.linger-ms:5}")
+    private long lingerMs;
+
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private BlockingQueue<RelayFrame> outbound;
+    private Counter publishedFrames;
+    private Counter droppedFrames;
+    private Counter receivedFrames;
+
+    private volatile boolean running;
+    private Thread publisherThread;
+    private Thread listenerThread;
+
+    @PostConstruct
+    public void start() {
+        if (!CHANNEL_NAME.matcher(channelName).matches()) {
+            throw new IllegalStateException("Invalid relay channel name: " + channelName);
+        }
+
+        outbound = new ArrayBlockingQueue<>(queueCapacity);
+        publishedFrames = meterRegistry.counter("echo.relay.frames", "direction", "published");
+        droppedFrames = meterRegistry.counter("echo.relay.frames", "direction", "dropped");
+        receivedFrames = meterRegistry.counter("echo.relay.frames", "direction", "received");
+        Gauge.builder("echo.relay.queue.depth", outbound, BlockingQueue::size).register(meterRegistry);
+
+        running = true;
+        publisherThread = new Thread(this::publishLoop, "echo-relay-publisher");
+        publisherThread.setDaemon(true);
+        publisherThread.start();
+
+        listenerThread = new Thread(this::listenLoop, "echo-relay-listener");
+        listenerThread.setDaemon(true);
+        listenerThread.start();
+
+        brokerChannel.addInterceptor(this);
+        logger.info("Broker relay started on channel {} as node {}", channelName, nodeId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        brokerChannel.removeInterceptor(this);
+        if (publisherThread != null) {
+            publisherThread.interrupt();
+        }
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+        }
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (!running) {
+            return message;
+        }
+
+        MessageHeaders headers = message.getHeaders();
+        // Frames from other nodes and per-session copies resolved from /user/... stay local.
+        // UserDestinationMessageHandler records the original destination as a native header.
+        if (headers.containsKey(RELAY_ORIGIN_HEADER)
+                || SimpMessageHeaderAccessor.getFirstNativeHeader(SimpMessageHeaderAccessor.ORIGINAL_DESTINATION, headers) != null
+                || SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE) {
+            return message;
+        }
+
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        if (destination == null || !(message.getPayload() instanceof byte[] payload)) {
+            return message;
+        }
+
+        Object contentType = headers.get(MessageHeaders.CONTENT_TYPE);
+        RelayFrame frame = new RelayFrame(destination, contentType != null ? contentType.toString() : null,
+                SimpMessageHeaderAccessor.getFirstNativeHeader(FlowControlledSessionDecorator.FRAME_TYPE_HEADER, headers),
+                payload);
+        if (!outbound.offer(frame)) {
+            droppedFrames.increment();
+            logger.warn("Broker relay queue full, frame for {} not relayed", destination);
+        }
+        return message;
+    }
+
+    /**
+     * Send a local cache invalidation to the other nodes. Published after commit by the cache itself,
+     * so a failure here only leaves the peers' entries to their own expiry.
+     */
+    @EventListener
+    public void forwardCacheInvalidation(CacheInvalidation invalidation) {
+        if (!running || invalidation.remote()) {
+            return;
+        }
+        try {
+            notifyPeers(new RelayEnvelope(nodeId, null, null,
+                    List.of(new RelayInvalidation(invalidation.cache(), invalidation.id()))));
+        } catch (Exception e) {
+            logger.warn("Broker relay failed to send a {} cache invalidation: {}", invalidation.cache(), e.getMessage());
+        }
+    }
+
+    /**
+     * Spilled payloads are only needed until every node has read them.
+     */
+    @Scheduled(fixedRate = 60_000)
+    public void purgeSpilledFrames() {
+        jdbcTemplate.update("DELETE FROM broker_relay_spill WHERE created_at < now() - interval '5 minutes'");
+    }
+
+    // ── Publishing ──────────────────────────────────────────────
+
+    private void publishLoop() {
+        List<RelayFrame> batch = new ArrayList<>(maxBatch);
+        long lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        while (running) {
+            try {
+                RelayFrame first = outbound.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    RelayFrame next = remaining > 0 ? outbound.poll(remaining, TimeUnit.NANOSECONDS) : outbound.poll();
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                publish(batch);
+                publishedFrames.increment(batch.size());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.warn("Broker relay failed to publish {} frames: {}", batch.size(), e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void publish(List<RelayFrame> batch) throws Exception {
+        List<RelayFrame> envelopeFrames = new ArrayList<>();
+        int envelopeBytes = ENVELOPE_OVERHEAD_BYTES;
+
+        for (RelayFrame frame : batch) {
+            int frameBytes = estimateSize(frame);
+            if (ENVELOPE_OVERHEAD_BYTES + frameBytes > MAX_NOTIFY_PAYLOAD_BYTES) {
+                notifyPeers(new RelayEnvelope(nodeId, null, spill(frame), null));
+                continue;
+            }
+            if (envelopeBytes + frameBytes > MAX_NOTIFY_PAYLOAD_BYTES) {
+                notifyPeers(new RelayEnvelope(nodeId, envelopeFrames, null, null));
+                envelopeFrames = new ArrayList<>();
+                envelopeBytes = ENVELOPE_OVERHEAD_BYTES;
+            }
+            envelopeFrames.add(frame);
+            envelopeBytes += frameBytes;
+        }
+
+        if (!envelopeFrames.isEmpty()) {
+            notifyPeers(new RelayEnvelope(nodeId, envelopeFrames, null, null));
+        }
+    }
+
+    private Long spill(RelayFrame frame) throws Exception {
+        return jdbcTemplate.queryForObject(
+                "INSERT INTO broker_relay_spill (payload) VALUES (?) RETURNING id",
+                Long.class,
+                objectMapper.writeValueAsString(frame));
+    }
+
+    private void notifyPeers(RelayEnvelope envelope) throws Exception {
+        jdbcTemplate.query("SELECT pg_notify(?, ?)", (ResultSetExtractor<Void>) rs -> null,
+                channelName, objectMapper.writeValueAsString(envelope));
+    }
+
+    private int estimateSize(RelayFrame frame) {
+        int size = FRAME_OVERHEAD_BYTES + frame.destination().length() + (frame.payload().length + 2) / 3 * 4;
+        if (frame.frameType() != null) {
+            size += frame.frameType().length();
+        }
+        return frame.contentType() != null ? size + frame.contentType().length() : size;
+    }
+
+    // ── Receiving ───────────────────────────────────────────────
+
+    private void listenLoop() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(dataSourceProperties.determineUrl(),
+                    dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword())) {
+                PGConnection pgConnection = connection.unwrap(PGConnection.class);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channelName);
+                }
+
+                while (running) {
+                    PGNotification[] notifications = pgConnection.getNotifications(1000);
+                    if (notifications == null) {
+                        continue;
+                    }
+                    for (PGNotification notification : notifications) {
+                        handleNotification(notification.getParameter());
+                    }
+                }
+            } catch (SQLException e) {
+                if (!running) {
+                    return;
+                }
+                logger.warn("Broker relay listener lost its connection, reconnecting: {}", e.getMessage());
+                try {
+                    Thread.sleep(1000);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void handleNotification(String payload) {
+        try {
+            RelayEnvelope envelope = objectMapper.readValue(payload, RelayEnvelope.class);
+            if (nodeId.equals(envelope.node())) {
+                return;
+            }
+            if (envelope.invalidations() != null) {
+                for (RelayInvalidation invalidation : envelope.invalidations()) {
+                    eventPublisher.publishEvent(new CacheInvalidation(invalidation.cache(), invalidation.id(), true));
+                }
+            }
+
+            List<RelayFrame> frames = envelope.frames();
+            if (envelope.spillId() != null) {
+                String spilled = jdbcTemplate.queryForObject(
+                        "SELECT payload FROM broker_relay_spill WHERE id = ?", String.class, envelope.spillId());
+                frames = List.of(objectMapper.readValue(spilled, RelayFrame.class));
+            }
+            if (frames == null) {
+                return;
+            }
+
+            for (RelayFrame frame : frames) {
+                brokerChannel.send(toMessage(frame, envelope.node()));
+            }
+            receivedFrames.increment(frames.size());
+        } catch (Exception e) {
+            logger.warn("Broker relay dropped an unreadable notification: {}", e.getMessage());
+        }
+    }
+
+    private Message<byte[]> toMessage(RelayFrame frame, String originNode) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(frame.destination());
+        if (frame.contentType() != null) {
+            accessor.setContentType(MimeTypeUtils.parseMimeType(frame.contentType()));
+        }
+        if (frame.frameType() != null) {
+            accessor.setNativeHeader(FlowControlledSessionDecorator.FRAME_TYPE_HEADER, frame.frameType());
+        }
+        accessor.setHeader(RELAY_ORIGIN_HEADER, originNode);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(frame.payload(), accessor.getMessageHeaders());
+    }
+
+    // frameType is the producer's FlowControlledSessionDecorator.FRAME_TYPE_HEADER, null for content
+    record RelayFrame(String destination, String contentType, String frameType, byte[] payload) {
+    }
+
+    record RelayEnvelope(String node, List<RelayFrame> frames, Long spillId, List<RelayInvalidation> invalidations) {
+    }
+
+    record RelayInvalidation(String cache, long id) {
+    }
+}
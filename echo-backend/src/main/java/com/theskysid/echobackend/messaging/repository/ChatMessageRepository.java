@@ -1,6 +1,7 @@
 package com.theskysid.echobackend.messaging.repository;
 
 import com.theskysid.echobackend.messaging.entity.ChatMessage;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -17,6 +18,15 @@ public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long>
     @Query("SELECT cm FROM ChatMessage cm WHERE cm.type = 'CHAT' AND cm.timestamp >= :cutoff ORDER BY cm.timestamp ASC")
     List<ChatMessage> findGlobalMessagesSince(@Param("cutoff") java.time.LocalDateTime cutoff);
 
+    @Query("SELECT cm FROM ChatMessage cm WHERE cm.type = 'CHAT' AND cm.timestamp >= :cutoff ORDER BY cm.id DESC")
+    List<ChatMessage> findLatestGlobalMessages(@Param("cutoff") java.time.LocalDateTime cutoff, Pageable pageable);
+
+    @Query("SELECT cm FROM ChatMessage cm WHERE cm.type = 'CHAT' AND cm.timestamp >= :cutoff AND cm.id < :beforeId ORDER BY cm.id DESC")
+    List<ChatMessage> findGlobalMessagesBefore(@Param("cutoff") java.time.LocalDateTime cutoff, @Param("beforeId") Long beforeId, Pageable pageable);
+
+    @Query("SELECT cm FROM ChatMessage cm WHERE cm.type = 'CHAT' AND cm.timestamp >= :cutoff AND cm.id > :afterId ORDER BY cm.id ASC")
+    List<ChatMessage> findGlobalMessagesAfter(@Param("cutoff") java.time.LocalDateTime cutoff, @Param("afterId") Long afterId, Pageable pageable);
+
     @org.springframework.data.jpa.repository.Modifying
     @Query("DELETE FROM ChatMessage cm WHERE cm.type = 'CHAT' AND cm.timestamp < :cutoff")
     void deleteOldGlobalMessages(@Param("cutoff") java.time.LocalDateTime cutoff);
@@ -7,6 +7,8 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -29,11 +31,106 @@ public interface ConversationRepository extends JpaRepository<Conversation, Long
             "ORDER BY c.updatedAt DESC")
     List<Conversation> findByParticipant(@Param("user") User user);
 
+    /**
+     * The user's inbox: conversations with a current friend, most recent activity first.
+     * The friendship check is an EXISTS probe on the friendships unique index, not a query per row.
+     */
+    @Query("SELECT c FROM Conversation c JOIN FETCH c.participantOne JOIN FETCH c.participantTwo " +
+            "WHERE (c.participantOne = :user OR c.participantTwo = :user) " +
+            "AND EXISTS (SELECT 1 FROM Friendship f WHERE f.status = com.theskysid.echobackend.friendship.entity.FriendshipStatus.ACCEPTED " +
+            "AND ((f.requester = c.participantOne AND f.addressee = c.participantTwo) " +
+            "OR (f.requester = c.participantTwo AND f.addressee = c.participantOne))) " +
+            "ORDER BY c.updatedAt DESC")
+    List<Conversation> findInbox(@Param("user") User user);
+
+    /**
+     * Count a new message against its conversation without loading it: bumps the activity
+     * timestamps, stores the preview and adds one to the recipient's unread count.
+     */
+    @Modifying
+    @Query("UPDATE Conversation c SET c.activeMessageCount = c.activeMessageCount + 1, " +
+            "c.lastMessageAt = :sentAt, c.updatedAt = :sentAt, " +
+            "c.lastMessagePreview = :preview, c.lastMessageSenderId = :senderId, " +
+            "c.unreadCountOne = c.unreadCountOne + CASE WHEN c.participantOne.id = :senderId THEN 0 ELSE 1 END, " +
+            "c.unreadCountTwo = c.unreadCountTwo + CASE WHEN c.participantTwo.id = :senderId THEN 0 ELSE 1 END " +
+            "WHERE c.id = :id")
+    int recordMessage(@Param("id") Long id, @Param("sentAt") LocalDateTime sentAt,
+                      @Param("senderId") Long senderId, @Param("preview") String preview);
+
+    /**
+     * Reset one participant's unread count. Leaves updatedAt alone, so reading does not reorder the inbox.
+     */
+    @Modifying
+    @Query("UPDATE Conversation c SET " +
+            "c.unreadCountOne = CASE WHEN c.participantOne.id = :userId THEN 0 ELSE c.unreadCountOne END, " +
+            "c.unreadCountTwo = CASE WHEN c.participantTwo.id = :userId THEN 0 ELSE c.unreadCountTwo END " +
+            "WHERE c.id = :id")
+    int markRead(@Param("id") Long id, @Param("userId") Long userId);
+
+    /**
+     * Subtract the same number of expired messages from several conversations at once.
+     * Unread counts are capped at what is left, and the preview is cleared once nothing is.
+     */
+    @Modifying
+    @Query("UPDATE Conversation c SET c.activeMessageCount = c.activeMessageCount - :expired, " +
+            "c.unreadCountOne = LEAST(c.unreadCountOne, GREATEST(c.activeMessageCount - :expired, 0)), " +
+            "c.unreadCountTwo = LEAST(c.unreadCountTwo, GREATEST(c.activeMessageCount - :expired, 0)), " +
+            "c.lastMessagePreview = CASE WHEN c.activeMessageCount - :expired <= 0 THEN NULL ELSE c.lastMessagePreview END " +
+            "WHERE c.id IN :ids")
+    int releaseExpiredMessages(@Param("ids") Collection<Long> ids, @Param("expired") int expired);
+
+    /**
+     * Point the inbox preview of the given conversations at their newest live message (NULL if none),
+     * after expiry removed rows the preview may have shown. A conversation whose last_message_at moved
+     * while this ran (a concurrent send, which set its own preview) is left alone.
+     */
+    @Modifying
+    @Query(value = "UPDATE conversations c SET last_message_preview = LEFT(latest.content, " + Conversation.PREVIEW_LENGTH + "), " +
+            "       last_message_sender_id = latest.sender_id " +
+            "FROM conversations snapshot LEFT JOIN LATERAL " +
+            "     (SELECT dm.content, dm.sender_id FROM direct_messages dm " +
+            "      WHERE dm.conversation_id = snapshot.id AND dm.expires_at > :now " +
+            "      ORDER BY dm.timestamp DESC, dm.id DESC LIMIT 1) latest ON true " +
+            "WHERE c.id = snapshot.id AND c.id IN (:ids) " +
+            "AND c.last_message_at IS NOT DISTINCT FROM snapshot.last_message_at", nativeQuery = true)
+    int refreshPreviews(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    /**
+     * Lock a batch of conversations whose counters have not been initialised yet. Until the caller's
+     * transaction ends, recordMessage on them waits, so a recount in the same transaction cannot be
+     * overwritten by (or overwrite) a concurrent send. Not @Modifying: FOR UPDATE is a query.
+     */
+    @Query(value = "SELECT id FROM conversations WHERE counters_initialised IS NOT TRUE ORDER BY id LIMIT :limit FOR UPDATE",
+            nativeQuery = true)
+    List<Long> lockConversationsWithoutCounters(@Param("limit") int limit);
+
+    /**
+     * Initialise the counters and inbox preview of the given (locked) conversations from their live rows.
+     * Absolute values, so re-running it on already counted conversations changes nothing.
+     */
+    @Modifying
+    @Query(value = "UPDATE conversations c SET active_message_count = s.active, last_message_at = s.last_at, " +
+            "       last_message_preview = LEFT(s.last_content, " + Conversation.PREVIEW_LENGTH + "), last_message_sender_id = s.last_sender " +
+            "FROM (SELECT DISTINCT ON (dm.conversation_id) dm.conversation_id, " +
+            "             COUNT(*) OVER (PARTITION BY dm.conversation_id) AS active, " +
+            "             dm.timestamp AS last_at, dm.content AS last_content, dm.sender_id AS last_sender " +
+            "      FROM direct_messages dm " +
+            "      WHERE dm.expires_at > :now AND dm.conversation_id IN (:ids) " +
+            "      ORDER BY dm.conversation_id, dm.timestamp DESC, dm.id DESC) s " +
+            "WHERE c.id = s.conversation_id", nativeQuery = true)
+    int backfillMessageCounters(@Param("ids") Collection<Long> ids, @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("UPDATE Conversation c SET c.countersInitialised = true WHERE c.id IN :ids")
+    int markCountersInitialised(@Param("ids") Collection<Long> ids);
+
     /**
      * Delete conversations that have zero remaining messages (all expired and cleaned up).
+     * Candidates come from the counter index; the NOT EXISTS probe only guards against a drifted counter.
+     * Conversations idle for less than the grace period are kept, so a new one survives until its first message.
      */
     @Modifying
-    @Query("DELETE FROM Conversation c WHERE c.id NOT IN " +
-            "(SELECT DISTINCT dm.conversation.id FROM DirectMessage dm)")
-    int deleteConversationsWithNoMessages();
+    @Query("DELETE FROM Conversation c WHERE c.activeMessageCount <= 0 AND c.updatedAt < :idleSince " +
+            "AND NOT EXISTS (SELECT 1 FROM DirectMessage dm WHERE dm.conversation = c)")
+    int deleteConversationsWithNoMessages(@Param("idleSince") LocalDateTime idleSince);
 }
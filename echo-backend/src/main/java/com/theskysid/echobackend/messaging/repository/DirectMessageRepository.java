@@ -10,6 +10,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 public interface DirectMessageRepository extends JpaRepository<DirectMessage, Long> {
 
@@ -26,6 +27,34 @@ public interface DirectMessageRepository extends JpaRepository<DirectMessage, Lo
             @Param("now") LocalDateTime now,
             Pageable pageable);
 
+    /**
+     * Keyset page of non-expired messages, newest first, strictly older than (beforeTimestamp, beforeId).
+     * Walks idx_dm_conversation_timestamp_id; no count query and only the sender is fetched.
+     * The redundant {@code timestamp <= :beforeTimestamp} gives the planner an index bound to start the
+     * backward scan from; the OR alone is only applied as a filter.
+     */
+    @Query("SELECT dm FROM DirectMessage dm JOIN FETCH dm.sender WHERE dm.conversation = :conversation " +
+            "AND dm.expiresAt > :now " +
+            "AND dm.timestamp <= :beforeTimestamp " +
+            "AND (dm.timestamp < :beforeTimestamp OR (dm.timestamp = :beforeTimestamp AND dm.id < :beforeId)) " +
+            "ORDER BY dm.timestamp DESC, dm.id DESC")
+    List<DirectMessage> findActiveByConversationBefore(
+            @Param("conversation") Conversation conversation,
+            @Param("now") LocalDateTime now,
+            @Param("beforeTimestamp") LocalDateTime beforeTimestamp,
+            @Param("beforeId") Long beforeId,
+            Pageable pageable);
+
+    /**
+     * Newest page for keyset pagination (no cursor yet).
+     */
+    @Query("SELECT dm FROM DirectMessage dm JOIN FETCH dm.sender WHERE dm.conversation = :conversation " +
+            "AND dm.expiresAt > :now ORDER BY dm.timestamp DESC, dm.id DESC")
+    List<DirectMessage> findLatestActiveByConversation(
+            @Param("conversation") Conversation conversation,
+            @Param("now") LocalDateTime now,
+            Pageable pageable);
+
     /**
      * Delete all messages that have expired. Called by the scheduled cleanup task.
      */
@@ -33,6 +62,15 @@ public interface DirectMessageRepository extends JpaRepository<DirectMessage, Lo
     @Query("DELETE FROM DirectMessage dm WHERE dm.expiresAt < :now")
     int deleteExpiredMessages(@Param("now") LocalDateTime now);
 
+    /**
+     * Delete expired messages and report how many went per conversation, so counters can be adjusted.
+     * Rows are [conversation_id, count]. Run as a query, not @Modifying (which only allows int/void
+     * returns), so the caller must hold a transaction.
+     */
+    @Query(value = "WITH expired AS (DELETE FROM direct_messages WHERE expires_at < :now RETURNING conversation_id) " +
+            "SELECT conversation_id, COUNT(*) FROM expired GROUP BY conversation_id", nativeQuery = true)
+    List<Object[]> deleteExpiredMessagesByConversation(@Param("now") LocalDateTime now);
+
     /**
      * Check if a conversation has any remaining (non-expired) messages.
      */
@@ -0,0 +1,310 @@
+package com.theskysid.echobackend.messaging.service;
+
+import com.theskysid.echobackend.messaging.entity.ChatMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Write-behind persistence for global chat messages.
+ * <p>
+ * Messages are queued and inserted in group commits: one multi-row INSERT per batch, flushed when
+ * chat.persistence.max-batch messages are waiting or chat.persistence.flush-interval-ms has
+ * passed since the first one arrived. The STOMP inbound thread never waits on the database.
+ * <ul>
+ *     <li>ACK_AFTER_COMMIT: the caller's callback runs once the batch has committed (with the generated id)</li>
+ *     <li>FIRE_AND_FORGET: the caller broadcasts immediately; persistence happens in the background</li>
+ * </ul>
+ * A failed batch is retried with backoff (chat.persistence.retry.*), holding back later batches so
+ * order is kept. If it still fails, or the queue stays full for chat.persistence.enqueue-timeout-ms,
+ * the caller's onFailure callback runs instead: the send fails rather than being silently lost.
+ * Committed messages are appended to {@link GlobalMessageHistory}.
+ */
+@Service
+public class ChatMessageWriteBehind {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatMessageWriteBehind.class);
+
+    public enum DurabilityMode {
+        ACK_AFTER_COMMIT, FIRE_AND_FORGET
+    }
+
+    // The identity column only hands out ids one row at a time, so Hibernate cannot batch these inserts
+    private static final String INSERT_BATCH = "INSERT INTO chat_messages (content, sender, recipient, color, timestamp, type) "
+            + "SELECT * FROM unnest(?::text[], ?::text[], ?::text[], ?::text[], ?::timestamp[], ?::text[]) "
+            + "RETURNING id";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private GlobalMessageHistory globalMessageHistory;
+
+    @Value("${chat.persistence.durability:ACK_AFTER_COMMIT}")
+    private DurabilityMode durabilityMode;
+
+    @Value("${chat.persistence.max-batch:100}")
+    private int maxBatch;
+
+    @Value("${chat.persistence.flush-interval-ms:20}")
+    private long flushIntervalMs;
+
+    @Value("${chat.persistence.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${chat.persistence.enqueue-timeout-ms:100}")
+    private long enqueueTimeoutMs;
+
+    @Value("${chat.persistence.retry.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${chat.persistence.retry.initial-backoff-ms:100}")
+    private long initialBackoffMs;
+
+    private BlockingQueue<PendingMessage> queue;
+    private Timer flushTimer;
+    private DistributionSummary batchSize;
+    private Counter failedMessages;
+    private Counter rejectedMessages;
+
+    private volatile boolean running;
+    private Thread flusherThread;
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Gauge.builder("echo.chat.persistence.queue.depth", queue, BlockingQueue::size).register(meterRegistry);
+        flushTimer = Timer.builder("echo.chat.persistence.flush")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        batchSize = DistributionSummary.builder("echo.chat.persistence.batch.size").register(meterRegistry);
+        failedMessages = meterRegistry.counter("echo.chat.persistence.failed");
+        rejectedMessages = meterRegistry.counter("echo.chat.persistence.rejected");
+
+        running = true;
+        flusherThread = new Thread(this::flushLoop, "echo-chat-write-behind");
+        flusherThread.setDaemon(true);
+        flusherThread.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        flusherThread.interrupt();
+        flusherThread.join(TimeUnit.SECONDS.toMillis(5));
+
+        List<PendingMessage> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            flush(remaining);
+        }
+    }
+
+    public boolean isAckAfterCommit() {
+        return durabilityMode == DurabilityMode.ACK_AFTER_COMMIT;
+    }
+
+    /**
+     * Queue a message for the next group commit. A copy is persisted, so the caller may keep
+     * using (and broadcasting) the instance it passed in. afterCommit and onFailure may be null;
+     * exactly one of them runs. While the queue is full the caller waits up to
+     * chat.persistence.enqueue-timeout-ms, then the message fails.
+     */
+    public void enqueue(ChatMessage message, Consumer<ChatMessage> afterCommit, Consumer<ChatMessage> onFailure) {
+        PendingMessage pending = new PendingMessage(copyOf(message), afterCommit, onFailure);
+        boolean queued;
+        try {
+            queued = queue.offer(pending, enqueueTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (!queued) {
+            rejectedMessages.increment();
+            logger.warn("Global chat write-behind queue is full, rejecting a message from {}", message.getSender());
+            fail(List.of(pending));
+        }
+    }
+
+    private void flushLoop() {
+        List<PendingMessage> batch = new ArrayList<>(maxBatch);
+        while (running) {
+            try {
+                PendingMessage first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < maxBatch) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                // Shutting down: the batch in hand is flushed here, the rest of the queue by shutdown()
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<PendingMessage> batch) {
+        List<ChatMessage> messages = batch.stream().map(PendingMessage::message).toList();
+        batchSize.record(batch.size());
+        if (!insertWithRetry(messages)) {
+            failedMessages.increment(batch.size());
+            fail(batch);
+            return;
+        }
+
+        globalMessageHistory.appendAll(messages);
+
+        for (PendingMessage pending : batch) {
+            if (pending.afterCommit() == null) {
+                continue;
+            }
+            try {
+                pending.afterCommit().accept(pending.message());
+            } catch (Exception e) {
+                logger.warn("After-commit callback failed for chat message {}: {}", pending.message().getId(), e.getMessage());
+            }
+        }
+    }
+
+    // The INSERT is one statement, so a failed attempt has written nothing and can be repeated
+    private boolean insertWithRetry(List<ChatMessage> messages) {
+        long backoffMs = initialBackoffMs;
+        int lastAttempt = maxAttempts;
+        for (int attempt = 1; ; attempt++) {
+            long start = System.nanoTime();
+            try {
+                List<Long> ids = insert(messages);
+                for (int i = 0; i < messages.size(); i++) {
+                    messages.get(i).setId(ids.get(i));
+                }
+                return true;
+            } catch (RuntimeException e) {
+                if (attempt >= lastAttempt) {
+                    logger.error("Failed to persist {} global chat messages after {} attempts: {}",
+                            messages.size(), attempt, e.getMessage());
+                    return false;
+                }
+                logger.warn("Failed to persist {} global chat messages (attempt {}), retrying in {} ms: {}",
+                        messages.size(), attempt, backoffMs, e.getMessage());
+            } finally {
+                flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+
+            try {
+                Thread.sleep(backoffMs);
+            } catch (InterruptedException e) {
+                // Shutting down: one last attempt without waiting
+                Thread.currentThread().interrupt();
+                lastAttempt = attempt + 1;
+            }
+            backoffMs = Math.min(backoffMs * 2, 5_000);
+        }
+    }
+
+    // Identity values are drawn in row order, so the sorted ids line up with the input
+    private List<Long> insert(List<ChatMessage> messages) {
+        return jdbcTemplate.execute((ConnectionCallback<List<Long>>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_BATCH)) {
+                statement.setArray(1, textArray(connection, messages, ChatMessage::getContent));
+                statement.setArray(2, textArray(connection, messages, ChatMessage::getSender));
+                statement.setArray(3, textArray(connection, messages, ChatMessage::getRecipient));
+                statement.setArray(4, textArray(connection, messages, ChatMessage::getColor));
+                statement.setArray(5, connection.createArrayOf("timestamp",
+                        messages.stream().map(message -> Timestamp.valueOf(message.getTimestamp())).toArray()));
+                statement.setArray(6, textArray(connection, messages,
+                        message -> message.getType() != null ? message.getType().name() : null));
+
+                List<Long> ids = new ArrayList<>(messages.size());
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        ids.add(resultSet.getLong(1));
+                    }
+                }
+                ids.sort(null);
+                return ids;
+            }
+        });
+    }
+
+    private static Array textArray(Connection connection, List<ChatMessage> messages,
+                                   Function<ChatMessage, String> column) throws SQLException {
+        return connection.createArrayOf("text", messages.stream().map(column).toArray());
+    }
+
+    private void fail(List<PendingMessage> batch) {
+        for (PendingMessage pending : batch) {
+            if (pending.onFailure() == null) {
+                continue;
+            }
+            try {
+                pending.onFailure().accept(pending.message());
+            } catch (Exception e) {
+                logger.warn("Failure callback failed for chat message from {}: {}", pending.message().getSender(), e.getMessage());
+            }
+        }
+    }
+
+    private ChatMessage copyOf(ChatMessage source) {
+        ChatMessage copy = new ChatMessage();
+        copy.setContent(source.getContent());
+        copy.setSender(source.getSender());
+        copy.setRecipient(source.getRecipient());
+        copy.setColor(source.getColor());
+        copy.setTimestamp(source.getTimestamp());
+        copy.setType(source.getType());
+        return copy;
+    }
+
+    private record PendingMessage(ChatMessage message, Consumer<ChatMessage> afterCommit,
+                                  Consumer<ChatMessage> onFailure) {
+    }
+}
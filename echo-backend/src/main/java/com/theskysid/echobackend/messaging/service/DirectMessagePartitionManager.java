@@ -0,0 +1,289 @@
+package com.theskysid.echobackend.messaging.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Keeps direct_messages range-partitioned by day on expires_at (PostgreSQL only).
+ * <p>
+ * RetentionPolicy caps expiry at 7 days, so every live row falls into one of the next few daily
+ * partitions. Expiry then removes whole partitions whose range is entirely in the past, leaving only
+ * a small residual DELETE for the current day (see DirectMessageService.cleanupExpiredMessages).
+ * <ul>
+ *     <li>On startup, a plain direct_messages table (as created by ddl-auto) is converted in place:
+ *     new partitioned table, live rows copied, old table dropped. The id keeps its values through a
+ *     standalone sequence, and the primary key becomes (id, expires_at), as Postgres requires the
+ *     partition key in it.</li>
+ *     <li>Partitions are created chat.dm.partitioning.days-ahead days in advance (more than the longest
+ *     retention), on startup and hourly.</li>
+ *     <li>There is no DEFAULT partition, because DETACH PARTITION CONCURRENTLY refuses to run while one
+ *     exists. A DEFAULT partition left by an earlier version is emptied into daily partitions on startup.</li>
+ *     <li>An expired partition goes through three steps, so direct_messages is never locked for longer
+ *     than a catalog update: DETACH ... CONCURRENTLY (no transaction), counters released and the table
+ *     renamed to direct_messages_released_* (one short transaction), DROP (no transaction). Each step can
+ *     be resumed by the next run if the previous one was interrupted.</li>
+ * </ul>
+ */
+@Service
+public class DirectMessagePartitionManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectMessagePartitionManager.class);
+
+    private static final String TABLE = "direct_messages";
+    private static final String PARTITION_PREFIX = "direct_messages_p";
+    private static final String RELEASED_PREFIX = "direct_messages_released_";
+    private static final String LEGACY_DEFAULT_PARTITION = "direct_messages_default";
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    // Not used directly: makes sure Hibernate's schema update has created the table first
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Value("${chat.dm.partitioning.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.dm.partitioning.days-ahead:9}")
+    private int daysAhead;
+
+    private volatile boolean partitioned;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled || !isPostgres()) {
+            logger.info("direct_messages partitioning disabled");
+            return;
+        }
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        partitioned = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+            String relkind = jdbcTemplate.queryForObject(
+                    "SELECT COALESCE((SELECT relkind::text FROM pg_class WHERE oid = to_regclass(?)), '')",
+                    String.class, TABLE);
+            if ("r".equals(relkind)) {
+                convertToPartitioned();
+                return true;
+            }
+            if ("p".equals(relkind)) {
+                removeDefaultPartition();
+            }
+            if (!"p".equals(relkind)) {
+                logger.warn("{} not found; partitioning skipped", TABLE);
+            }
+            return "p".equals(relkind);
+        }));
+        // Outside the conversion transaction: one failed CREATE must not abort the others
+        createFuturePartitions();
+    }
+
+    public boolean isPartitioned() {
+        return partitioned;
+    }
+
+    /**
+     * Create the daily partitions for today through today + days-ahead.
+     */
+    @Scheduled(fixedRate = 3_600_000, initialDelay = 3_600_000)
+    public void createFuturePartitions() {
+        if (!partitioned) {
+            return;
+        }
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i <= daysAhead; i++) {
+            LocalDate day = today.plusDays(i);
+            try {
+                jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partitionName(day) + " PARTITION OF " + TABLE
+                        + " FOR VALUES FROM ('" + day.atStartOfDay() + "') TO ('" + day.plusDays(1).atStartOfDay() + "')");
+            } catch (RuntimeException e) {
+                logger.warn("Could not create partition {}: {}", partitionName(day), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Daily partition tables whose whole range lies before now, i.e. every row in them has expired.
+     * Includes tables a previous run already detached but did not get to release.
+     */
+    public List<String> findExpiredPartitions(LocalDateTime now) {
+        if (!partitioned) {
+            return List.of();
+        }
+        return jdbcTemplate.queryForList(
+                        "SELECT tablename FROM pg_tables WHERE schemaname = current_schema() AND tablename LIKE ? "
+                                + "ORDER BY tablename",
+                        String.class, PARTITION_PREFIX + "%").stream()
+                .filter(name -> name.substring(PARTITION_PREFIX.length()).matches("\\d{8}"))
+                .filter(name -> !partitionDay(name).plusDays(1).atStartOfDay().isAfter(now))
+                .toList();
+    }
+
+    /**
+     * Detach one partition with DETACH PARTITION CONCURRENTLY, which only takes SHARE UPDATE EXCLUSIVE
+     * on direct_messages. A detach interrupted half-way is completed with FINALIZE. Must not be called
+     * inside a transaction: Postgres rejects CONCURRENTLY in a transaction block.
+     */
+    public void detachPartition(String partitionName) {
+        partitionDay(partitionName);
+        List<Boolean> pending = jdbcTemplate.queryForList(
+                "SELECT inhdetachpending FROM pg_inherits WHERE inhrelid = to_regclass(?) AND inhparent = to_regclass(?)",
+                Boolean.class, partitionName, TABLE);
+        if (pending.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " DETACH PARTITION " + partitionName
+                + (Boolean.TRUE.equals(pending.get(0)) ? " FINALIZE" : " CONCURRENTLY"));
+    }
+
+    /**
+     * Messages per conversation in one partition, as [conversation_id, count] rows.
+     */
+    public List<Object[]> countByConversation(String partitionName) {
+        partitionDay(partitionName);
+        return jdbcTemplate.query("SELECT conversation_id, COUNT(*) FROM " + partitionName + " GROUP BY conversation_id",
+                (rs, rowNum) -> new Object[]{rs.getLong(1), rs.getLong(2)});
+    }
+
+    /**
+     * Mark a detached partition as released (its counters have been adjusted) by renaming it.
+     * Runs in the caller's transaction, so the rename commits together with the counter updates.
+     * Only the detached table itself is locked.
+     */
+    public void markReleased(String partitionName) {
+        partitionDay(partitionName);
+        jdbcTemplate.execute("ALTER TABLE " + partitionName + " RENAME TO "
+                + RELEASED_PREFIX + partitionName.substring(PARTITION_PREFIX.length()));
+    }
+
+    /**
+     * Drop every released partition table. Called outside any transaction; each DROP commits on its own.
+     */
+    public void dropReleasedPartitions() {
+        List<String> released = jdbcTemplate.queryForList(
+                "SELECT tablename FROM pg_tables WHERE schemaname = current_schema() AND tablename LIKE ?",
+                String.class, RELEASED_PREFIX + "%");
+        for (String table : released) {
+            if (!table.substring(RELEASED_PREFIX.length()).matches("\\d{8}")) {
+                continue;
+            }
+            jdbcTemplate.execute("DROP TABLE IF EXISTS " + table);
+            logger.info("Dropped expired direct message partition {}", table);
+        }
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    private void convertToPartitioned() {
+        logger.info("Converting {} to a partitioned table", TABLE);
+        LocalDate today = LocalDate.now();
+
+        jdbcTemplate.execute("LOCK TABLE " + TABLE + " IN ACCESS EXCLUSIVE MODE");
+        jdbcTemplate.execute("CREATE TABLE direct_messages_partitioned ("
+                + "id BIGINT NOT NULL, "
+                + "conversation_id BIGINT NOT NULL, "
+                + "sender_id BIGINT NOT NULL, "
+                + "content TEXT NOT NULL, "
+                + "timestamp TIMESTAMP(6) NOT NULL, "
+                + "expires_at TIMESTAMP(6) NOT NULL, "
+                + "CONSTRAINT direct_messages_part_pkey PRIMARY KEY (id, expires_at)"
+                + ") PARTITION BY RANGE (expires_at)");
+        for (LocalDate day : partitionDays(TABLE, today)) {
+            jdbcTemplate.execute("CREATE TABLE " + partitionName(day) + " PARTITION OF direct_messages_partitioned"
+                    + " FOR VALUES FROM ('" + day.atStartOfDay() + "') TO ('" + day.plusDays(1).atStartOfDay() + "')");
+        }
+
+        int copied = jdbcTemplate.update("INSERT INTO direct_messages_partitioned "
+                + "(id, conversation_id, sender_id, content, timestamp, expires_at) "
+                + "SELECT id, conversation_id, sender_id, content, timestamp, expires_at FROM " + TABLE
+                + " WHERE expires_at > ?", LocalDateTime.now());
+        Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM " + TABLE, Long.class);
+
+        jdbcTemplate.execute("DROP TABLE " + TABLE);
+        jdbcTemplate.execute("ALTER TABLE direct_messages_partitioned RENAME TO " + TABLE);
+
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS direct_messages_id_seq OWNED BY " + TABLE + ".id");
+        jdbcTemplate.queryForObject("SELECT setval('direct_messages_id_seq', ?, false)", Long.class,
+                Objects.requireNonNullElse(maxId, 0L) + 1);
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " ALTER COLUMN id SET DEFAULT nextval('direct_messages_id_seq')");
+
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " ADD CONSTRAINT fk_dm_conversation "
+                + "FOREIGN KEY (conversation_id) REFERENCES conversations(id)");
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " ADD CONSTRAINT fk_dm_sender "
+                + "FOREIGN KEY (sender_id) REFERENCES users(id)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_dm_conversation_timestamp_id ON " + TABLE
+                + " (conversation_id, timestamp, id)");
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idx_dm_expires_at ON " + TABLE + " (expires_at)");
+
+        logger.info("Converted {} to daily partitions on expires_at ({} live rows copied)", TABLE, copied);
+    }
+
+    // Moves the rows of a DEFAULT partition from an earlier version into daily partitions, then drops it
+    private void removeDefaultPartition() {
+        List<String> attached = jdbcTemplate.queryForList(
+                "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid "
+                        + "WHERE i.inhparent = to_regclass(?) AND c.relname = ?",
+                String.class, TABLE, LEGACY_DEFAULT_PARTITION);
+        if (attached.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.execute("ALTER TABLE " + TABLE + " DETACH PARTITION " + LEGACY_DEFAULT_PARTITION);
+        LocalDate today = LocalDate.now();
+        for (LocalDate day : partitionDays(LEGACY_DEFAULT_PARTITION, today)) {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + partitionName(day) + " PARTITION OF " + TABLE
+                    + " FOR VALUES FROM ('" + day.atStartOfDay() + "') TO ('" + day.plusDays(1).atStartOfDay() + "')");
+        }
+        int moved = jdbcTemplate.update("INSERT INTO " + TABLE
+                + " (id, conversation_id, sender_id, content, timestamp, expires_at) "
+                + "SELECT id, conversation_id, sender_id, content, timestamp, expires_at FROM " + LEGACY_DEFAULT_PARTITION
+                + " WHERE expires_at > ?", LocalDateTime.now());
+        jdbcTemplate.execute("DROP TABLE " + LEGACY_DEFAULT_PARTITION);
+        logger.info("Removed the DEFAULT partition of {} ({} live rows moved to daily partitions)", TABLE, moved);
+    }
+
+    // Today through today + days-ahead, plus any later day a live row in the given table expires on
+    private List<LocalDate> partitionDays(String table, LocalDate today) {
+        Set<LocalDate> days = new TreeSet<>();
+        for (int i = 0; i <= daysAhead; i++) {
+            days.add(today.plusDays(i));
+        }
+        days.addAll(jdbcTemplate.queryForList("SELECT DISTINCT CAST(expires_at AS date) FROM " + table
+                + " WHERE expires_at > ?", LocalDate.class, LocalDateTime.now()));
+        return List.copyOf(days);
+    }
+
+    private boolean isPostgres() {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        return product != null && product.toLowerCase().contains("postgresql");
+    }
+
+    private static String partitionName(LocalDate day) {
+        return PARTITION_PREFIX + day.format(PARTITION_SUFFIX);
+    }
+
+    // Also validates the name, since it is spliced into DDL
+    private static LocalDate partitionDay(String partitionName) {
+        return LocalDate.parse(partitionName.substring(PARTITION_PREFIX.length()), PARTITION_SUFFIX);
+    }
+}
@@ -6,24 +6,39 @@ import com.theskysid.echobackend.messaging.entity.DirectMessage;
 import com.theskysid.echobackend.messaging.entity.RetentionPolicy;
 import com.theskysid.echobackend.messaging.repository.ConversationRepository;
 import com.theskysid.echobackend.messaging.repository.DirectMessageRepository;
+import com.theskysid.echobackend.messaging.websocket.SessionContextRegistry;
 import com.theskysid.echobackend.user.entity.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 @Service
 public class DirectMessageService {
 
     private static final Logger logger = LoggerFactory.getLogger(DirectMessageService.class);
 
+    private static final int COUNTER_UPDATE_BATCH = 1000;
+    private static final Duration EMPTY_CONVERSATION_GRACE = Duration.ofMinutes(10);
+
     @Autowired
     private DirectMessageRepository directMessageRepository;
 
@@ -33,6 +48,15 @@ public class DirectMessageService {
     @Autowired
     private FriendshipService friendshipService;
 
+    @Autowired
+    private SessionContextRegistry sessionContextRegistry;
+
+    @Autowired
+    private DirectMessagePartitionManager partitionManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     /**
      * Get or create a conversation between two users.
      * Always stores the user with the smaller ID as participantOne.
@@ -64,26 +88,10 @@ public class DirectMessageService {
     public DirectMessage sendMessage(Conversation conversation, User sender, String content) {
         assertConversationAccess(conversation, sender);
 
-        if (content == null || content.trim().isEmpty()) {
-            throw new RuntimeException("Message content cannot be empty");
-        }
-
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime expiresAt = now.plusHours(conversation.getRetentionPolicy().getHours());
-
-        DirectMessage message = DirectMessage.builder()
-                .conversation(conversation)
-                .sender(sender)
-                .content(content.trim())
-                .timestamp(now)
-                .expiresAt(expiresAt)
-                .build();
-
-        DirectMessage saved = directMessageRepository.save(message);
+        DirectMessage saved = insertMessage(conversation, sender, content);
 
-        // Update conversation's updatedAt to reflect latest activity
-        conversation.setUpdatedAt(now);
-        conversationRepository.save(conversation);
+        // Count the message, bump updatedAt / lastMessageAt and refresh the inbox preview
+        recordMessage(conversation, saved);
 
         // Ensure participants are initialized
         conversation.getParticipantOne().getUsername();
@@ -92,6 +100,18 @@ public class DirectMessageService {
         return saved;
     }
 
+    /**
+     * Send a direct message in a conversation the caller has already authorised for this sender
+     * (see DmSessionContext). Skips the participant/friendship checks; the conversation and sender
+     * may be detached. The conversation row is updated in place, without a select.
+     */
+    @Transactional
+    public DirectMessage appendMessage(Conversation conversation, User sender, String content) {
+        DirectMessage saved = insertMessage(conversation, sender, content);
+        recordMessage(conversation, saved);
+        return saved;
+    }
+
     /**
      * Get paginated message history for a conversation.
      * Only returns non-expired messages (filter-on-read).
@@ -105,13 +125,39 @@ public class DirectMessageService {
     }
 
     /**
-     * Get all conversations for a user, ordered by most recent activity.
+     * Get one keyset page of message history, newest first: up to limit messages older than
+     * the cursor (or the newest messages when cursor is null). Fetches limit + 1 rows so the
+     * caller can tell whether an older page exists.
+     */
+    @Transactional(readOnly = true)
+    public List<DirectMessage> getMessagesBefore(Conversation conversation, User currentUser, MessageCursor cursor, int limit) {
+        assertConversationAccess(conversation, currentUser);
+
+        LocalDateTime now = LocalDateTime.now();
+        PageRequest firstRows = PageRequest.of(0, limit + 1);
+        if (cursor == null) {
+            return directMessageRepository.findLatestActiveByConversation(conversation, now, firstRows);
+        }
+        return directMessageRepository.findActiveByConversationBefore(
+                conversation, now, cursor.timestamp(), cursor.id(), firstRows);
+    }
+
+    /**
+     * Get all conversations with current friends for a user, ordered by most recent activity.
+     * One query; previews and unread counts are read from the conversation rows.
      */
     @Transactional(readOnly = true)
     public List<Conversation> getConversations(User user) {
-        return conversationRepository.findByParticipant(user).stream()
-                .filter(conversation -> friendshipService.areFriends(user, conversation.getOtherParticipant(user)))
-                .toList();
+        return conversationRepository.findInbox(user);
+    }
+
+    /**
+     * Mark a conversation as read by the given participant.
+     */
+    @Transactional
+    public void markRead(Long conversationId, User currentUser) {
+        getConversation(conversationId, currentUser);
+        conversationRepository.markRead(conversationId, currentUser.getId());
     }
 
     /**
@@ -134,27 +180,169 @@ public class DirectMessageService {
     public Conversation updateRetentionPolicy(Long conversationId, User currentUser, RetentionPolicy policy) {
         Conversation conversation = getConversation(conversationId, currentUser);
         conversation.setRetentionPolicy(policy);
-        return conversationRepository.save(conversation);
+        Conversation saved = conversationRepository.save(conversation);
+        sessionContextRegistry.invalidateConversation(conversationId);
+        return saved;
     }
 
     /**
      * Scheduled cleanup: delete expired messages and empty conversations.
-     * Runs every 5 minutes.
+     * Runs every 5 minutes, deliberately without a surrounding transaction:
+     * <ul>
+     *     <li>Fully expired daily partitions are detached concurrently (no transaction), their counters
+     *     released in one short transaction per partition, and then dropped (no transaction).</li>
+     *     <li>The residual DELETE for the current day and the empty-conversation sweep share one
+     *     short transaction.</li>
+     * </ul>
      */
     @Scheduled(fixedRate = 300_000)
-    @Transactional
     public void cleanupExpiredMessages() {
         LocalDateTime now = LocalDateTime.now();
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+        for (String partition : partitionManager.findExpiredPartitions(now)) {
+            try {
+                partitionManager.detachPartition(partition);
+                transactionTemplate.executeWithoutResult(status -> {
+                    releaseExpiredMessages(partitionManager.countByConversation(partition), now);
+                    partitionManager.markReleased(partition);
+                });
+            } catch (RuntimeException e) {
+                // Picked up again by the next run from whichever step it reached
+                logger.warn("Could not release expired partition {}: {}", partition, e.getMessage());
+            }
+        }
+        partitionManager.dropReleasedPartitions();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            int deletedMessages = releaseExpiredMessages(directMessageRepository.deleteExpiredMessagesByConversation(now), now);
+            if (deletedMessages > 0) {
+                logger.info("Cleaned up {} expired direct messages", deletedMessages);
+            }
+
+            int deletedConversations = conversationRepository.deleteConversationsWithNoMessages(now.minus(EMPTY_CONVERSATION_GRACE));
+            if (deletedConversations > 0) {
+                logger.info("Cleaned up {} empty conversations", deletedConversations);
+                sessionContextRegistry.invalidateAllConversations();
+            }
+        });
+    }
+
+    /**
+     * Position in a conversation's history: (timestamp, id) of the oldest message already loaded.
+     * Encoded as an opaque URL-safe token for the API.
+     */
+    public record MessageCursor(LocalDateTime timestamp, Long id) {
+
+        public static MessageCursor of(DirectMessage message) {
+            return new MessageCursor(message.getTimestamp(), message.getId());
+        }
+
+        public static MessageCursor decode(String token) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+                int separator = raw.lastIndexOf('_');
+                return new MessageCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                        Long.parseLong(raw.substring(separator + 1)));
+            } catch (RuntimeException e) {
+                throw new RuntimeException("Invalid cursor");
+            }
+        }
 
-        int deletedMessages = directMessageRepository.deleteExpiredMessages(now);
-        if (deletedMessages > 0) {
-            logger.info("Cleaned up {} expired direct messages", deletedMessages);
+        public String encode() {
+            String raw = timestamp + "_" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
         }
+    }
 
-        int deletedConversations = conversationRepository.deleteConversationsWithNoMessages();
-        if (deletedConversations > 0) {
-            logger.info("Cleaned up {} empty conversations", deletedConversations);
+    /**
+     * One-time initialisation of the per-conversation counters for rows created before they existed.
+     * Runs while sends are already being accepted, so each batch is locked first and then recounted
+     * in the same short transaction (see ConversationRepository.lockConversationsWithoutCounters):
+     * a send either commits before the recount and is included in it, or waits and adds to it.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillConversationCounters() {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        int backfilled = 0;
+        int batch;
+        do {
+            batch = Objects.requireNonNullElse(transactionTemplate.execute(status -> {
+                List<Long> ids = conversationRepository.lockConversationsWithoutCounters(COUNTER_UPDATE_BATCH);
+                if (!ids.isEmpty()) {
+                    conversationRepository.backfillMessageCounters(ids, LocalDateTime.now());
+                    conversationRepository.markCountersInitialised(ids);
+                }
+                return ids.size();
+            }), 0);
+            backfilled += batch;
+        } while (batch == COUNTER_UPDATE_BATCH);
+        if (backfilled > 0) {
+            logger.info("Initialised message counters for {} conversations", backfilled);
+        }
+    }
+
+    /**
+     * Decrement conversation counters for expired messages, given [conversation_id, count] rows.
+     * Conversations losing the same number of messages share one UPDATE. Their previews are then
+     * recomputed, since the message a preview showed may be among the expired ones (e.g. after the
+     * retention policy was shortened). Returns the total released.
+     */
+    private int releaseExpiredMessages(List<Object[]> expiredByConversation, LocalDateTime now) {
+        Map<Integer, List<Long>> conversationIdsByCount = new HashMap<>();
+        List<Long> affected = new ArrayList<>(expiredByConversation.size());
+        int total = 0;
+        for (Object[] row : expiredByConversation) {
+            int count = ((Number) row[1]).intValue();
+            long conversationId = ((Number) row[0]).longValue();
+            conversationIdsByCount.computeIfAbsent(count, ignored -> new ArrayList<>()).add(conversationId);
+            affected.add(conversationId);
+            total += count;
         }
+        conversationIdsByCount.forEach((count, ids) -> {
+            for (int from = 0; from < ids.size(); from += COUNTER_UPDATE_BATCH) {
+                List<Long> batch = ids.subList(from, Math.min(ids.size(), from + COUNTER_UPDATE_BATCH));
+                conversationRepository.releaseExpiredMessages(batch, count);
+            }
+        });
+        for (int from = 0; from < affected.size(); from += COUNTER_UPDATE_BATCH) {
+            conversationRepository.refreshPreviews(affected.subList(from, Math.min(affected.size(), from + COUNTER_UPDATE_BATCH)), now);
+        }
+        return total;
+    }
+
+    private void recordMessage(Conversation conversation, DirectMessage message) {
+        String content = message.getContent();
+        String preview = content;
+        if (content.length() > Conversation.PREVIEW_LENGTH) {
+            int end = Conversation.PREVIEW_LENGTH;
+            // Do not split a surrogate pair
+            if (Character.isHighSurrogate(content.charAt(end - 1))) {
+                end--;
+            }
+            preview = content.substring(0, end);
+        }
+        conversationRepository.recordMessage(conversation.getId(), message.getTimestamp(),
+                message.getSender().getId(), preview);
+    }
+
+    private DirectMessage insertMessage(Conversation conversation, User sender, String content) {
+        if (content == null || content.trim().isEmpty()) {
+            throw new RuntimeException("Message content cannot be empty");
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expiresAt = now.plusHours(conversation.getRetentionPolicy().getHours());
+
+        DirectMessage message = DirectMessage.builder()
+                .conversation(conversation)
+                .sender(sender)
+                .content(content.trim())
+                .timestamp(now)
+                .expiresAt(expiresAt)
+                .build();
+
+        return directMessageRepository.save(message);
     }
 
     private void assertConversationAccess(Conversation conversation, User currentUser) {
@@ -0,0 +1,266 @@
+package com.theskysid.echobackend.messaging.service;
+
+import com.theskysid.echobackend.messaging.entity.ChatMessage;
+import com.theskysid.echobackend.messaging.repository.ChatMessageRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Recent global chat history held in memory.
+ * <p>
+ * A fixed-size ring of the newest CHAT messages, ordered by id. It is filled from the database on
+ * startup and appended by {@link ChatMessageWriteBehind} once each batch has committed (so every
+ * entry has its id). Pages are cursor based ("before id X, limit N"); the database is only read
+ * for pages older than the oldest buffered message.
+ * <p>
+ * Messages saved by other nodes never pass through this node's write-behind, so a read first pulls
+ * in newer rows (one indexed query, at most every chat.history.sync-interval-ms). Batches from
+ * different nodes commit out of id order: a lower id can become visible after a higher one was
+ * synced. Each sync therefore re-reads from the highest id that was already synced
+ * chat.history.sync-overlap-ms ago, and ids already in the ring are skipped. A row whose transaction
+ * took less than the overlap is always picked up; the ring misses it only if its batch stayed
+ * uncommitted for longer.
+ */
+@Service
+public class GlobalMessageHistory {
+
+    private static final Logger logger = LoggerFactory.getLogger(GlobalMessageHistory.class);
+
+    @Autowired
+    private ChatMessageRepository chatMessageRepository;
+
+    @Value("${chat.history.buffer-size:1000}")
+    private int capacity;
+
+    @Value("${chat.history.retention-days:7}")
+    private int retentionDays;
+
+    @Value("${chat.history.sync-interval-ms:1000}")
+    private long syncIntervalMs;
+
+    @Value("${chat.history.sync-overlap-ms:10000}")
+    private long syncOverlapMs;
+
+    private ChatMessage[] ring;
+    private int head;
+    private int size;
+
+    // True while the ring still holds every retained message (nothing has been evicted or skipped)
+    private boolean holdsAllHistory;
+
+    // Highest id read from the database; rows above it may have been written by another node
+    private volatile long syncedThroughId;
+    private volatile long nextSyncNanos;
+
+    // {nanoTime, syncedThroughId} after each sync, oldest first; only touched under syncLock
+    private final Deque<long[]> syncCheckpoints = new ArrayDeque<>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ReentrantLock syncLock = new ReentrantLock();
+
+    @PostConstruct
+    public void load() {
+        ring = new ChatMessage[capacity];
+        List<ChatMessage> latest = chatMessageRepository.findLatestGlobalMessages(retentionCutoff(), PageRequest.of(0, capacity));
+        for (int i = latest.size() - 1; i >= 0; i--) {
+            append(latest.get(i));
+        }
+        holdsAllHistory = latest.size() < capacity;
+        syncedThroughId = latest.isEmpty() ? 0 : latest.get(0).getId();
+        // Rows still in flight during the load can have any id, so the first overlap re-reads the retained rows
+        syncCheckpoints.add(new long[]{System.nanoTime(), 0});
+        nextSyncNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(syncIntervalMs);
+        logger.info("Loaded {} recent global messages into memory", latest.size());
+    }
+
+    /**
+     * Add committed messages (ids assigned). Out-of-order ids are slotted into place.
+     */
+    public void appendAll(List<ChatMessage> messages) {
+        lock.writeLock().lock();
+        try {
+            for (ChatMessage message : messages) {
+                if (message.getId() != null && message.getType() == ChatMessage.MessageType.CHAT) {
+                    append(message);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Up to limit messages with id below beforeId (newest page when beforeId is null), oldest first.
+     * Served from memory; older rows are read from the database only when the ring runs out.
+     */
+    public List<ChatMessage> page(Long beforeId, int limit) {
+        if (beforeId == null || beforeId > syncedThroughId) {
+            syncIfDue();
+        }
+        LocalDateTime cutoff = retentionCutoff();
+        List<ChatMessage> page = new ArrayList<>(limit);
+        boolean exhausted;
+
+        lock.readLock().lock();
+        try {
+            int end = beforeId == null ? size : lowerBound(beforeId);
+            int start = Math.max(0, end - limit);
+            for (int i = start; i < end; i++) {
+                ChatMessage message = get(i);
+                if (!message.getTimestamp().isBefore(cutoff)) {
+                    page.add(message);
+                }
+            }
+            exhausted = start == 0 && !holdsAllHistory;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (page.size() < limit && exhausted) {
+            Long olderThan = page.isEmpty() ? beforeId : page.get(0).getId();
+            PageRequest remaining = PageRequest.of(0, limit - page.size());
+            List<ChatMessage> older = olderThan == null
+                    ? chatMessageRepository.findLatestGlobalMessages(cutoff, remaining)
+                    : chatMessageRepository.findGlobalMessagesBefore(cutoff, olderThan, remaining);
+            List<ChatMessage> merged = new ArrayList<>(older);
+            Collections.reverse(merged);
+            merged.addAll(page);
+            return merged;
+        }
+        return page;
+    }
+
+    /**
+     * Retention for global chat: delete messages older than chat.history.retention-days.
+     * Runs hourly, instead of on every history request.
+     */
+    @Scheduled(fixedRate = 3_600_000)
+    @Transactional
+    public void deleteExpiredMessages() {
+        LocalDateTime cutoff = retentionCutoff();
+        chatMessageRepository.deleteOldGlobalMessages(cutoff);
+
+        lock.writeLock().lock();
+        try {
+            while (size > 0 && get(0).getTimestamp().isBefore(cutoff)) {
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                size--;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    // One reader pulls in rows newer than the last sync; concurrent readers serve what the ring holds
+    private void syncIfDue() {
+        if (System.nanoTime() < nextSyncNanos || !syncLock.tryLock()) {
+            return;
+        }
+        try {
+            LocalDateTime cutoff = retentionCutoff();
+            long afterId = overlapStartId(System.nanoTime());
+            long highest = syncedThroughId;
+            List<ChatMessage> newer;
+            do {
+                newer = chatMessageRepository.findGlobalMessagesAfter(cutoff, afterId, PageRequest.of(0, capacity));
+                if (!newer.isEmpty()) {
+                    appendAll(newer);
+                    afterId = newer.get(newer.size() - 1).getId();
+                    highest = Math.max(highest, afterId);
+                }
+            } while (newer.size() == capacity);
+            syncedThroughId = highest;
+            syncCheckpoints.add(new long[]{System.nanoTime(), highest});
+        } catch (Exception e) {
+            logger.warn("Failed to sync global history from the database: {}", e.getMessage());
+        } finally {
+            nextSyncNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(syncIntervalMs);
+            syncLock.unlock();
+        }
+    }
+
+    // The synced id as of one overlap ago: anything committed since then has a higher id, unless its
+    // transaction ran for longer than the overlap
+    private long overlapStartId(long nowNanos) {
+        long horizon = nowNanos - TimeUnit.MILLISECONDS.toNanos(syncOverlapMs);
+        while (syncCheckpoints.size() > 1) {
+            long[] oldest = syncCheckpoints.pollFirst();
+            if (syncCheckpoints.peekFirst()[0] - horizon > 0) {
+                syncCheckpoints.addFirst(oldest);
+                break;
+            }
+        }
+        return syncCheckpoints.peekFirst()[1];
+    }
+
+    private LocalDateTime retentionCutoff() {
+        return LocalDateTime.now().minusDays(retentionDays);
+    }
+
+    private ChatMessage get(int index) {
+        return ring[(head + index) % ring.length];
+    }
+
+    private void set(int index, ChatMessage message) {
+        ring[(head + index) % ring.length] = message;
+    }
+
+    // Caller holds the write lock (or is the single-threaded startup load)
+    private void append(ChatMessage message) {
+        int existing = lowerBound(message.getId());
+        if (existing < size && get(existing).getId().equals(message.getId())) {
+            // Already appended by the write-behind or read back by a sync
+            return;
+        }
+        if (size == ring.length) {
+            if (message.getId() < get(0).getId()) {
+                return;
+            }
+            ring[head] = null;
+            head = (head + 1) % ring.length;
+            size--;
+            holdsAllHistory = false;
+        }
+        int index = lowerBound(message.getId());
+        for (int i = size; i > index; i--) {
+            set(i, get(i - 1));
+        }
+        set(index, message);
+        size++;
+    }
+
+    // First index whose id is >= the given id
+    private int lowerBound(long id) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (get(mid).getId() < id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
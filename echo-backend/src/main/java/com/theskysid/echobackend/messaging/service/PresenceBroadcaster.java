@@ -0,0 +1,242 @@
+package com.theskysid.echobackend.messaging.service;
+
+import com.theskysid.echobackend.auth.service.OnlineUserService;
+import com.theskysid.echobackend.auth.service.OnlineUserService.PresenceChanged;
+import com.theskysid.echobackend.friendship.service.FriendshipGraph;
+import com.theskysid.echobackend.messaging.dto.PresenceDeltaDTO;
+import com.theskysid.echobackend.messaging.entity.ChatMessage;
+import com.theskysid.echobackend.messaging.websocket.FlowControlledSessionDecorator.FrameType;
+import com.theskysid.echobackend.user.entity.User;
+import com.theskysid.echobackend.user.service.UserIdentityCache;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Tells clients who came online or went offline ({@link PresenceChanged} events).
+ * <ul>
+ *     <li>GLOBAL: a JOIN/LEAVE chat message to /topic/public, seen by everyone. The JOIN is the reply to
+ *     /app/chat.addUser, so only the LEAVE is sent from here.</li>
+ *     <li>FRIENDS: only the user's online accepted friends hear about it, on /user/{name}/queue/presence.
+ *     Changes are collected for presence.coalesce-ms and sent as one {@link PresenceDeltaDTO} per
+ *     recipient, so a burst of logins costs each client one frame. Within a window only a user's
+ *     latest state is sent. A session joining gets a snapshot of its online friends in the next
+ *     window, ahead of any delta, so a client that was disconnected starts from the current state.</li>
+ * </ul>
+ * echo.presence.frames{scope} counts frames delivered to clients (for GLOBAL, one per online user
+ * per change), so the two scopes can be compared under the same load.
+ * <p>
+ * Events can arrive out of order; one superseded by a newer change of the same user is dropped
+ * (see {@link OnlineUserService#isLatest}), so a late LEAVE never hides a user who came back.
+ */
+@Service
+public class PresenceBroadcaster {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresenceBroadcaster.class);
+
+    public enum Scope {
+        GLOBAL, FRIENDS
+    }
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private OnlineUserService onlineUserService;
+
+    @Autowired
+    private FriendshipGraph friendshipGraph;
+
+    @Autowired
+    private UserIdentityCache userIdentityCache;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${presence.scope:GLOBAL}")
+    private Scope scope;
+
+    @Value("${presence.coalesce-ms:250}")
+    private long coalesceMs;
+
+    // username -> latest change not yet sent
+    private final Map<String, PresenceChanged> pendingChanges = new ConcurrentHashMap<>();
+    // usernames owed a snapshot
+    private final Set<String> pendingSnapshots = ConcurrentHashMap.newKeySet();
+
+    private Counter frames;
+    private DistributionSummary changesPerBatch;
+    private Timer fanOutTimer;
+
+    private volatile boolean running;
+    private Thread fanOutThread;
+
+    private record Delta(List<String> online, List<String> offline) {
+    }
+
+    @PostConstruct
+    public void start() {
+        frames = meterRegistry.counter("echo.presence.frames", "scope", scope.name().toLowerCase(Locale.ROOT));
+        changesPerBatch = DistributionSummary.builder("echo.presence.batch.changes").register(meterRegistry);
+        fanOutTimer = Timer.builder("echo.presence.fan-out")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("echo.presence.pending", pendingChanges, Map::size).register(meterRegistry);
+
+        if (scope != Scope.FRIENDS) {
+            return;
+        }
+        running = true;
+        fanOutThread = new Thread(this::fanOutLoop, "echo-presence-fan-out");
+        fanOutThread.setDaemon(true);
+        fanOutThread.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (fanOutThread == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(fanOutThread);
+        fanOutThread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    public boolean isFriendScoped() {
+        return scope == Scope.FRIENDS;
+    }
+
+    /**
+     * Send the user their online friends with the next batch (FRIENDS scope only). Called when a
+     * session joins, after it has subscribed to its presence queue.
+     */
+    public void requestSnapshot(String username) {
+        if (scope == Scope.FRIENDS) {
+            pendingSnapshots.add(username);
+        }
+    }
+
+    /**
+     * Who the user may see online: everyone in GLOBAL scope, only their online friends in FRIENDS scope.
+     */
+    public List<String> onlineUsersVisibleTo(String username) {
+        if (scope != Scope.FRIENDS) {
+            return new ArrayList<>(onlineUserService.getOnlineUsernames());
+        }
+        return new ArrayList<>(onlineFriendsOf(username));
+    }
+
+    @EventListener
+    public void onPresenceChanged(PresenceChanged event) {
+        if (scope == Scope.FRIENDS) {
+            pendingChanges.merge(event.username(), event,
+                    (pending, next) -> next.sequence() > pending.sequence() ? next : pending);
+            return;
+        }
+        if (!onlineUserService.isLatest(event)) {
+            return;
+        }
+
+        frames.increment(onlineUserService.onlineCount());
+        if (event.online()) {
+            return;
+        }
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.setType(ChatMessage.MessageType.LEAVE);
+        chatMessage.setSender(event.username());
+        chatMessage.setTimestamp(LocalDateTime.now());
+        messagingTemplate.convertAndSend("/topic/public", chatMessage, FrameType.PRESENCE.headers());
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    private void fanOutLoop() {
+        while (running) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(coalesceMs));
+            if (pendingChanges.isEmpty() && pendingSnapshots.isEmpty()) {
+                continue;
+            }
+            try {
+                fanOutTimer.record(this::flush);
+            } catch (RuntimeException e) {
+                logger.warn("Presence fan-out failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void flush() {
+        LocalDateTime now = LocalDateTime.now();
+        for (String username : pendingSnapshots) {
+            pendingSnapshots.remove(username);
+            messagingTemplate.convertAndSend("/user/" + username + "/queue/presence",
+                    PresenceDeltaDTO.builder()
+                            .snapshot(true)
+                            .online(new ArrayList<>(onlineFriendsOf(username)))
+                            .offline(List.of())
+                            .timestamp(now)
+                            .build());
+            frames.increment();
+        }
+
+        Map<String, Boolean> changes = new HashMap<>();
+        for (String username : pendingChanges.keySet()) {
+            PresenceChanged change = pendingChanges.remove(username);
+            if (change != null && onlineUserService.isLatest(change)) {
+                changes.put(username, change.online());
+            }
+        }
+
+        Map<String, Delta> deltas = new HashMap<>();
+        changes.forEach((username, online) -> {
+            for (String recipient : onlineFriendsOf(username)) {
+                Delta delta = deltas.computeIfAbsent(recipient, ignored -> new Delta(new ArrayList<>(), new ArrayList<>()));
+                (online ? delta.online() : delta.offline()).add(username);
+            }
+        });
+
+        deltas.forEach((recipient, delta) -> messagingTemplate.convertAndSend(
+                "/user/" + recipient + "/queue/presence",
+                PresenceDeltaDTO.builder()
+                        .online(delta.online())
+                        .offline(delta.offline())
+                        .timestamp(now)
+                        .build(),
+                FrameType.PRESENCE.headers()));
+        changesPerBatch.record(changes.size());
+        frames.increment(deltas.size());
+    }
+
+    private Set<String> onlineFriendsOf(String username) {
+        Long userId = userIdentityCache.findByUsername(username).map(User::getId).orElse(null);
+        if (userId == null) {
+            return Set.of();
+        }
+        List<String> friendUsernames = new ArrayList<>();
+        for (long friendId : friendshipGraph.friendIdsOf(userId)) {
+            userIdentityCache.findById(friendId).map(User::getUsername).ifPresent(friendUsernames::add);
+        }
+        return onlineUserService.onlineAmong(friendUsernames);
+    }
+}
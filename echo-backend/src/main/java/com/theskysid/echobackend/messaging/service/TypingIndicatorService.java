@@ -0,0 +1,71 @@
+package com.theskysid.echobackend.messaging.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Throttle for ephemeral typing signals. Typing frames are forwarded on the leading edge
+ * and then coalesced: at most one per sender and scope (a conversation, or the global room)
+ * every websocket.typing.min-interval-ms. Purely in-memory; nothing here touches the database.
+ */
+@Service
+public class TypingIndicatorService {
+
+    public static final String GLOBAL_SCOPE = "global";
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${websocket.typing.min-interval-ms:2000}")
+    private long minIntervalMillis;
+
+    private final Map<String, Long> lastForwardMillis = new ConcurrentHashMap<>();
+
+    private Counter forwardedFrames;
+    private Counter coalescedFrames;
+
+    @PostConstruct
+    public void init() {
+        forwardedFrames = meterRegistry.counter("echo.typing.frames", "outcome", "forwarded");
+        coalescedFrames = meterRegistry.counter("echo.typing.frames", "outcome", "coalesced");
+    }
+
+    /**
+     * Whether a typing frame from this sender in this scope should be forwarded now.
+     * Returns false (and counts the frame as coalesced) inside the throttle window.
+     */
+    public boolean shouldForward(String senderUsername, String scope) {
+        long now = System.currentTimeMillis();
+        String key = senderUsername.toLowerCase(Locale.ROOT) + '|' + scope;
+        boolean[] forward = new boolean[1];
+
+        lastForwardMillis.compute(key, (ignored, last) -> {
+            if (last == null || now - last >= minIntervalMillis) {
+                forward[0] = true;
+                return now;
+            }
+            return last;
+        });
+
+        (forward[0] ? forwardedFrames : coalescedFrames).increment();
+        return forward[0];
+    }
+
+    /**
+     * Forget windows that have long expired so the map only holds recently active typists.
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void pruneIdle() {
+        long cutoff = System.currentTimeMillis() - Math.max(minIntervalMillis, 60_000);
+        lastForwardMillis.values().removeIf(last -> last < cutoff);
+    }
+}
@@ -0,0 +1,296 @@
+package com.theskysid.echobackend.messaging.websocket;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.converter.SmartMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Optional CBOR encoding of STOMP payloads, negotiated per session.
+ * <ul>
+ *     <li>Only sessions opened on the native (non-SockJS) endpoint can opt in; SockJS is text-only.</li>
+ *     <li>The client opts in with the CONNECT header {@code echo-encoding: cbor}.</li>
+ *     <li>Outbound MESSAGE frames for those sessions are sent as binary WebSocket frames in CBOR
+ *     (content-type application/octet-stream, plus {@code echo-encoding: cbor}).</li>
+ *     <li>{@link #jsonMessageConverter()} keeps the object it serialized to JSON in a message header, so the
+ *     CBOR is written straight from that object. Frames that only exist as JSON (relayed from another node,
+ *     or sent as raw bytes) get a header that transcodes the JSON instead; {@link #brokerChannelInterceptor()}
+ *     adds it before the broker fans out.</li>
+ *     <li>The header travels with every per-subscriber copy and keeps the encoded bytes, so a broadcast is
+ *     encoded once, not per subscriber, without any shared cache.</li>
+ *     <li>Inbound SEND frames with content-type application/cbor are read by {@link #cborMessageConverter()}.</li>
+ * </ul>
+ * JSON clients are unaffected. Both mappers come from Boot's {@link Jackson2ObjectMapperBuilder}, so
+ * spring.jackson.* settings and registered modules shape the JSON and the CBOR alike.
+ */
+@Component
+public class BinaryFrameEncoding implements ChannelInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(BinaryFrameEncoding.class);
+
+    public static final String ENCODING_HEADER = "echo-encoding";
+    public static final String CBOR = "cbor";
+    public static final MimeType APPLICATION_CBOR = MimeType.valueOf("application/cbor");
+
+    private static final String BINARY_CAPABLE_ATTRIBUTE = "echoBinaryFrames";
+
+    private static final String CBOR_PAYLOAD_HEADER = "echoCborPayload";
+
+    // Prototype-scoped in Boot, so this instance is ours to reconfigure
+    @Autowired
+    private Jackson2ObjectMapperBuilder objectMapperBuilder;
+
+    private ObjectMapper jsonMapper;
+    private ObjectMapper cborMapper;
+
+    private final Set<String> cborSessions = ConcurrentHashMap.newKeySet();
+
+    @PostConstruct
+    void init() {
+        jsonMapper = objectMapperBuilder.build();
+        cborMapper = objectMapperBuilder.factory(new CBORFactory()).build();
+    }
+
+    /**
+     * Marks sessions opened through the native endpoint as able to receive binary frames.
+     */
+    public HandshakeInterceptor nativeEndpointInterceptor() {
+        return new HandshakeInterceptor() {
+            @Override
+            public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                           WebSocketHandler wsHandler, Map<String, Object> attributes) {
+                attributes.put(BINARY_CAPABLE_ATTRIBUTE, Boolean.TRUE);
+                return true;
+            }
+
+            @Override
+            public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                       WebSocketHandler wsHandler, Exception exception) {
+            }
+        };
+    }
+
+    /**
+     * Reads inbound payloads sent as application/cbor; registered next to the default JSON converter.
+     */
+    public MessageConverter cborMessageConverter() {
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter(APPLICATION_CBOR);
+        converter.setObjectMapper(cborMapper);
+        converter.setSerializedPayloadClass(byte[].class);
+        // Only frames explicitly marked application/cbor; everything else stays on the JSON converter
+        converter.setStrictContentTypeMatch(true);
+        return converter;
+    }
+
+    /**
+     * Writes outbound payloads as JSON exactly like the broker's default Jackson converter, and keeps the
+     * payload object for CBOR sessions. Registered ahead of the defaults, so it leaves String and byte[]
+     * payloads to their own converters, and it never reads inbound frames.
+     */
+    public MessageConverter jsonMessageConverter() {
+        MappingJackson2MessageConverter json = new MappingJackson2MessageConverter();
+        json.setObjectMapper(jsonMapper);
+        return new SmartMessageConverter() {
+            @Override
+            public Object fromMessage(Message<?> message, Class<?> targetClass) {
+                return null;
+            }
+
+            @Override
+            public Object fromMessage(Message<?> message, Class<?> targetClass, Object conversionHint) {
+                return null;
+            }
+
+            @Override
+            public Message<?> toMessage(Object payload, MessageHeaders headers) {
+                return toMessage(payload, headers, null);
+            }
+
+            @Override
+            public Message<?> toMessage(Object payload, MessageHeaders headers, Object conversionHint) {
+                if (payload instanceof String || payload instanceof byte[]) {
+                    return null;
+                }
+                Message<?> message = json.toMessage(payload, headers, conversionHint);
+                // A JSON view hint changes what gets written, so those frames are transcoded from the JSON
+                if (message == null || conversionHint != null) {
+                    return message;
+                }
+                MessageHeaderAccessor accessor = MessageHeaderAccessor.getMutableAccessor(message);
+                accessor.setHeader(CBOR_PAYLOAD_HEADER, CborPayload.ofValue(payload));
+                return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+            }
+        };
+    }
+
+    /**
+     * Gives JSON frames that reach the broker without a payload object (relayed from another node, or
+     * sent as bytes) a header that transcodes them once, shared by every subscriber's copy.
+     */
+    public ChannelInterceptor brokerChannelInterceptor() {
+        return new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE
+                        || message.getHeaders().containsKey(CBOR_PAYLOAD_HEADER)
+                        || !(message.getPayload() instanceof byte[] json) || !isJson(message)) {
+                    return message;
+                }
+                MessageHeaderAccessor accessor = MessageHeaderAccessor.getMutableAccessor(message);
+                accessor.setHeader(CBOR_PAYLOAD_HEADER, CborPayload.ofJson(json));
+                return MessageBuilder.createMessage(json, accessor.getMessageHeaders());
+            }
+        };
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageType messageType = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        if (messageType == SimpMessageType.CONNECT) {
+            registerIfRequested(message);
+            return message;
+        }
+        if (messageType == SimpMessageType.MESSAGE) {
+            return encodeForSession(message);
+        }
+        return message;
+    }
+
+    @EventListener
+    public void handleSessionDisconnect(SessionDisconnectEvent event) {
+        cborSessions.remove(event.getSessionId());
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    private void registerIfRequested(Message<?> message) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+        if (accessor.getCommand() != StompCommand.CONNECT && accessor.getCommand() != StompCommand.STOMP) {
+            return;
+        }
+        if (!CBOR.equalsIgnoreCase(accessor.getFirstNativeHeader(ENCODING_HEADER))) {
+            return;
+        }
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (attributes == null || !Boolean.TRUE.equals(attributes.get(BINARY_CAPABLE_ATTRIBUTE))) {
+            logger.debug("Ignoring CBOR opt-in for session {}: not on the native endpoint", accessor.getSessionId());
+            return;
+        }
+        cborSessions.add(accessor.getSessionId());
+    }
+
+    private Message<?> encodeForSession(Message<?> message) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (sessionId == null || !cborSessions.contains(sessionId) || !(message.getPayload() instanceof byte[] json)
+                || json.length == 0 || !isJson(message)) {
+            return message;
+        }
+
+        CborPayload source = message.getHeaders().get(CBOR_PAYLOAD_HEADER, CborPayload.class);
+        if (source == null) {
+            source = CborPayload.ofJson(json);
+        }
+        byte[] cbor;
+        try {
+            cbor = source.encode(this);
+        } catch (IOException ex) {
+            logger.warn("Falling back to JSON for session {}: {}", sessionId, ex.getMessage());
+            return message;
+        }
+
+        SimpMessageHeaderAccessor accessor = MessageHeaderAccessor.getMutableAccessor(message) instanceof SimpMessageHeaderAccessor simp
+                ? simp
+                : SimpMessageHeaderAccessor.wrap(message);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        accessor.setNativeHeader(ENCODING_HEADER, CBOR);
+        return MessageBuilder.createMessage(cbor, accessor.getMessageHeaders());
+    }
+
+    private static boolean isJson(Message<?> message) {
+        Object contentTypeHeader = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+        MimeType contentType = contentTypeHeader instanceof MimeType mimeType ? mimeType
+                : contentTypeHeader instanceof String value ? MimeType.valueOf(value) : null;
+        return contentType != null && MimeTypeUtils.APPLICATION_JSON.isCompatibleWith(contentType);
+    }
+
+    /**
+     * Streams JSON tokens straight into a CBOR generator; no intermediate tree or DTO.
+     */
+    private byte[] toCbor(byte[] json) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length);
+        try (JsonParser parser = jsonMapper.getFactory().createParser(json);
+             JsonGenerator generator = cborMapper.getFactory().createGenerator(out)) {
+            while (parser.nextToken() != null) {
+                generator.copyCurrentEvent(parser);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * The CBOR form of one outbound payload, shared by all per-subscriber copies of the message.
+     * Encoding is lazy and unsynchronized: two sessions racing on the first frame may both encode,
+     * and either result is kept.
+     */
+    private static final class CborPayload {
+
+        private final Object value;
+        private final byte[] json;
+        private volatile byte[] encoded;
+
+        private CborPayload(Object value, byte[] json) {
+            this.value = value;
+            this.json = json;
+        }
+
+        static CborPayload ofValue(Object value) {
+            return new CborPayload(value, null);
+        }
+
+        static CborPayload ofJson(byte[] json) {
+            return new CborPayload(null, json);
+        }
+
+        byte[] encode(BinaryFrameEncoding encoding) throws IOException {
+            byte[] result = encoded;
+            if (result == null) {
+                result = json != null ? encoding.toCbor(json) : encoding.cborMapper.writeValueAsBytes(value);
+                encoded = result;
+            }
+            return result;
+        }
+    }
+}
@@ -1,12 +1,15 @@
 package com.theskysid.echobackend.messaging.websocket;
 
+import com.theskysid.echobackend.friendship.service.FriendshipGraph;
 import com.theskysid.echobackend.messaging.dto.DirectMessageDTO;
 import com.theskysid.echobackend.messaging.dto.DirectMessageRequestDTO;
 import com.theskysid.echobackend.messaging.entity.Conversation;
 import com.theskysid.echobackend.messaging.entity.DirectMessage;
 import com.theskysid.echobackend.messaging.service.DirectMessageService;
+import com.theskysid.echobackend.messaging.service.TypingIndicatorService;
+import com.theskysid.echobackend.messaging.websocket.FlowControlledSessionDecorator.FrameType;
 import com.theskysid.echobackend.user.entity.User;
-import com.theskysid.echobackend.user.repository.UserRepository;
+import com.theskysid.echobackend.user.service.UserIdentityCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -18,6 +21,7 @@ import org.springframework.stereotype.Controller;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Locale;
 
 @Controller
 public class DirectMessageWsController {
@@ -28,11 +32,25 @@ public class DirectMessageWsController {
     private DirectMessageService directMessageService;
 
     @Autowired
-    private UserRepository userRepository;
+    private UserIdentityCache userIdentityCache;
 
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
+    @Autowired
+    private SessionContextRegistry sessionContextRegistry;
+
+    @Autowired
+    private TypingIndicatorService typingIndicatorService;
+
+    @Autowired
+    private FriendshipGraph friendshipGraph;
+
+    /**
+     * Steady state (sender and conversation already authorised in this session) is the insert plus
+     * the conversation counter update; the first send per conversation resolves and authorises it
+     * through DirectMessageService.
+     */
     @MessageMapping("/dm.sendMessage")
     @Transactional
     public void sendDirectMessage(@Payload DirectMessageRequestDTO request, SimpMessageHeaderAccessor headerAccessor) {
@@ -43,22 +61,16 @@ public class DirectMessageWsController {
                 return;
             }
 
-            User sender = userRepository.findByUsernameIgnoreCase(senderUsername)
-                    .orElseThrow(() -> new RuntimeException("Sender not found"));
+            DmSessionContext context = sessionContextRegistry.forSession(headerAccessor.getSessionId());
+            User sender = resolveSender(context, senderUsername);
 
-            Conversation conversation;
-            if (request.getConversationId() != null) {
-                conversation = directMessageService.getConversation(request.getConversationId(), sender);
-            } else if (request.getRecipientUsername() != null && !request.getRecipientUsername().isBlank()) {
-                User recipient = userRepository.findByUsernameIgnoreCase(request.getRecipientUsername())
-                        .orElseThrow(() -> new RuntimeException("Recipient not found"));
-                conversation = directMessageService.getOrCreateConversation(sender, recipient);
-            } else {
+            Conversation conversation = resolveAuthorisedConversation(context, sender, request);
+            if (conversation == null) {
                 logger.warn("DM send failed: missing conversationId and recipientUsername");
                 return;
             }
 
-            DirectMessage saved = directMessageService.sendMessage(conversation, sender, request.getContent());
+            DirectMessage saved = directMessageService.appendMessage(conversation, sender, request.getContent());
             DirectMessageDTO dto = toDTO(saved);
 
             User recipient = conversation.getOtherParticipant(sender);
@@ -75,8 +87,13 @@ public class DirectMessageWsController {
         }
     }
 
+    /**
+     * Typing signals are throttled per sender and conversation before anything is resolved, and
+     * never read or create conversations: the recipient comes from a conversation already authorised
+     * in this session, or else from the user cache, and must be a friend in the friendship graph.
+     * A frame that cannot be authorised that way is dropped.
+     */
     @MessageMapping("/dm.typing")
-    @Transactional
     public void handleTyping(@Payload DirectMessageRequestDTO request, SimpMessageHeaderAccessor headerAccessor) {
         try {
             String senderUsername = resolveSenderUsername(request, headerAccessor);
@@ -84,24 +101,32 @@ public class DirectMessageWsController {
                 return;
             }
 
-            User sender = userRepository.findByUsernameIgnoreCase(senderUsername)
-                    .orElseThrow(() -> new RuntimeException("Sender not found"));
-
-            Conversation conversation;
+            String scope;
             if (request.getConversationId() != null) {
-                conversation = directMessageService.getConversation(request.getConversationId(), sender);
+                scope = "c:" + request.getConversationId();
             } else if (request.getRecipientUsername() != null && !request.getRecipientUsername().isBlank()) {
-                User recipient = userRepository.findByUsernameIgnoreCase(request.getRecipientUsername())
-                        .orElseThrow(() -> new RuntimeException("Recipient not found"));
-                conversation = directMessageService.getOrCreateConversation(sender, recipient);
+                scope = "u:" + request.getRecipientUsername().toLowerCase(Locale.ROOT);
             } else {
                 return;
             }
 
-            User recipient = conversation.getOtherParticipant(sender);
+            if (!typingIndicatorService.shouldForward(senderUsername, scope)) {
+                return;
+            }
+
+            DmSessionContext context = sessionContextRegistry.forSession(headerAccessor.getSessionId());
+            User sender = resolveSender(context, senderUsername);
+
+            Conversation cached = request.getConversationId() != null
+                    ? context.getConversation(sender, request.getConversationId())
+                    : context.getConversationWith(sender, request.getRecipientUsername());
+            User recipient = cached != null ? cached.getOtherParticipant(sender) : typingRecipient(request);
+            if (recipient == null || !friendshipGraph.areFriends(sender.getId(), recipient.getId())) {
+                return;
+            }
 
             DirectMessageDTO typingDto = DirectMessageDTO.builder()
-                    .conversationId(conversation.getId())
+                    .conversationId(cached != null ? cached.getId() : request.getConversationId())
                     .senderId(sender.getId())
                     .senderUsername(sender.getUsername())
                     .recipientUsername(recipient.getUsername())
@@ -110,12 +135,66 @@ public class DirectMessageWsController {
                     .build();
 
             String recipientDestination = "/user/" + recipient.getUsername() + "/queue/dm";
-            messagingTemplate.convertAndSend(recipientDestination, typingDto);
+            messagingTemplate.convertAndSend(recipientDestination, typingDto, FrameType.TYPING.headers());
         } catch (Exception e) {
             logger.error("Error handling DM typing indicator: {}", e.getMessage());
         }
     }
 
+    private User resolveSender(DmSessionContext context, String senderUsername) {
+        User sender = context.getSender(senderUsername);
+        if (sender == null) {
+            sender = userIdentityCache.findByUsername(senderUsername)
+                    .orElseThrow(() -> new RuntimeException("Sender not found"));
+            context.setSender(sender);
+        }
+        return sender;
+    }
+
+    private User typingRecipient(DirectMessageRequestDTO request) {
+        if (request.getRecipientUsername() == null || request.getRecipientUsername().isBlank()) {
+            return null;
+        }
+        return userIdentityCache.findByUsername(request.getRecipientUsername()).orElse(null);
+    }
+
+    /**
+     * Conversation from the session cache, or loaded and access-checked once and then cached.
+     * A cached one is still checked against the in-memory friendship graph, so an unfriend whose
+     * invalidation has not reached this node yet cannot keep a session sending.
+     * Returns null when the request names neither a conversation nor a recipient.
+     */
+    private Conversation resolveAuthorisedConversation(DmSessionContext context, User sender, DirectMessageRequestDTO request) {
+        Conversation conversation;
+        if (request.getConversationId() != null) {
+            conversation = stillFriends(context, sender, context.getConversation(sender, request.getConversationId()));
+            if (conversation == null) {
+                conversation = directMessageService.getConversation(request.getConversationId(), sender);
+                context.authorise(conversation, sender);
+            }
+        } else if (request.getRecipientUsername() != null && !request.getRecipientUsername().isBlank()) {
+            conversation = stillFriends(context, sender, context.getConversationWith(sender, request.getRecipientUsername()));
+            if (conversation == null) {
+                User recipient = userIdentityCache.findByUsername(request.getRecipientUsername())
+                        .orElseThrow(() -> new RuntimeException("Recipient not found"));
+                conversation = directMessageService.getOrCreateConversation(sender, recipient);
+                context.authorise(conversation, sender);
+            }
+        } else {
+            return null;
+        }
+        return conversation;
+    }
+
+    // The cached conversation, or null (and evicted) once the participants are no longer friends
+    private Conversation stillFriends(DmSessionContext context, User sender, Conversation cached) {
+        if (cached == null || friendshipGraph.areFriends(sender.getId(), cached.getOtherParticipant(sender).getId())) {
+            return cached;
+        }
+        context.evictConversation(cached.getId());
+        return null;
+    }
+
     private String resolveSenderUsername(DirectMessageRequestDTO request, SimpMessageHeaderAccessor headerAccessor) {
         if (headerAccessor.getUser() != null && headerAccessor.getUser().getName() != null) {
             return headerAccessor.getUser().getName();
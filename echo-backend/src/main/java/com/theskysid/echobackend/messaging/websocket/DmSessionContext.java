@@ -0,0 +1,108 @@
+package com.theskysid.echobackend.messaging.websocket;
+
+import com.theskysid.echobackend.messaging.entity.Conversation;
+import com.theskysid.echobackend.user.entity.User;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-WebSocket-session cache for the DM hot path: the resolved sender and the
+ * conversations (with participants loaded) already authorised in this session.
+ * Entities held here are detached; they are only used as references for inserts
+ * and for building DTOs. Invalidation is driven by {@link SessionContextRegistry}.
+ * <p>
+ * Authorisations are keyed by (sender id, conversation id): a session whose sender changes
+ * can never reuse a conversation that was checked for somebody else.
+ */
+public class DmSessionContext {
+
+    private static final int MAX_CONVERSATIONS = 256;
+
+    private volatile User sender;
+
+    private final Map<AuthorisationKey, Conversation> conversationsById = new ConcurrentHashMap<>();
+    private final Map<RecipientKey, Long> conversationIdsByRecipient = new ConcurrentHashMap<>();
+
+    private record AuthorisationKey(long senderId, long conversationId) {
+    }
+
+    private record RecipientKey(long senderId, String recipientUsername) {
+    }
+
+    /**
+     * Cached sender, or null if nothing is cached for this username.
+     */
+    public User getSender(String username) {
+        User cached = sender;
+        return cached != null && cached.getUsername().equalsIgnoreCase(username) ? cached : null;
+    }
+
+    /**
+     * Cache the sender; a different user replacing the cached one also drops every authorisation.
+     */
+    public void setSender(User sender) {
+        User previous = this.sender;
+        this.sender = sender;
+        if (previous != null && !previous.getId().equals(sender.getId())) {
+            evictAllConversations();
+        }
+    }
+
+    public Long getSenderId() {
+        User cached = sender;
+        return cached != null ? cached.getId() : null;
+    }
+
+    /**
+     * The conversation if it was authorised for this sender in this session, otherwise null.
+     */
+    public Conversation getConversation(User sender, Long conversationId) {
+        return conversationsById.get(new AuthorisationKey(sender.getId(), conversationId));
+    }
+
+    public Conversation getConversationWith(User sender, String recipientUsername) {
+        Long conversationId = conversationIdsByRecipient.get(
+                new RecipientKey(sender.getId(), recipientUsername.toLowerCase(Locale.ROOT)));
+        return conversationId != null ? getConversation(sender, conversationId) : null;
+    }
+
+    /**
+     * Remember a conversation whose participant and friendship checks have passed for the sender.
+     */
+    public void authorise(Conversation conversation, User currentUser) {
+        if (conversationsById.size() >= MAX_CONVERSATIONS) {
+            evictAllConversations();
+        }
+        conversationsById.put(new AuthorisationKey(currentUser.getId(), conversation.getId()), conversation);
+        String otherUsername = conversation.getOtherParticipant(currentUser).getUsername();
+        conversationIdsByRecipient.put(
+                new RecipientKey(currentUser.getId(), otherUsername.toLowerCase(Locale.ROOT)), conversation.getId());
+    }
+
+    void clear() {
+        sender = null;
+        evictAllConversations();
+    }
+
+    void evictConversation(Long conversationId) {
+        conversationsById.keySet().removeIf(key -> key.conversationId() == conversationId);
+        conversationIdsByRecipient.values().removeIf(conversationId::equals);
+    }
+
+    void evictParticipant(Long userId) {
+        conversationsById.values().stream()
+                .filter(conversation -> conversation.getParticipantOne().getId().equals(userId)
+                        || conversation.getParticipantTwo().getId().equals(userId))
+                .map(Conversation::getId)
+                .distinct()
+                .toList()
+                .forEach(this::evictConversation);
+    }
+
+    void evictAllConversations() {
+        conversationsById.clear();
+        conversationIdsByRecipient.clear();
+    }
+}
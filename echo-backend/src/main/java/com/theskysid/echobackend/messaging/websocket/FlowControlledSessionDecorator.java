@@ -0,0 +1,254 @@
+package com.theskysid.echobackend.messaging.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Per-session outbound buffer with priority shedding, used in place of Spring's
+ * ConcurrentWebSocketSessionDecorator. One thread writes to the socket at a time; the others
+ * buffer their frame and return. While a slow client keeps the buffer above the drop threshold,
+ * new TYPING and presence frames are discarded instead of queued. When the buffer limit is
+ * reached, buffered droppable frames are shed first; if content alone still exceeds the limit,
+ * or a single write has been blocked for longer than the send time limit, the session is closed.
+ */
+public class FlowControlledSessionDecorator extends WebSocketSessionDecorator {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlowControlledSessionDecorator.class);
+
+    /**
+     * Native header that producers set on droppable broadcasts (see {@link FrameType#headers()}).
+     * It travels as a plain STOMP header, so the frame is classified without looking at its body.
+     */
+    public static final String FRAME_TYPE_HEADER = "echo-frame-type";
+
+    private static final byte[] MESSAGE_COMMAND = "MESSAGE\n".getBytes(StandardCharsets.US_ASCII);
+    private static final String FRAME_TYPE_PREFIX = FRAME_TYPE_HEADER + ":";
+    private static final byte[] FRAME_TYPE_PREFIX_BYTES = FRAME_TYPE_PREFIX.getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * How expendable an outbound frame is. Only MESSAGE frames are ever classified as droppable.
+     */
+    public enum FrameType {
+        TYPING, PRESENCE, CONTENT;
+
+        private final Map<String, Object> headers = Map.of(FRAME_TYPE_HEADER, name());
+
+        public boolean isDroppable() {
+            return this != CONTENT;
+        }
+
+        /**
+         * Headers to pass to {@code SimpMessagingTemplate.convertAndSend} so the frame is classified as this type.
+         */
+        public Map<String, Object> headers() {
+            return headers;
+        }
+    }
+
+    private final int sendTimeLimit;
+    private final int bufferSizeLimit;
+    private final int dropThreshold;
+    private final OutboundFlowMetrics metrics;
+
+    private final Deque<WebSocketMessage<?>> buffer = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger bufferSize = new AtomicInteger();
+
+    private volatile long sendStartTime;
+    private volatile boolean limitExceeded;
+
+    private final Lock flushLock = new ReentrantLock();
+
+    public FlowControlledSessionDecorator(WebSocketSession delegate, int sendTimeLimit, int bufferSizeLimit,
+                                          int dropThreshold, OutboundFlowMetrics metrics) {
+        super(delegate);
+        this.sendTimeLimit = sendTimeLimit;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.dropThreshold = dropThreshold;
+        this.metrics = metrics;
+    }
+
+    public int getBufferSize() {
+        return bufferSize.get();
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (limitExceeded || !isOpen()) {
+            return;
+        }
+
+        FrameType frameType = classify(message);
+        if (frameType.isDroppable() && bufferSize.get() > dropThreshold) {
+            metrics.frameDropped(frameType);
+            return;
+        }
+
+        bufferSize.addAndGet(message.getPayloadLength());
+        buffer.add(message);
+
+        do {
+            if (!tryFlushMessageBuffer()) {
+                checkSessionLimits();
+                break;
+            }
+        }
+        while (!buffer.isEmpty() && !limitExceeded);
+    }
+
+    private boolean tryFlushMessageBuffer() throws IOException {
+        if (!flushLock.tryLock()) {
+            return false;
+        }
+        try {
+            while (!limitExceeded) {
+                WebSocketMessage<?> message = buffer.poll();
+                if (message == null) {
+                    break;
+                }
+                bufferSize.addAndGet(-message.getPayloadLength());
+                sendStartTime = System.currentTimeMillis();
+                getDelegate().sendMessage(message);
+                sendStartTime = 0;
+            }
+        } finally {
+            sendStartTime = 0;
+            flushLock.unlock();
+        }
+        return true;
+    }
+
+    private void checkSessionLimits() {
+        long started = sendStartTime;
+        if (started > 0 && System.currentTimeMillis() - started > sendTimeLimit) {
+            limitExceeded("time", "Send time limit exceeded (" + sendTimeLimit + " ms)");
+        }
+
+        if (bufferSize.get() > bufferSizeLimit) {
+            shedDroppableFrames();
+            if (bufferSize.get() > bufferSizeLimit) {
+                limitExceeded("buffer", "Send buffer limit exceeded (" + bufferSizeLimit + " bytes)");
+            }
+        }
+    }
+
+    private void shedDroppableFrames() {
+        Iterator<WebSocketMessage<?>> iterator = buffer.iterator();
+        while (iterator.hasNext() && bufferSize.get() > bufferSizeLimit) {
+            WebSocketMessage<?> message = iterator.next();
+            FrameType frameType = classify(message);
+            if (frameType.isDroppable() && buffer.removeFirstOccurrence(message)) {
+                bufferSize.addAndGet(-message.getPayloadLength());
+                metrics.frameDropped(frameType);
+            }
+        }
+    }
+
+    private void limitExceeded(String reason, String description) {
+        limitExceeded = true;
+        buffer.clear();
+        bufferSize.set(0);
+        metrics.slowConsumer(reason);
+        logger.warn("Closing slow WebSocket session {}: {}", getId(), description);
+        throw new SessionLimitExceededException(description, CloseStatus.SESSION_NOT_RELIABLE.withReason(description));
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    /**
+     * Classify a STOMP frame by the {@link #FRAME_TYPE_HEADER} its producer set. Only the command line
+     * and header block are read, never the body, so the cost does not grow with the payload and text
+     * (JSON) and binary (CBOR) sessions are handled alike. Anything that is not a MESSAGE frame, or
+     * carries no frame type header, counts as content.
+     */
+    static FrameType classify(WebSocketMessage<?> message) {
+        if (message instanceof TextMessage textMessage) {
+            return classifyText(textMessage.getPayload());
+        }
+        if (message instanceof BinaryMessage binaryMessage) {
+            // Read through a duplicate so the position the socket write relies on is untouched
+            return classifyBinary(binaryMessage.getPayload().duplicate());
+        }
+        return FrameType.CONTENT;
+    }
+
+    private static FrameType classifyText(String frame) {
+        if (!frame.startsWith("MESSAGE\n")) {
+            return FrameType.CONTENT;
+        }
+        int lineStart = MESSAGE_COMMAND.length;
+        while (lineStart < frame.length() && frame.charAt(lineStart) != '\n') {
+            int lineEnd = frame.indexOf('\n', lineStart);
+            if (lineEnd < 0) {
+                break;
+            }
+            if (frame.startsWith(FRAME_TYPE_PREFIX, lineStart)) {
+                return frameType(frame.substring(lineStart + FRAME_TYPE_PREFIX.length(), lineEnd));
+            }
+            lineStart = lineEnd + 1;
+        }
+        return FrameType.CONTENT;
+    }
+
+    private static FrameType classifyBinary(ByteBuffer frame) {
+        if (!startsWith(frame, frame.position(), MESSAGE_COMMAND)) {
+            return FrameType.CONTENT;
+        }
+        int lineStart = frame.position() + MESSAGE_COMMAND.length;
+        while (lineStart < frame.limit() && frame.get(lineStart) != '\n') {
+            int lineEnd = lineStart;
+            while (lineEnd < frame.limit() && frame.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            if (lineEnd == frame.limit()) {
+                break;
+            }
+            if (startsWith(frame, lineStart, FRAME_TYPE_PREFIX_BYTES)) {
+                int valueStart = lineStart + FRAME_TYPE_PREFIX_BYTES.length;
+                byte[] value = new byte[lineEnd - valueStart];
+                frame.get(valueStart, value);
+                return frameType(new String(value, StandardCharsets.US_ASCII));
+            }
+            lineStart = lineEnd + 1;
+        }
+        return FrameType.CONTENT;
+    }
+
+    private static FrameType frameType(String value) {
+        for (FrameType frameType : FrameType.values()) {
+            if (frameType.name().equals(value)) {
+                return frameType;
+            }
+        }
+        return FrameType.CONTENT;
+    }
+
+    private static boolean startsWith(ByteBuffer frame, int start, byte[] prefix) {
+        if (frame.limit() - start < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (frame.get(start + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,32 @@
+package com.theskysid.echobackend.messaging.websocket;
+
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+/**
+ * SubProtocolWebSocketHandler whose sessions are wrapped in {@link FlowControlledSessionDecorator}
+ * rather than Spring's ConcurrentWebSocketSessionDecorator. Send time and buffer limits still come
+ * from the WebSocket transport registration.
+ */
+public class FlowControlledSubProtocolWebSocketHandler extends SubProtocolWebSocketHandler {
+
+    private final int dropThreshold;
+
+    private final OutboundFlowMetrics metrics;
+
+    public FlowControlledSubProtocolWebSocketHandler(MessageChannel clientInboundChannel,
+                                                     SubscribableChannel clientOutboundChannel,
+                                                     int dropThreshold, OutboundFlowMetrics metrics) {
+        super(clientInboundChannel, clientOutboundChannel);
+        this.dropThreshold = dropThreshold;
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected WebSocketSession decorateSession(WebSocketSession session) {
+        return new FlowControlledSessionDecorator(session, getSendTimeLimit(), getSendBufferSizeLimit(),
+                Math.min(dropThreshold, getSendBufferSizeLimit()), metrics);
+    }
+}
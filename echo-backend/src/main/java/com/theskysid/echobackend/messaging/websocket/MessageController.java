@@ -4,8 +4,9 @@ import com.theskysid.echobackend.auth.service.AuthenticationService;
 import com.theskysid.echobackend.friendship.service.FriendshipService;
 import com.theskysid.echobackend.messaging.entity.ChatMessage;
 import com.theskysid.echobackend.messaging.repository.ChatMessageRepository;
+import com.theskysid.echobackend.messaging.service.GlobalMessageHistory;
 import com.theskysid.echobackend.user.entity.User;
-import com.theskysid.echobackend.user.repository.UserRepository;
+import com.theskysid.echobackend.user.service.UserIdentityCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -22,6 +23,8 @@ import java.util.Map;
 @RequestMapping("/api/messages")
 public class MessageController {
 
+    private static final int MAX_GLOBAL_PAGE_SIZE = 500;
+
     @Autowired
     private ChatMessageRepository chatMessageRepository;
 
@@ -29,11 +32,14 @@ public class MessageController {
     private AuthenticationService authenticationService;
 
     @Autowired
-    private UserRepository userRepository;
+    private UserIdentityCache userIdentityCache;
 
     @Autowired
     private FriendshipService friendshipService;
 
+    @Autowired
+    private GlobalMessageHistory globalMessageHistory;
+
     @GetMapping("/private")
     public ResponseEntity<?> getPrivateMessages(
             @RequestParam String user1,
@@ -44,8 +50,8 @@ public class MessageController {
         }
 
         User currentUser = authenticationService.resolveAuthenticatedUser(authentication.getName());
-        User firstUser = userRepository.findByUsernameIgnoreCase(user1).orElse(null);
-        User secondUser = userRepository.findByUsernameIgnoreCase(user2).orElse(null);
+        User firstUser = userIdentityCache.findByUsername(user1).orElse(null);
+        User secondUser = userIdentityCache.findByUsername(user2).orElse(null);
         if (firstUser == null || secondUser == null) {
             return ResponseEntity.badRequest().body(Map.of("error", "User not found"));
         }
@@ -64,19 +70,20 @@ public class MessageController {
         return ResponseEntity.ok(messages);
     }
 
+    /**
+     * GET /api/messages/global?before={id}&limit={n} — global chat history, oldest first.
+     * Without "before" returns the newest page; pass the oldest id of a page to get the one before it.
+     */
     @GetMapping("/global")
-    @org.springframework.transaction.annotation.Transactional
-    public ResponseEntity<?> getGlobalMessages(Authentication authentication) {
+    public ResponseEntity<?> getGlobalMessages(
+            @RequestParam(required = false) Long before,
+            @RequestParam(defaultValue = "100") int limit,
+            Authentication authentication) {
         if (authentication == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Not authenticated"));
         }
-        java.time.LocalDateTime cutoff = java.time.LocalDateTime.now().minusDays(7);
-        try {
-            chatMessageRepository.deleteOldGlobalMessages(cutoff);
-        } catch (Exception e) {
-            // Log and continue if cleanup has an issue
-        }
-        List<ChatMessage> messages = chatMessageRepository.findGlobalMessagesSince(cutoff);
+        int pageSize = Math.max(1, Math.min(limit, MAX_GLOBAL_PAGE_SIZE));
+        List<ChatMessage> messages = globalMessageHistory.page(before, pageSize);
         return ResponseEntity.ok(messages);
     }
 
@@ -0,0 +1,26 @@
+package com.theskysid.echobackend.messaging.websocket;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+/**
+ * Counters for outbound flow control: frames shed per type and sessions closed as slow consumers.
+ */
+@Component
+public class OutboundFlowMetrics {
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    public void frameDropped(FlowControlledSessionDecorator.FrameType frameType) {
+        meterRegistry.counter("echo.websocket.outbound.dropped", "type", frameType.name().toLowerCase(Locale.ROOT))
+                .increment();
+    }
+
+    public void slowConsumer(String reason) {
+        meterRegistry.counter("echo.websocket.slow.consumers", "reason", reason).increment();
+    }
+}
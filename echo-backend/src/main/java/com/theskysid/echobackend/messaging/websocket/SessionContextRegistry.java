@@ -0,0 +1,112 @@
+package com.theskysid.echobackend.messaging.websocket;
+
+import com.theskysid.echobackend.messaging.relay.CacheInvalidation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongConsumer;
+
+/**
+ * Holds one {@link DmSessionContext} per STOMP session and invalidates them when the
+ * data they cache changes (friendship removed, profile updated, retention changed,
+ * conversation garbage-collected).
+ * <p>
+ * Invalidations requested inside a transaction run immediately and again after commit,
+ * so a concurrent send cannot re-cache state that the transaction is about to change.
+ * After commit each one is also published as a {@link CacheInvalidation}, so sessions held by
+ * other nodes drop the same entries when the broker relay delivers it.
+ */
+@Component
+public class SessionContextRegistry {
+
+    static final String USER_CACHE = "dm-session-user";
+    static final String CONVERSATION_CACHE = "dm-session-conversation";
+    static final String ALL_CONVERSATIONS_CACHE = "dm-session-conversations";
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private final Map<String, DmSessionContext> contextsBySessionId = new ConcurrentHashMap<>();
+
+    public DmSessionContext forSession(String sessionId) {
+        return contextsBySessionId.computeIfAbsent(sessionId, ignored -> new DmSessionContext());
+    }
+
+    public void removeSession(String sessionId) {
+        contextsBySessionId.remove(sessionId);
+    }
+
+    /**
+     * Drop everything cached about a user: their own sender entry and every cached
+     * conversation they take part in, in any session.
+     */
+    public void invalidateUser(Long userId) {
+        runNowAndAfterCommit(USER_CACHE, userId, this::evictUser);
+    }
+
+    public void invalidateConversation(Long conversationId) {
+        runNowAndAfterCommit(CONVERSATION_CACHE, conversationId, this::evictConversation);
+    }
+
+    public void invalidateAllConversations() {
+        runNowAndAfterCommit(ALL_CONVERSATIONS_CACHE, 0, ignored -> evictAllConversations());
+    }
+
+    /**
+     * A friendship, retention policy or conversation changed on another node.
+     */
+    @EventListener
+    public void onCacheInvalidation(CacheInvalidation invalidation) {
+        if (!invalidation.remote()) {
+            return;
+        }
+        switch (invalidation.cache()) {
+            case USER_CACHE -> evictUser(invalidation.id());
+            case CONVERSATION_CACHE -> evictConversation(invalidation.id());
+            case ALL_CONVERSATIONS_CACHE -> evictAllConversations();
+            default -> {
+            }
+        }
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    private void evictUser(long userId) {
+        contextsBySessionId.values().forEach(context -> {
+            if (Long.valueOf(userId).equals(context.getSenderId())) {
+                context.clear();
+            } else {
+                context.evictParticipant(userId);
+            }
+        });
+    }
+
+    private void evictConversation(long conversationId) {
+        contextsBySessionId.values().forEach(context -> context.evictConversation(conversationId));
+    }
+
+    private void evictAllConversations() {
+        contextsBySessionId.values().forEach(DmSessionContext::evictAllConversations);
+    }
+
+    private void runNowAndAfterCommit(String cache, long id, LongConsumer eviction) {
+        eviction.accept(id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eviction.accept(id);
+                    eventPublisher.publishEvent(CacheInvalidation.local(cache, id));
+                }
+            });
+        } else {
+            eventPublisher.publishEvent(CacheInvalidation.local(cache, id));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.theskysid.echobackend.messaging.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Channel executor that runs every frame on a virtual thread while keeping frames of the
+ * same STOMP session strictly in order. Each session with pending work gets one "lane":
+ * a queue drained by a single virtual thread, which exits once the lane is empty. A blocking
+ * JPA call therefore parks only its own virtual thread and only delays that session.
+ * <p>
+ * Tasks whose message carries no session id run on their own virtual thread, unordered.
+ */
+public class SessionOrderedVirtualThreadExecutor implements TaskExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionOrderedVirtualThreadExecutor.class);
+
+    private final ThreadFactory threadFactory;
+
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    public SessionOrderedVirtualThreadExecutor(String threadNamePrefix) {
+        this.threadFactory = Thread.ofVirtual().name(threadNamePrefix, 0).factory();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        String sessionId = resolveSessionId(task);
+        if (sessionId == null) {
+            threadFactory.newThread(task).start();
+            return;
+        }
+
+        boolean[] startDrainer = new boolean[1];
+        lanes.compute(sessionId, (ignored, lane) -> {
+            if (lane == null) {
+                lane = new Lane();
+            }
+            lane.tasks.add(task);
+            startDrainer[0] = lane.pending++ == 0;
+            return lane;
+        });
+
+        if (startDrainer[0]) {
+            threadFactory.newThread(() -> drain(sessionId)).start();
+        }
+    }
+
+    /**
+     * Sessions that currently have frames queued or running.
+     */
+    public int getActiveSessionCount() {
+        return lanes.size();
+    }
+
+    private void drain(String sessionId) {
+        Lane lane = lanes.get(sessionId);
+        while (lane != null) {
+            Runnable task = lane.tasks.poll();
+            try {
+                if (task != null) {
+                    task.run();
+                }
+            } catch (Throwable ex) {
+                // A failing frame must not strand the frames queued behind it
+                logger.error("Failed to handle frame for session {}: {}", sessionId, ex.getMessage());
+            }
+
+            // Counting down and removing the lane happen atomically with execute(),
+            // so a frame arriving now either lands in this lane or starts a new drainer
+            Lane current = lane;
+            lane = lanes.compute(sessionId, (ignored, existing) ->
+                    --current.pending == 0 ? null : existing);
+        }
+    }
+
+    private static String resolveSessionId(Runnable task) {
+        if (task instanceof MessageHandlingRunnable handlingRunnable) {
+            Message<?> message = handlingRunnable.getMessage();
+            return SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        }
+        return null;
+    }
+
+    private static final class Lane {
+
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        // Guarded by the map's per-key compute lock
+        private int pending;
+    }
+}
@@ -14,6 +14,7 @@ import org.springframework.web.socket.messaging.SessionDisconnectEvent;
 public class WebSocketListener {
 
     @Autowired private OnlineUserService onlineUserService;
+    @Autowired private SessionContextRegistry sessionContextRegistry;
 
     private static final Logger logger = LoggerFactory.getLogger(WebSocketListener.class);
 
@@ -31,5 +32,6 @@ public class WebSocketListener {
         }
 
         onlineUserService.unregisterSession(sessionId);
+        sessionContextRegistry.removeSession(sessionId);
     }
 }
\ No newline at end of file
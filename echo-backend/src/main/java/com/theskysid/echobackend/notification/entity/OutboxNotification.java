@@ -0,0 +1,70 @@
+package com.theskysid.echobackend.notification.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * An email or SMS waiting to be delivered (or recently delivered), written in the same transaction
+ * as whatever it notifies about. See NotificationOutboxService.
+ */
+@Entity
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "notification_outbox", indexes = {
+        @Index(name = "idx_notification_outbox_due", columnList = "channel, status, next_attempt_at")
+})
+public class OutboxNotification {
+
+    public enum Channel { EMAIL, SMS }
+
+    public enum Status { PENDING, SENDING, SENT, FAILED }
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Channel channel;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 16)
+    private Status status;
+
+    @Column(nullable = false)
+    private String recipient;
+
+    @Column
+    private String subject;
+
+    // Cleared once the notification is sent or given up on, so OTPs do not linger
+    @Column(length = 2000)
+    private String body;
+
+    @Column(nullable = false)
+    private int attempts;
+
+    // When PENDING: earliest next attempt. When SENDING: end of the worker's lease.
+    @Column(name = "next_attempt_at", nullable = false)
+    private LocalDateTime nextAttemptAt;
+
+    // Not worth delivering after this (e.g. the OTP expired); null if it never goes stale
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "sent_at")
+    private LocalDateTime sentAt;
+}
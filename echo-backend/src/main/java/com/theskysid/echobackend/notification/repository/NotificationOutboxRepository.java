@@ -0,0 +1,62 @@
+package com.theskysid.echobackend.notification.repository;
+
+import com.theskysid.echobackend.notification.entity.OutboxNotification;
+import com.theskysid.echobackend.notification.entity.OutboxNotification.Channel;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface NotificationOutboxRepository extends JpaRepository<OutboxNotification, Long> {
+
+    /**
+     * Claim up to :limit due notifications on one channel: PENDING rows whose next attempt is due, and
+     * SENDING rows whose lease ran out (their worker died). Claimed rows move to SENDING with a lease
+     * until :leaseUntil and one more attempt. SKIP LOCKED lets several nodes claim concurrently
+     * without waiting on each other. Run as a query, inside the caller's transaction.
+     */
+    @Query(value = "UPDATE notification_outbox o SET status = 'SENDING', attempts = o.attempts + 1, " +
+            "       next_attempt_at = :leaseUntil " +
+            "FROM (SELECT id FROM notification_outbox " +
+            "      WHERE channel = :channel AND status IN ('PENDING', 'SENDING') AND next_attempt_at <= :now " +
+            "      ORDER BY next_attempt_at, id LIMIT :limit FOR UPDATE SKIP LOCKED) due " +
+            "WHERE o.id = due.id RETURNING o.*", nativeQuery = true)
+    List<OutboxNotification> claimDue(@Param("channel") String channel, @Param("now") LocalDateTime now,
+                                      @Param("leaseUntil") LocalDateTime leaseUntil, @Param("limit") int limit);
+
+    // The outcome updates only apply to the attempt that claimed the row, so a worker whose lease
+    // expired and was re-claimed cannot overwrite the newer attempt.
+
+    @Modifying
+    @Query("UPDATE OutboxNotification n SET n.status = 'SENT', n.sentAt = :sentAt, n.body = NULL, n.lastError = NULL " +
+            "WHERE n.id = :id AND n.status = 'SENDING' AND n.attempts = :attempt")
+    int markSent(@Param("id") Long id, @Param("attempt") int attempt, @Param("sentAt") LocalDateTime sentAt);
+
+    @Modifying
+    @Query("UPDATE OutboxNotification n SET n.status = 'PENDING', n.nextAttemptAt = :nextAttemptAt, n.lastError = :error " +
+            "WHERE n.id = :id AND n.status = 'SENDING' AND n.attempts = :attempt")
+    int markRetry(@Param("id") Long id, @Param("attempt") int attempt,
+                  @Param("nextAttemptAt") LocalDateTime nextAttemptAt, @Param("error") String error);
+
+    @Modifying
+    @Query("UPDATE OutboxNotification n SET n.status = 'FAILED', n.body = NULL, n.lastError = :error " +
+            "WHERE n.id = :id AND n.status = 'SENDING' AND n.attempts = :attempt")
+    int markFailed(@Param("id") Long id, @Param("attempt") int attempt, @Param("error") String error);
+
+    /**
+     * Give up on every undelivered notification to :recipient on :channel, including retries and rows
+     * leased to a worker (whose outcome update then matches nothing). A send already in progress can
+     * still complete.
+     */
+    @Modifying
+    @Query("UPDATE OutboxNotification n SET n.status = 'FAILED', n.body = NULL, n.lastError = 'Superseded' " +
+            "WHERE n.channel = :channel AND n.recipient = :recipient AND n.status IN ('PENDING', 'SENDING')")
+    int supersede(@Param("channel") Channel channel, @Param("recipient") String recipient);
+
+    @Modifying
+    @Query("DELETE FROM OutboxNotification n WHERE n.status IN ('SENT', 'FAILED') AND n.createdAt < :cutoff")
+    int deleteFinishedBefore(@Param("cutoff") LocalDateTime cutoff);
+}
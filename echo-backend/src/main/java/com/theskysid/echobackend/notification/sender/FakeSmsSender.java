@@ -0,0 +1,28 @@
+package com.theskysid.echobackend.notification.sender;
+
+import com.theskysid.echobackend.notification.entity.OutboxNotification.Channel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Logs SMS instead of sending them (notification.sms.provider=fake), for running without Twilio.
+ * Never enable in production: the log contains the OTPs.
+ */
+@Component
+@ConditionalOnProperty(name = "notification.sms.provider", havingValue = "fake")
+public class FakeSmsSender implements NotificationSender {
+
+    private static final Logger logger = LoggerFactory.getLogger(FakeSmsSender.class);
+
+    @Override
+    public Channel channel() {
+        return Channel.SMS;
+    }
+
+    @Override
+    public void send(String recipient, String subject, String body) {
+        logger.info("Fake SMS to {}: {}", recipient, body);
+    }
+}
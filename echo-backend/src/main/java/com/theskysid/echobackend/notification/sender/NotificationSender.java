@@ -0,0 +1,14 @@
+package com.theskysid.echobackend.notification.sender;
+
+import com.theskysid.echobackend.notification.entity.OutboxNotification.Channel;
+
+/**
+ * Delivers notifications on one channel. Called from the outbox workers, never on a request thread;
+ * throwing schedules a retry.
+ */
+public interface NotificationSender {
+
+    Channel channel();
+
+    void send(String recipient, String subject, String body);
+}
@@ -0,0 +1,31 @@
+package com.theskysid.echobackend.notification.sender;
+
+import com.theskysid.echobackend.notification.entity.OutboxNotification.Channel;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Component;
+
+/**
+ * Email over spring.mail. Point spring.mail.host at a local SMTP stub (e.g. MailHog) to run offline.
+ */
+@Component
+public class SmtpEmailSender implements NotificationSender {
+
+    @Autowired
+    private JavaMailSender mailSender;
+
+    @Override
+    public Channel channel() {
+        return Channel.EMAIL;
+    }
+
+    @Override
+    public void send(String recipient, String subject, String body) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setTo(recipient);
+        message.setSubject(subject);
+        message.setText(body);
+        mailSender.send(message);
+    }
+}
@@ -0,0 +1,26 @@
+package com.theskysid.echobackend.notification.sender;
+
+import com.theskysid.echobackend.notification.entity.OutboxNotification.Channel;
+import com.twilio.rest.api.v2010.account.Message;
+import com.twilio.type.PhoneNumber;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(name = "notification.sms.provider", havingValue = "twilio", matchIfMissing = true)
+public class TwilioSmsSender implements NotificationSender {
+
+    @Value("${twilio.phone-number}")
+    private String twilioPhoneNumber;
+
+    @Override
+    public Channel channel() {
+        return Channel.SMS;
+    }
+
+    @Override
+    public void send(String recipient, String subject, String body) {
+        Message.creator(new PhoneNumber(recipient), new PhoneNumber(twilioPhoneNumber), body).create();
+    }
+}
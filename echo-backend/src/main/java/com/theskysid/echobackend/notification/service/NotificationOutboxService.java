@@ -0,0 +1,314 @@
+package com.theskysid.echobackend.notification.service;
+
+import com.theskysid.echobackend.notification.entity.OutboxNotification;
+import com.theskysid.echobackend.notification.entity.OutboxNotification.Channel;
+import com.theskysid.echobackend.notification.entity.OutboxNotification.Status;
+import com.theskysid.echobackend.notification.repository.NotificationOutboxRepository;
+import com.theskysid.echobackend.notification.sender.NotificationSender;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+
+/**
+ * Transactional outbox for emails and SMS (OTP delivery).
+ * <p>
+ * {@link #enqueue} writes a row in the caller's transaction, so the request returns as soon as that
+ * commits; SMTP and Twilio are only ever called from the worker pool.
+ * <ul>
+ *     <li>A dispatcher thread claims due rows per channel with FOR UPDATE SKIP LOCKED, never more than
+ *     the channel has free workers (notification.&lt;channel&gt;.max-concurrency), so a slow provider
+ *     only holds its own share of the pool and unclaimed rows stay in the table.</li>
+ *     <li>A claimed row is leased for notification.lease-seconds; if its node dies mid-send another
+ *     node picks it up after the lease (delivery is at least once).</li>
+ *     <li>Failures are retried with exponential backoff and jitter, up to notification.retry.max-attempts.
+ *     Rows past their expiry (an OTP that is no longer valid) are failed instead of sent.</li>
+ *     <li>{@link #enqueueReplacing} fails a recipient's earlier undelivered rows, so a newly issued OTP
+ *     is not followed by a stale one.</li>
+ *     <li>Commits wake the dispatcher, otherwise it polls every notification.poll-interval-ms.</li>
+ * </ul>
+ */
+@Service
+public class NotificationOutboxService {
+
+    private static final Logger logger = LoggerFactory.getLogger(NotificationOutboxService.class);
+
+    private static final int MAX_ERROR_LENGTH = 500;
+
+    @Autowired
+    private NotificationOutboxRepository outboxRepository;
+
+    @Autowired
+    private List<NotificationSender> senders;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${notification.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    @Value("${notification.lease-seconds:60}")
+    private long leaseSeconds;
+
+    @Value("${notification.retention-hours:24}")
+    private long retentionHours;
+
+    @Value("${notification.email.max-concurrency:4}")
+    private int emailConcurrency;
+
+    @Value("${notification.sms.max-concurrency:2}")
+    private int smsConcurrency;
+
+    @Value("${notification.retry.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${notification.retry.initial-backoff-ms:2000}")
+    private long initialBackoffMs;
+
+    @Value("${notification.retry.max-backoff-ms:300000}")
+    private long maxBackoffMs;
+
+    private final Map<Channel, NotificationSender> sendersByChannel = new EnumMap<>(Channel.class);
+    private final Map<Channel, Semaphore> permitsByChannel = new EnumMap<>(Channel.class);
+    private final Map<Channel, Timer> sendTimers = new EnumMap<>(Channel.class);
+    private final Map<Channel, Timer> deliveryLatency = new EnumMap<>(Channel.class);
+
+    private TransactionTemplate transactionTemplate;
+    private ExecutorService workers;
+
+    private volatile boolean running;
+    private Thread dispatcherThread;
+
+    @PostConstruct
+    public void start() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        senders.forEach(sender -> sendersByChannel.put(sender.channel(), sender));
+        for (Channel channel : Channel.values()) {
+            if (!sendersByChannel.containsKey(channel)) {
+                logger.warn("No sender configured for {} notifications; they will stay queued", channel);
+            }
+        }
+
+        int poolSize = 0;
+        for (Channel channel : Channel.values()) {
+            int concurrency = Math.max(1, channel == Channel.EMAIL ? emailConcurrency : smsConcurrency);
+            poolSize += concurrency;
+            Semaphore permits = new Semaphore(concurrency);
+            permitsByChannel.put(channel, permits);
+
+            String tag = channel.name().toLowerCase(Locale.ROOT);
+            sendTimers.put(channel, Timer.builder("echo.notification.send")
+                    .tag("channel", tag)
+                    .publishPercentiles(0.5, 0.99)
+                    .register(meterRegistry));
+            deliveryLatency.put(channel, Timer.builder("echo.notification.delivery.latency")
+                    .tag("channel", tag)
+                    .publishPercentiles(0.5, 0.99)
+                    .register(meterRegistry));
+            Gauge.builder("echo.notification.in-flight", permits, p -> concurrency - p.availablePermits())
+                    .tag("channel", tag)
+                    .register(meterRegistry);
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(poolSize, runnable -> {
+            Thread thread = new Thread(runnable, "echo-notification-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        running = true;
+        dispatcherThread = new Thread(this::dispatchLoop, "echo-notification-dispatcher");
+        dispatcherThread.setDaemon(true);
+        dispatcherThread.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(dispatcherThread);
+        dispatcherThread.join(TimeUnit.SECONDS.toMillis(5));
+        workers.shutdown();
+        // Anything still in flight is re-claimed by another node once its lease runs out
+        workers.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Queue a notification in the caller's transaction; it is sent once that commits.
+     * expiresAt may be null.
+     */
+    @Transactional
+    public void enqueue(Channel channel, String recipient, String subject, String body, LocalDateTime expiresAt) {
+        LocalDateTime now = LocalDateTime.now();
+        outboxRepository.save(OutboxNotification.builder()
+                .channel(channel)
+                .status(Status.PENDING)
+                .recipient(recipient)
+                .subject(subject)
+                .body(body)
+                .attempts(0)
+                .nextAttemptAt(now)
+                .expiresAt(expiresAt)
+                .createdAt(now)
+                .build());
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                LockSupport.unpark(dispatcherThread);
+            }
+        });
+    }
+
+    /**
+     * Like {@link #enqueue}, but first gives up on anything still undelivered to the same recipient on
+     * this channel. For notifications that replace the previous one, such as a newly issued OTP.
+     */
+    @Transactional
+    public void enqueueReplacing(Channel channel, String recipient, String subject, String body, LocalDateTime expiresAt) {
+        outboxRepository.supersede(channel, recipient);
+        enqueue(channel, recipient, subject, body, expiresAt);
+    }
+
+    /**
+     * Delete sent and failed rows older than notification.retention-hours.
+     */
+    @Scheduled(fixedDelay = 3_600_000)
+    @Transactional
+    public void purgeFinished() {
+        int deleted = outboxRepository.deleteFinishedBefore(LocalDateTime.now().minusHours(retentionHours));
+        if (deleted > 0) {
+            logger.info("Purged {} delivered or failed notifications", deleted);
+        }
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    private void dispatchLoop() {
+        while (running) {
+            for (Channel channel : Channel.values()) {
+                try {
+                    dispatch(channel);
+                } catch (RuntimeException e) {
+                    logger.warn("Could not claim {} notifications: {}", channel, e.getMessage());
+                }
+            }
+            // Woken early by commits and by workers finishing (a full claim may have left more due)
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(pollIntervalMs));
+        }
+    }
+
+    // Only this thread acquires permits, so the free count read here cannot shrink before acquiring
+    private void dispatch(Channel channel) {
+        Semaphore permits = permitsByChannel.get(channel);
+        int free = permits.availablePermits();
+        NotificationSender sender = sendersByChannel.get(channel);
+        if (free == 0 || sender == null) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        List<OutboxNotification> claimed = transactionTemplate.execute(status ->
+                outboxRepository.claimDue(channel.name(), now, now.plusSeconds(leaseSeconds), free));
+        for (OutboxNotification notification : claimed) {
+            permits.acquireUninterruptibly();
+            workers.execute(() -> {
+                try {
+                    deliver(sender, notification);
+                } finally {
+                    permits.release();
+                    LockSupport.unpark(dispatcherThread);
+                }
+            });
+        }
+    }
+
+    private void deliver(NotificationSender sender, OutboxNotification notification) {
+        Channel channel = notification.getChannel();
+        LocalDateTime now = LocalDateTime.now();
+        if (notification.getExpiresAt() != null && now.isAfter(notification.getExpiresAt())) {
+            complete(notification, "expired", () ->
+                    outboxRepository.markFailed(notification.getId(), notification.getAttempts(), "Expired before delivery"));
+            return;
+        }
+
+        try {
+            sendTimers.get(channel).record(() ->
+                    sender.send(notification.getRecipient(), notification.getSubject(), notification.getBody()));
+        } catch (RuntimeException e) {
+            String error = truncate(e.getClass().getSimpleName() + ": " + e.getMessage());
+            if (notification.getAttempts() >= maxAttempts) {
+                logger.warn("Giving up on {} notification {} after {} attempts: {}",
+                        channel, notification.getId(), notification.getAttempts(), error);
+                complete(notification, "failed", () ->
+                        outboxRepository.markFailed(notification.getId(), notification.getAttempts(), error));
+            } else {
+                LocalDateTime retryAt = LocalDateTime.now().plus(backoff(notification.getAttempts()));
+                complete(notification, "retry", () ->
+                        outboxRepository.markRetry(notification.getId(), notification.getAttempts(), retryAt, error));
+            }
+            return;
+        }
+
+        LocalDateTime sentAt = LocalDateTime.now();
+        deliveryLatency.get(channel).record(Duration.between(notification.getCreatedAt(), sentAt));
+        complete(notification, "sent", () ->
+                outboxRepository.markSent(notification.getId(), notification.getAttempts(), sentAt));
+    }
+
+    private void complete(OutboxNotification notification, String result, IntSupplier update) {
+        meterRegistry.counter("echo.notification.deliveries",
+                "channel", notification.getChannel().name().toLowerCase(Locale.ROOT), "result", result).increment();
+        try {
+            Integer updated = transactionTemplate.execute(status -> update.getAsInt());
+            if (updated == null || updated == 0) {
+                logger.debug("Notification {} was re-claimed before its outcome was recorded", notification.getId());
+            }
+        } catch (RuntimeException e) {
+            // The lease runs out and the row is tried again
+            logger.warn("Could not record outcome of notification {}: {}", notification.getId(), e.getMessage());
+        }
+    }
+
+    // initial * 2^(attempt-1), capped, with +-20% jitter so failed bursts do not retry in lockstep
+    private Duration backoff(int attempt) {
+        long base = initialBackoffMs << Math.min(attempt - 1, 20);
+        long capped = Math.min(base, maxBackoffMs);
+        double jitter = 0.8 + ThreadLocalRandom.current().nextDouble() * 0.4;
+        return Duration.ofMillis((long) (capped * jitter));
+    }
+
+    private static String truncate(String error) {
+        return error.length() <= MAX_ERROR_LENGTH ? error : error.substring(0, MAX_ERROR_LENGTH);
+    }
+}
@@ -4,16 +4,23 @@ import com.theskysid.echobackend.auth.dto.OtpVerifyDTO;
 import com.theskysid.echobackend.auth.dto.GoogleAuthDTO;
 import com.theskysid.echobackend.auth.dto.request.OtpRequestDTO;
 import com.theskysid.echobackend.auth.otp.entity.OtpVerification.IdentifierType;
+import com.theskysid.echobackend.auth.ratelimit.RateLimitExceededException;
+import com.theskysid.echobackend.auth.ratelimit.RateLimiter;
+import com.theskysid.echobackend.auth.ratelimit.RateLimiter.Limit;
 import com.theskysid.echobackend.auth.service.AuthenticationService;
 import com.theskysid.echobackend.auth.service.EmailOtpService;
 import com.theskysid.echobackend.auth.service.OtpService;
 import com.theskysid.echobackend.auth.service.SmsOtpService;
+import com.theskysid.echobackend.auth.service.TokenEpochService;
+import com.theskysid.echobackend.auth.jwt.JwtService;
 import com.theskysid.echobackend.user.dto.ProfileUpdateDTO;
 import com.theskysid.echobackend.user.dto.UserDTO;
 import com.theskysid.echobackend.user.entity.AuthProvider;
 import com.theskysid.echobackend.user.entity.User;
 import com.theskysid.echobackend.user.repository.UserRepository;
+import com.theskysid.echobackend.user.service.UserIdentityCache;
 import com.theskysid.echobackend.auth.util.IdentifierNormalizer;
+import com.theskysid.echobackend.messaging.websocket.SessionContextRegistry;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdToken;
 import com.google.api.client.googleapis.auth.oauth2.GoogleIdTokenVerifier;
 import com.google.api.client.http.javanet.NetHttpTransport;
@@ -21,13 +28,17 @@ import com.google.api.client.json.gson.GsonFactory;
 import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Collections;
 import java.util.Map;
+import java.util.function.Consumer;
 
 @RestController
 @RequestMapping("/api/profile")
@@ -48,6 +59,24 @@ public class ProfileController {
     @Autowired
     private OtpService otpService;
 
+    @Autowired
+    private SessionContextRegistry sessionContextRegistry;
+
+    @Autowired
+    private UserIdentityCache userIdentityCache;
+
+    @Autowired
+    private TokenEpochService tokenEpochService;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
     @Value("${google.client-id}")
     private String googleClientId;
 
@@ -81,28 +110,36 @@ public class ProfileController {
         if (authentication == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Not authenticated"));
         }
-        User user = authenticationService.resolveAuthenticatedUser(authentication.getName());
-
-        if (request.getDisplayName() != null) {
-            user.setDisplayName(request.getDisplayName().trim());
-        }
-        if (request.getBio() != null) {
-            String bio = request.getBio().trim();
-            if (bio.length() > 200) bio = bio.substring(0, 200);
-            user.setBio(bio);
-        }
-        if (request.getUsername() != null && !request.getUsername().trim().isEmpty()) {
-            String newUsername = request.getUsername().trim();
-            if (!newUsername.equalsIgnoreCase(user.getUsername())) {
-                if (userRepository.findByUsernameIgnoreCase(newUsername).isPresent()) {
-                    return ResponseEntity.badRequest().body(Map.of("error", "Username already taken"));
+        String previousUsername = authentication.getName();
+        User saved;
+        try {
+            saved = updateUser(authentication, user -> {
+                if (request.getUsername() != null && !request.getUsername().trim().isEmpty()) {
+                    String newUsername = request.getUsername().trim();
+                    if (!newUsername.equalsIgnoreCase(user.getUsername())) {
+                        if (userRepository.findByUsernameIgnoreCase(newUsername).isPresent()) {
+                            throw new RuntimeException("Username already taken");
+                        }
+                        user.setUsername(newUsername);
+                    }
                 }
-                user.setUsername(newUsername);
-            }
+                if (request.getDisplayName() != null) {
+                    user.setDisplayName(request.getDisplayName().trim());
+                }
+                if (request.getBio() != null) {
+                    String bio = request.getBio().trim();
+                    if (bio.length() > 200) bio = bio.substring(0, 200);
+                    user.setBio(bio);
+                }
+            });
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
 
-        User saved = userRepository.save(user);
-        return ResponseEntity.ok(toDTO(saved));
+        sessionContextRegistry.invalidateUser(saved.getId());
+        // Tokens carry the username, so a rename revokes them and hands this client a new one
+        boolean renamed = !saved.getUsername().equalsIgnoreCase(previousUsername);
+        return renamed ? okWithFreshToken(saved) : ResponseEntity.ok(toDTO(saved));
     }
 
     /**
@@ -116,6 +153,7 @@ public class ProfileController {
         try {
             String normalizedEmail = IdentifierNormalizer.normalizeEmail(request.getEmail());
             User currentUser = authenticationService.resolveAuthenticatedUser(authentication.getName());
+            rateLimiter.acquire(Limit.OTP_USER, currentUser.getId().toString());
             userRepository.findByEmailIgnoreCase(normalizedEmail).ifPresent(existing -> {
                 if (!existing.getId().equals(currentUser.getId())) {
                     throw new RuntimeException("This email is already linked to another account");
@@ -123,6 +161,10 @@ public class ProfileController {
             });
             emailOtpService.sendOtp(normalizedEmail);
             return ResponseEntity.ok(Map.of("message", "OTP sent to " + normalizedEmail));
+        } catch (RateLimitExceededException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(Map.of("error", e.getMessage()));
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
@@ -139,17 +181,18 @@ public class ProfileController {
         try {
             String normalizedEmail = IdentifierNormalizer.normalizeEmail(request.getEmail());
             otpService.verifyOtp(normalizedEmail, IdentifierType.EMAIL, request.getOtp());
-            User user = authenticationService.resolveAuthenticatedUser(authentication.getName());
 
-            userRepository.findByEmailIgnoreCase(normalizedEmail).ifPresent(existing -> {
-                if (!existing.getId().equals(user.getId())) {
-                    existing.setEmail(null);
-                    userRepository.save(existing);
-                }
+            User saved = updateUser(authentication, user -> {
+                userRepository.findByEmailIgnoreCase(normalizedEmail).ifPresent(existing -> {
+                    if (!existing.getId().equals(user.getId())) {
+                        existing.setEmail(null);
+                        userRepository.save(existing);
+                        userIdentityCache.invalidate(existing.getId());
+                        tokenEpochService.revokeAll(existing.getId());
+                    }
+                });
+                user.setEmail(normalizedEmail);
             });
-
-            user.setEmail(normalizedEmail);
-            User saved = userRepository.save(user);
             return ResponseEntity.ok(toDTO(saved));
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
@@ -167,6 +210,7 @@ public class ProfileController {
         try {
             String normalizedPhone = IdentifierNormalizer.normalizePhone(request.getPhone());
             User currentUser = authenticationService.resolveAuthenticatedUser(authentication.getName());
+            rateLimiter.acquire(Limit.OTP_USER, currentUser.getId().toString());
             authenticationService.findByIdentifier(normalizedPhone, IdentifierType.PHONE).ifPresent(existing -> {
                 if (!existing.getId().equals(currentUser.getId())) {
                     throw new RuntimeException("This phone is already linked to another account");
@@ -174,6 +218,10 @@ public class ProfileController {
             });
             smsOtpService.sendOtp(normalizedPhone);
             return ResponseEntity.ok(Map.of("message", "OTP sent to " + normalizedPhone));
+        } catch (RateLimitExceededException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(Map.of("error", e.getMessage()));
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
@@ -190,17 +238,18 @@ public class ProfileController {
         try {
             String normalizedPhone = IdentifierNormalizer.normalizePhone(request.getPhone());
             otpService.verifyOtp(normalizedPhone, IdentifierType.PHONE, request.getOtp());
-            User user = authenticationService.resolveAuthenticatedUser(authentication.getName());
 
-            authenticationService.findByIdentifier(normalizedPhone, IdentifierType.PHONE).ifPresent(existing -> {
-                if (!existing.getId().equals(user.getId())) {
-                    existing.setPhone(null);
-                    userRepository.save(existing);
-                }
+            User saved = updateUser(authentication, user -> {
+                authenticationService.findByIdentifier(normalizedPhone, IdentifierType.PHONE).ifPresent(existing -> {
+                    if (!existing.getId().equals(user.getId())) {
+                        existing.setPhone(null);
+                        userRepository.save(existing);
+                        userIdentityCache.invalidate(existing.getId());
+                        tokenEpochService.revokeAll(existing.getId());
+                    }
+                });
+                user.setPhone(normalizedPhone);
             });
-
-            user.setPhone(normalizedPhone);
-            User saved = userRepository.save(user);
             return ResponseEntity.ok(toDTO(saved));
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
@@ -222,17 +271,16 @@ public class ProfileController {
             }
 
             String googleId = idToken.getPayload().getSubject();
-            User user = authenticationService.resolveAuthenticatedUser(authentication.getName());
 
-            // Check if this Google ID is already used by another user
-            userRepository.findByGoogleId(googleId).ifPresent(existing -> {
-                if (!existing.getId().equals(user.getId())) {
-                    throw new RuntimeException("This Google account is already linked to another user");
-                }
+            User saved = updateUser(authentication, user -> {
+                // Check if this Google ID is already used by another user
+                userRepository.findByGoogleId(googleId).ifPresent(existing -> {
+                    if (!existing.getId().equals(user.getId())) {
+                        throw new RuntimeException("This Google account is already linked to another user");
+                    }
+                });
+                user.setGoogleId(googleId);
             });
-
-            user.setGoogleId(googleId);
-            User saved = userRepository.save(user);
             return ResponseEntity.ok(toDTO(saved));
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
@@ -249,14 +297,18 @@ public class ProfileController {
         if (authentication == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Not authenticated"));
         }
-        User user = authenticationService.resolveAuthenticatedUser(authentication.getName());
-
-        if (!hasAlternativeAuth(user, "email")) {
-            return ResponseEntity.badRequest().body(Map.of("error", "Cannot unlink your only login method"));
+        User saved;
+        try {
+            saved = updateUser(authentication, user -> {
+                if (!hasAlternativeAuth(user, "email")) {
+                    throw new RuntimeException("Cannot unlink your only login method");
+                }
+                user.setEmail(null);
+            });
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
-        user.setEmail(null);
-        User saved = userRepository.save(user);
-        return ResponseEntity.ok(toDTO(saved));
+        return okWithFreshToken(saved);
     }
 
     /**
@@ -267,14 +319,18 @@ public class ProfileController {
         if (authentication == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Not authenticated"));
         }
-        User user = authenticationService.resolveAuthenticatedUser(authentication.getName());
-
-        if (!hasAlternativeAuth(user, "phone")) {
-            return ResponseEntity.badRequest().body(Map.of("error", "Cannot unlink your only login method"));
+        User saved;
+        try {
+            saved = updateUser(authentication, user -> {
+                if (!hasAlternativeAuth(user, "phone")) {
+                    throw new RuntimeException("Cannot unlink your only login method");
+                }
+                user.setPhone(null);
+            });
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
-        user.setPhone(null);
-        User saved = userRepository.save(user);
-        return ResponseEntity.ok(toDTO(saved));
+        return okWithFreshToken(saved);
     }
 
     /**
@@ -285,18 +341,49 @@ public class ProfileController {
         if (authentication == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Not authenticated"));
         }
-        User user = authenticationService.resolveAuthenticatedUser(authentication.getName());
-
-        if (!hasAlternativeAuth(user, "google")) {
-            return ResponseEntity.badRequest().body(Map.of("error", "Cannot unlink your only login method"));
+        User saved;
+        try {
+            saved = updateUser(authentication, user -> {
+                if (!hasAlternativeAuth(user, "google")) {
+                    throw new RuntimeException("Cannot unlink your only login method");
+                }
+                user.setGoogleId(null);
+            });
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
-        user.setGoogleId(null);
-        User saved = userRepository.save(user);
-        return ResponseEntity.ok(toDTO(saved));
+        return okWithFreshToken(saved);
     }
 
     // ── Helpers ─────────────────────────────────────────────────
 
+    /**
+     * Apply a change to the caller's row, read fresh and locked for the duration (the cached copy
+     * may be stale), then save it. A RuntimeException from the change rolls everything back.
+     */
+    private User updateUser(Authentication authentication, Consumer<User> change) {
+        return new TransactionTemplate(transactionManager).execute(status -> {
+            User user = authenticationService.lockAuthenticatedUser(authentication.getName());
+            change.accept(user);
+            User saved = userRepository.save(user);
+            userIdentityCache.invalidate(saved.getId());
+            return saved;
+        });
+    }
+
+    /**
+     * Revoke the user's existing tokens and return the profile with a new token (cookie and body).
+     */
+    private ResponseEntity<?> okWithFreshToken(User user) {
+        tokenEpochService.revokeAll(user.getId());
+        String token = jwtService.generateToken(user);
+        UserDTO dto = toDTO(user);
+        dto.setToken(token);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.SET_COOKIE, authenticationService.jwtCookie(token).toString())
+                .body(dto);
+    }
+
     /**
      * Check if the user has at least one other auth method besides the one being removed.
      */
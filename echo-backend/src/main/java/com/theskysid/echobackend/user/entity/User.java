@@ -2,6 +2,7 @@ package com.theskysid.echobackend.user.entity;
 
 import java.time.LocalDateTime;
 
+import com.theskysid.echobackend.auth.util.IdentifierNormalizer;
 import jakarta.persistence.*;
 import lombok.*;
 
@@ -10,7 +11,9 @@ import lombok.*;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-@Table(name = "users")
+@Table(name = "users", indexes = {
+        @Index(name = "idx_users_phone_digits", columnList = "phone_digits")
+})
 public class User {
 
     @Id
@@ -29,6 +32,10 @@ public class User {
     @Column(unique = true)
     private String phone;
 
+    // Digits of phone, kept in sync on every save so lookups ignore "+" and formatting
+    @Column(name = "phone_digits")
+    private String phoneDigits;
+
     @Column(name = "google_id", unique = true)
     private String googleId;
 
@@ -48,5 +55,11 @@ public class User {
     @PrePersist
     protected void onCreate() {
         this.registeredAt = LocalDateTime.now();
+        syncPhoneDigits();
+    }
+
+    @PreUpdate
+    protected void syncPhoneDigits() {
+        this.phoneDigits = IdentifierNormalizer.phoneDigits(phone);
     }
 }
\ No newline at end of file
@@ -1,7 +1,10 @@
 package com.theskysid.echobackend.user.repository;
 
 import com.theskysid.echobackend.user.entity.User;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
@@ -17,9 +20,78 @@ public interface UserRepository extends JpaRepository<User, Long> {
     Optional<User> findByPhone(String phone);
     Optional<User> findByGoogleId(String googleId);
 
-    @Query("SELECT u FROM User u WHERE u.phone IS NOT NULL AND regexp_replace(u.phone, '[^0-9]', '', 'g') = :digits")
-    Optional<User> findByPhoneDigits(@Param("digits") String digits);
+    /**
+     * The row for a read-modify-write, locked until the transaction ends.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT u FROM User u WHERE u.id = :id")
+    Optional<User> findByIdForUpdate(@Param("id") Long id);
 
-    @Query("SELECT u FROM User u WHERE LOWER(u.username) LIKE LOWER(CONCAT('%', :query, '%'))")
-    List<User> searchByUsername(@Param("query") String query);
+    /**
+     * The account whose phone has these digits, with or without "+". Should two rows share the digits,
+     * the one stored exactly as :phone wins, then the oldest.
+     */
+    @Query(value = "SELECT * FROM users u WHERE u.phone_digits = :digits " +
+            "ORDER BY CASE WHEN u.phone = :phone THEN 0 ELSE 1 END, u.id LIMIT 1", nativeQuery = true)
+    Optional<User> findByPhoneDigits(@Param("digits") String digits, @Param("phone") String phone);
+
+    /**
+     * Resolve a username, email or phone in one indexed query: lower-cased username, lower-cased email
+     * and phone digits. Pass "" for a form that does not apply; it matches nothing.
+     * A username match wins over an email match, which wins over a phone match.
+     */
+    @Query(value = "SELECT * FROM users u WHERE LOWER(u.username) COLLATE \"C\" = :username " +
+            "OR LOWER(u.email) = :email OR u.phone_digits = :digits " +
+            "ORDER BY CASE WHEN LOWER(u.username) COLLATE \"C\" = :username THEN 0 " +
+            "              WHEN LOWER(u.email) = :email THEN 1 ELSE 2 END, u.id LIMIT 1", nativeQuery = true)
+    Optional<User> findByAnyIdentifier(@Param("username") String username, @Param("email") String email,
+                                       @Param("digits") String digits);
+
+    /**
+     * Fill phone_digits for rows saved before the column existed.
+     */
+    @Modifying
+    @Query(value = "UPDATE users SET phone_digits = NULLIF(regexp_replace(phone, '[^0-9]', '', 'g'), '') " +
+            "WHERE phone IS NOT NULL AND phone_digits IS NULL", nativeQuery = true)
+    int backfillPhoneDigits();
+
+    // Username search tiers, see UserSearchService. Patterns arrive lower-cased with LIKE wildcards escaped.
+
+    @Query(value = "SELECT * FROM users u WHERE LOWER(u.username) COLLATE \"C\" = :term " +
+            "AND u.id <> :excludeId AND u.id > :afterId ORDER BY u.id LIMIT :limit", nativeQuery = true)
+    List<User> searchExact(@Param("term") String term, @Param("excludeId") Long excludeId,
+                           @Param("afterId") long afterId, @Param("limit") int limit);
+
+    @Query(value = "SELECT * FROM users u WHERE LOWER(u.username) COLLATE \"C\" LIKE :prefix " +
+            "AND LOWER(u.username) COLLATE \"C\" <> :term AND u.id <> :excludeId " +
+            "AND (LOWER(u.username) COLLATE \"C\", u.id) > (CAST(:afterName AS text) COLLATE \"C\", :afterId) " +
+            "ORDER BY LOWER(u.username) COLLATE \"C\", u.id LIMIT :limit", nativeQuery = true)
+    List<User> searchPrefix(@Param("term") String term, @Param("prefix") String prefix,
+                            @Param("excludeId") Long excludeId, @Param("afterName") String afterName,
+                            @Param("afterId") long afterId, @Param("limit") int limit);
+
+    @Query(value = "SELECT * FROM users u WHERE LOWER(u.username) LIKE :contains " +
+            "AND LOWER(u.username) COLLATE \"C\" NOT LIKE :prefix AND u.id <> :excludeId " +
+            "AND (LOWER(u.username) COLLATE \"C\", u.id) > (CAST(:afterName AS text) COLLATE \"C\", :afterId) " +
+            "ORDER BY LOWER(u.username) COLLATE \"C\", u.id LIMIT :limit", nativeQuery = true)
+    List<User> searchSubstring(@Param("contains") String contains, @Param("prefix") String prefix,
+                               @Param("excludeId") Long excludeId, @Param("afterName") String afterName,
+                               @Param("afterId") long afterId, @Param("limit") int limit);
+
+    /**
+     * Substring tier with pg_trgm: the first :candidates matches by name and id are taken from the
+     * trigram index (a bounded top-N sort, so every page ranks the same candidates), then ranked by
+     * similarity to :term, name and id. afterId 0 starts from the top.
+     */
+    @Query(value = "SELECT u.* FROM (SELECT * FROM users c WHERE LOWER(c.username) LIKE :contains " +
+            "AND LOWER(c.username) COLLATE \"C\" NOT LIKE :prefix AND c.id <> :excludeId " +
+            "ORDER BY LOWER(c.username) COLLATE \"C\", c.id LIMIT :candidates) u " +
+            "WHERE :afterId = 0 OR (1 - similarity(LOWER(u.username), :term), LOWER(u.username) COLLATE \"C\", u.id) " +
+            "> (1 - similarity(CAST(:afterName AS text), :term), CAST(:afterName AS text) COLLATE \"C\", :afterId) " +
+            "ORDER BY 1 - similarity(LOWER(u.username), :term), LOWER(u.username) COLLATE \"C\", u.id LIMIT :limit",
+            nativeQuery = true)
+    List<User> searchSimilar(@Param("term") String term, @Param("contains") String contains,
+                             @Param("prefix") String prefix, @Param("excludeId") Long excludeId,
+                             @Param("candidates") int candidates, @Param("afterName") String afterName,
+                             @Param("afterId") long afterId, @Param("limit") int limit);
 }
\ No newline at end of file
@@ -1,7 +1,6 @@
 package com.theskysid.echobackend.user.service;
 
 import com.theskysid.echobackend.user.entity.User;
-import com.theskysid.echobackend.user.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -14,12 +13,12 @@ import java.util.Collections;
 public class CustomUserDetails implements UserDetailsService {
 
     @Autowired
-    private UserRepository userRepository;
+    private UserIdentityCache userIdentityCache;
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
 
-        User user = userRepository.findByUsernameIgnoreCase(username)
+        User user = userIdentityCache.findByUsername(username)
                 .orElseThrow(() -> new UsernameNotFoundException("Username not found"));
 
         return org.springframework.security.core.userdetails.User.builder()
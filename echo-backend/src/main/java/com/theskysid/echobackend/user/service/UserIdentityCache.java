@@ -0,0 +1,246 @@
+package com.theskysid.echobackend.user.service;
+
+import com.theskysid.echobackend.messaging.relay.CacheInvalidation;
+import com.theskysid.echobackend.user.entity.User;
+import com.theskysid.echobackend.user.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Read-through cache of users by id and by lower-cased username, for the lookups made on every
+ * request and WebSocket frame (JWT filter, resolveAuthenticatedUser, userExists, UserDetailsService).
+ * <ul>
+ *     <li>Entries live for user.cache.ttl-seconds; past user.cache.max-size the oldest are evicted.</li>
+ *     <li>Every caller gets its own detached copy, so mutating the result never leaks into the cache.</li>
+ *     <li>{@link #invalidate(Long)} must be called after any change to a user row. It runs immediately
+ *     and again after commit; a load that overlaps an invalidation is not cached.</li>
+ *     <li>After commit the invalidation is also published as a {@link CacheInvalidation}, so the broker
+ *     relay drops the entry on the other nodes too. The TTL bounds staleness if that notice is lost.</li>
+ *     <li>Copies are for reading. Code that changes a user loads the row itself
+ *     (see AuthenticationService.lockAuthenticatedUser).</li>
+ *     <li>A username mapping is only trusted if the entry it points to still has that username,
+ *     so a rename cannot resolve the old name to the renamed user.</li>
+ *     <li>Unknown usernames are not cached.</li>
+ * </ul>
+ */
+@Component
+public class UserIdentityCache {
+
+    private static final String CACHE_NAME = "user";
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Value("${user.cache.max-size:10000}")
+    private int maxSize;
+
+    @Value("${user.cache.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    private final Map<Long, CachedUser> usersById = new ConcurrentHashMap<>();
+    private final Map<String, Long> userIdsByUsername = new ConcurrentHashMap<>();
+
+    // Bumped by every invalidation; a load only installs if none started while it ran
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private Counter hits;
+    private Counter misses;
+
+    @PostConstruct
+    public void init() {
+        hits = meterRegistry.counter("echo.user.cache.lookups", "result", "hit");
+        misses = meterRegistry.counter("echo.user.cache.lookups", "result", "miss");
+        meterRegistry.gauge("echo.user.cache.size", usersById, Map::size);
+        meterRegistry.gauge("echo.user.cache.hit.ratio", this, cache -> {
+            double total = cache.hits.count() + cache.misses.count();
+            return total == 0 ? 0 : cache.hits.count() / total;
+        });
+    }
+
+    public Optional<User> findById(Long userId) {
+        if (userId == null) {
+            return Optional.empty();
+        }
+        CachedUser cached = usersById.get(userId);
+        if (cached != null && !cached.isExpired(ttlMillis())) {
+            hits.increment();
+            return Optional.of(copyOf(cached.user));
+        }
+        misses.increment();
+        return load(() -> userRepository.findById(userId));
+    }
+
+    public Optional<User> findByUsername(String username) {
+        if (username == null) {
+            return Optional.empty();
+        }
+        String key = username.toLowerCase(Locale.ROOT);
+        Long userId = userIdsByUsername.get(key);
+        if (userId != null) {
+            CachedUser cached = usersById.get(userId);
+            if (cached != null && !cached.isExpired(ttlMillis()) && key.equals(cached.usernameKey)) {
+                hits.increment();
+                return Optional.of(copyOf(cached.user));
+            }
+            userIdsByUsername.remove(key, userId);
+        }
+        misses.increment();
+        return load(() -> userRepository.findByUsernameIgnoreCase(username));
+    }
+
+    /**
+     * Forget a user after their row changed (profile, identifiers, password). Safe to call inside a
+     * transaction: it runs now and again after commit.
+     */
+    public void invalidate(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        evict(userId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(userId);
+                    eventPublisher.publishEvent(CacheInvalidation.local(CACHE_NAME, userId));
+                }
+            });
+        } else {
+            eventPublisher.publishEvent(CacheInvalidation.local(CACHE_NAME, userId));
+        }
+    }
+
+    /**
+     * A user row changed on another node.
+     */
+    @EventListener
+    public void onCacheInvalidation(CacheInvalidation invalidation) {
+        if (invalidation.remote() && CACHE_NAME.equals(invalidation.cache())) {
+            evict(invalidation.id());
+        }
+    }
+
+    /**
+     * Drop expired entries and username mappings that no longer point at a cached user.
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void evictExpired() {
+        long ttl = ttlMillis();
+        usersById.values().removeIf(cached -> cached.isExpired(ttl));
+        userIdsByUsername.entrySet().removeIf(entry -> !usersById.containsKey(entry.getValue()));
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    private void evict(Long userId) {
+        generation.incrementAndGet();
+        CachedUser removed = usersById.remove(userId);
+        if (removed != null) {
+            userIdsByUsername.remove(removed.usernameKey, userId);
+        }
+    }
+
+    private Optional<User> load(Supplier<Optional<User>> query) {
+        long startGeneration = generation.get();
+        Optional<User> loaded = query.get();
+        loaded.ifPresent(user -> {
+            CachedUser cached = new CachedUser(copyOf(user));
+            // compute holds the key's lock, so an invalidation either removes this entry or has already bumped the generation
+            CachedUser installed = usersById.compute(user.getId(), (ignored, existing) ->
+                    generation.get() == startGeneration ? cached : existing);
+            if (installed == cached) {
+                userIdsByUsername.put(cached.usernameKey, user.getId());
+                if (usersById.size() > maxSize) {
+                    evictOldest();
+                }
+            }
+        });
+        return loaded;
+    }
+
+    // Trim to 90% of the bound so overflow sweeps stay rare
+    private void evictOldest() {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int excess = usersById.size() - maxSize * 9 / 10;
+            if (excess <= 0) {
+                return;
+            }
+            usersById.entrySet().stream()
+                    .sorted(Comparator.comparingLong(entry -> entry.getValue().loadedAtMillis))
+                    .limit(excess)
+                    .toList()
+                    .forEach(entry -> {
+                        usersById.remove(entry.getKey(), entry.getValue());
+                        userIdsByUsername.remove(entry.getValue().usernameKey, entry.getKey());
+                    });
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private long ttlMillis() {
+        return ttlSeconds * 1000;
+    }
+
+    // Must copy every column: callers may save the copy back, and a missing field would be nulled out
+    private static User copyOf(User user) {
+        return User.builder()
+                .id(user.getId())
+                .username(user.getUsername())
+                .password(user.getPassword())
+                .email(user.getEmail())
+                .phone(user.getPhone())
+                .phoneDigits(user.getPhoneDigits())
+                .googleId(user.getGoogleId())
+                .displayName(user.getDisplayName())
+                .bio(user.getBio())
+                .authProvider(user.getAuthProvider())
+                .registeredAt(user.getRegisteredAt())
+                .build();
+    }
+
+    private static final class CachedUser {
+
+        private final User user;
+        private final String usernameKey;
+        private final long loadedAtMillis;
+
+        private CachedUser(User user) {
+            this.user = user;
+            this.usernameKey = user.getUsername().toLowerCase(Locale.ROOT);
+            this.loadedAtMillis = System.currentTimeMillis();
+        }
+
+        private boolean isExpired(long ttlMillis) {
+            return System.currentTimeMillis() - loadedAtMillis > ttlMillis;
+        }
+    }
+}
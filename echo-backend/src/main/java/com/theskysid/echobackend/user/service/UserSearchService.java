@@ -0,0 +1,189 @@
+package com.theskysid.echobackend.user.service;
+
+import com.theskysid.echobackend.user.entity.User;
+import com.theskysid.echobackend.user.repository.UserRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManagerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Username search for the find-friends modal, served from indexes (PostgreSQL).
+ * <p>
+ * Results are ranked in tiers: exact match, then prefix matches, then other substring matches;
+ * within a tier by lower-cased username, then id. Each tier is a keyset query with its own LIMIT:
+ * <ul>
+ *     <li>exact: equality on the lower(username) index;</li>
+ *     <li>prefix: range scan of a C-collated btree on lower(username), which also provides the order;</li>
+ *     <li>substring: pg_trgm GIN index on lower(username). The first user.search.substring-candidates
+ *     matches by name are kept (a bounded top-N sort, the same set on every page) and those are ranked
+ *     by trigram similarity instead, so a common fragment never fully sorts every match. Trigrams need
+ *     at least three characters, so two-character queries only search prefixes.</li>
+ * </ul>
+ * The indexes are built on startup if missing, with CREATE INDEX CONCURRENTLY so a large users
+ * table stays writable, along with idx_users_email_lower for {@link UserRepository#findByAnyIdentifier}.
+ */
+@Service
+public class UserSearchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserSearchService.class);
+
+    public static final int MIN_QUERY_LENGTH = 2;
+    private static final int MIN_SUBSTRING_LENGTH = 3;
+
+    private static final int TIER_EXACT = 0;
+    private static final int TIER_PREFIX = 1;
+    private static final int TIER_SUBSTRING = 2;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Not used directly: makes sure Hibernate's schema update has created the table first
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Value("${user.search.substring-candidates:1000}")
+    private int substringCandidates;
+
+    // Without pg_trgm there is no similarity(); the substring tier falls back to name order
+    private volatile boolean trigrams;
+
+    /**
+     * One page of results, and the cursor for the next page (null on the last page).
+     */
+    public record SearchPage(List<User> users, String nextCursor) {
+    }
+
+    /**
+     * Position after the last returned result: its tier, lower-cased username and id.
+     */
+    public record SearchCursor(int tier, String username, long id) {
+
+        public String encode() {
+            String raw = tier + ":" + id + ":" + username;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        public static SearchCursor decode(String token) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+                String[] parts = raw.split(":", 3);
+                return new SearchCursor(Integer.parseInt(parts[0]), parts[2], Long.parseLong(parts[1]));
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                throw new RuntimeException("Invalid cursor");
+            }
+        }
+    }
+
+    @PostConstruct
+    public void ensureIndexes() {
+        if (!isPostgres()) {
+            return;
+        }
+        createIndexConcurrently("idx_users_username_lower", "users (LOWER(username) COLLATE \"C\")");
+        createIndexConcurrently("idx_users_email_lower", "users (LOWER(email))");
+        trigrams = execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+        if (trigrams) {
+            createIndexConcurrently("idx_users_username_trgm", "users USING gin (LOWER(username) gin_trgm_ops)");
+        } else {
+            logger.warn("pg_trgm unavailable; substring username search will scan the users table");
+        }
+    }
+
+    /**
+     * Ranked username search excluding the current user. Pass the previous page's nextCursor to continue.
+     */
+    @Transactional(readOnly = true)
+    public SearchPage search(User currentUser, String query, String cursorToken, int limit) {
+        String term = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+        if (term.length() < MIN_QUERY_LENGTH) {
+            throw new RuntimeException("Search query must be at least " + MIN_QUERY_LENGTH + " characters");
+        }
+        SearchCursor cursor = cursorToken == null || cursorToken.isBlank() ? null : SearchCursor.decode(cursorToken);
+        String escaped = escapeLike(term);
+        int lastTier = term.length() >= MIN_SUBSTRING_LENGTH ? TIER_SUBSTRING : TIER_PREFIX;
+
+        List<User> results = new ArrayList<>(limit + 1);
+        List<Integer> tiers = new ArrayList<>(limit + 1);
+        for (int tier = cursor == null ? TIER_EXACT : cursor.tier(); tier <= lastTier && results.size() <= limit; tier++) {
+            boolean resume = cursor != null && tier == cursor.tier();
+            String afterName = resume ? cursor.username() : "";
+            long afterId = resume ? cursor.id() : 0;
+            int remaining = limit + 1 - results.size();
+
+            List<User> page = switch (tier) {
+                case TIER_EXACT -> userRepository.searchExact(term, currentUser.getId(), afterId, remaining);
+                case TIER_PREFIX -> userRepository.searchPrefix(term, escaped + "%", currentUser.getId(),
+                        afterName, afterId, remaining);
+                default -> trigrams
+                        ? userRepository.searchSimilar(term, "%" + escaped + "%", escaped + "%", currentUser.getId(),
+                                substringCandidates, afterName, afterId, remaining)
+                        : userRepository.searchSubstring("%" + escaped + "%", escaped + "%", currentUser.getId(),
+                                afterName, afterId, remaining);
+            };
+            for (User user : page) {
+                results.add(user);
+                tiers.add(tier);
+            }
+        }
+
+        if (results.size() <= limit) {
+            return new SearchPage(results, null);
+        }
+        User last = results.get(limit - 1);
+        SearchCursor next = new SearchCursor(tiers.get(limit - 1), last.getUsername().toLowerCase(Locale.ROOT), last.getId());
+        return new SearchPage(new ArrayList<>(results.subList(0, limit)), next.encode());
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    private static String escapeLike(String term) {
+        return term.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    // Runs on an autocommit connection: CONCURRENTLY cannot run inside a transaction. A build that
+    // failed part way leaves an INVALID index that IF NOT EXISTS would keep, so that is dropped first.
+    private void createIndexConcurrently(String name, String definition) {
+        Boolean valid = jdbcTemplate.query("SELECT i.indisvalid FROM pg_index i JOIN pg_class c ON c.oid = i.indexrelid " +
+                        "WHERE c.relname = ? AND pg_catalog.pg_table_is_visible(c.oid)",
+                rs -> rs.next() ? rs.getBoolean(1) : null, name);
+        if (Boolean.TRUE.equals(valid)) {
+            return;
+        }
+        if (valid != null) {
+            execute("DROP INDEX CONCURRENTLY IF EXISTS " + name);
+        }
+        execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS " + name + " ON " + definition);
+    }
+
+    private boolean execute(String sql) {
+        try {
+            jdbcTemplate.execute(sql);
+            return true;
+        } catch (RuntimeException e) {
+            logger.warn("Could not run '{}': {}", sql, e.getMessage());
+            return false;
+        }
+    }
+
+    private boolean isPostgres() {
+        String product = jdbcTemplate.execute((ConnectionCallback<String>) connection ->
+                connection.getMetaData().getDatabaseProductName());
+        return product != null && product.toLowerCase().contains("postgresql");
+    }
+}
@@ -1,7 +1,6 @@
 package com.theskysid.echobackend.user.service;
 
 import com.theskysid.echobackend.auth.service.OnlineUserService;
-import com.theskysid.echobackend.user.repository.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -9,13 +8,13 @@ import org.springframework.stereotype.Service;
 public class UserService {
 
     @Autowired
-    private UserRepository userRepository;
+    private UserIdentityCache userIdentityCache;
 
     @Autowired
     private OnlineUserService onlineUserService;
 
     public boolean userExists(String username) {
-        return userRepository.findByUsernameIgnoreCase(username).isPresent();
+        return userIdentityCache.findByUsername(username).isPresent();
     }
 
     public boolean isUserOnline(String username) {
@@ -0,0 +1,114 @@
+package com.theskysid.echobackend.auth.jwt;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache hits in {@link JwtService#verify} from eight threads at once (every request and WebSocket
+ * handshake goes through it), against the synchronized access-ordered LinkedHashMap it used to keep:
+ * <ul>
+ *     <li>synchronizedLru: digest, then get under the map's single monitor (which also relinks the entry)</li>
+ *     <li>concurrent: JwtService as it is, digest then a lock-free ConcurrentHashMap get</li>
+ * </ul>
+ * Run with:
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main JwtServiceBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class JwtServiceBenchmark {
+
+    private static final String SECRET = "benchmark-secret-benchmark-secret-benchmark-secret";
+    private static final int TOKENS = 1_000;
+
+    @Param({"synchronizedLru", "concurrent"})
+    public String cache;
+
+    private JwtService jwtService;
+    private Map<String, JwtService.VerifiedToken> synchronizedLru;
+    private String[] tokens;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+    }
+
+    @Setup
+    public void setUp() {
+        jwtService = new JwtService();
+        ReflectionTestUtils.setField(jwtService, "secretKey", SECRET);
+        ReflectionTestUtils.setField(jwtService, "cacheMaxSize", 10_000);
+        jwtService.init();
+
+        synchronizedLru = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, JwtService.VerifiedToken> eldest) {
+                return size() > 10_000;
+            }
+        });
+
+        SecretKey key = Keys.hmacShaKeyFor(SECRET.getBytes());
+        Date expiration = new Date(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+        tokens = new String[TOKENS];
+        for (int i = 0; i < TOKENS; i++) {
+            String username = "user" + i;
+            tokens[i] = Jwts.builder().claims(Map.of("userId", String.valueOf(i), "epoch", 0))
+                    .subject(username).expiration(expiration).signWith(key).compact();
+            jwtService.verify(tokens[i]);
+            synchronizedLru.put(digest(tokens[i]), new JwtService.VerifiedToken(
+                    (long) i, username, 0, expiration.toInstant()));
+        }
+    }
+
+    @Benchmark
+    public Optional<JwtService.VerifiedToken> verifyCached(Cursor cursor) {
+        String token = tokens[cursor.next++ % TOKENS];
+        if ("concurrent".equals(cache)) {
+            return jwtService.verify(token);
+        }
+        JwtService.VerifiedToken cached = synchronizedLru.get(digest(token));
+        return cached != null && !cached.isExpired(Instant.now()) ? Optional.of(cached) : Optional.empty();
+    }
+
+    // Same digest as JwtService, so both sides pay for it
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.theskysid.echobackend.auth.password;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A login burst under contention: 32 threads hash passwords (request threads during a credential-stuffing
+ * wave) while 4 threads do light per-request work (a SHA-256, standing in for JWT checks and
+ * message handling).
+ * <ul>
+ *     <li>direct: BCrypt on the calling threads, as before BoundedPasswordEncoder</li>
+ *     <li>bounded: BoundedPasswordEncoder with one thread per CPU and a queue of 64</li>
+ * </ul>
+ * Compare hash throughput, how many hashes were shed (rejected, answered 503) and, above all,
+ * the throughput of the light work, which the pool should leave CPU for.
+ * Run with:
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main BoundedPasswordEncoderBenchmark"
+ * </pre>
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BoundedPasswordEncoderBenchmark {
+
+    @Param({"direct", "bounded"})
+    public String encoder;
+
+    @Param({"10"})
+    public int strength;
+
+    private PasswordEncoder passwordEncoder;
+    private String hash;
+    private final byte[] payload = "{\"type\":\"CHAT\",\"content\":\"hello\"}".getBytes(StandardCharsets.UTF_8);
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Shed {
+        public long rejected;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rejected = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(strength);
+        hash = bcrypt.encode("correct horse battery staple");
+        passwordEncoder = "bounded".equals(encoder)
+                ? new BoundedPasswordEncoder(bcrypt, 0, 64, new SimpleMeterRegistry())
+                : bcrypt;
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (passwordEncoder instanceof BoundedPasswordEncoder bounded) {
+            bounded.shutdown();
+        }
+    }
+
+    @Benchmark
+    @Group("login")
+    @GroupThreads(32)
+    public boolean hash(Shed shed) {
+        try {
+            return passwordEncoder.matches("correct horse battery staple", hash);
+        } catch (PasswordHashingRejectedException e) {
+            shed.rejected++;
+            return false;
+        }
+    }
+
+    @Benchmark
+    @Group("login")
+    @GroupThreads(4)
+    public byte[] otherRequests() throws Exception {
+        return MessageDigest.getInstance("SHA-256").digest(payload);
+    }
+}
@@ -0,0 +1,128 @@
+package com.theskysid.echobackend.auth.ratelimit;
+
+import com.theskysid.echobackend.auth.ratelimit.RateLimiter.Limit;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * GCRA buckets on a hand-driven clock. AUTH_IP is set to 3 requests per 60 seconds, so a token is
+ * worth 20 seconds and a full bucket is 40 seconds of slack.
+ */
+class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private long now = 1_000 * SECOND;
+    private RateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        rateLimiter = new RateLimiter();
+        ReflectionTestUtils.setField(rateLimiter, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(rateLimiter, "nanoClock", (LongSupplier) () -> now);
+        ReflectionTestUtils.setField(rateLimiter, "maxKeys", 4);
+        ReflectionTestUtils.setField(rateLimiter, "authIpCapacity", 3);
+        ReflectionTestUtils.setField(rateLimiter, "authIpPeriodSeconds", 60L);
+        rateLimiter.init();
+    }
+
+    @Test
+    void allowsAFullBurstThenRejectsWithTheTimeToTheNextToken() {
+        for (int i = 0; i < 3; i++) {
+            assertDoesNotThrow(() -> rateLimiter.acquire(Limit.AUTH_IP, "10.0.0.1"));
+        }
+
+        assertEquals(20, rejectedRetryAfter("10.0.0.1"));
+        assertEquals(1.0, meterRegistry.get("echo.rate-limit.rejected").tag("limit", "auth_ip").counter().count());
+    }
+
+    @Test
+    void retryAfterRoundsUpToWholeSeconds() {
+        exhaust("10.0.0.1");
+
+        now += 15 * SECOND + SECOND / 2;
+        assertEquals(5, rejectedRetryAfter("10.0.0.1"));
+
+        now += 4 * SECOND + SECOND / 2 - 1;
+        assertEquals(1, rejectedRetryAfter("10.0.0.1"));
+    }
+
+    @Test
+    void refillsOneTokenPerInterval() {
+        exhaust("10.0.0.1");
+
+        now += 20 * SECOND;
+        assertDoesNotThrow(() -> rateLimiter.acquire(Limit.AUTH_IP, "10.0.0.1"));
+        assertEquals(20, rejectedRetryAfter("10.0.0.1"));
+
+        // Idle for longer than the period: the bucket is full again, never fuller
+        now += 600 * SECOND;
+        exhaust("10.0.0.1");
+        assertEquals(20, rejectedRetryAfter("10.0.0.1"));
+    }
+
+    @Test
+    void keysAndLimitsHaveSeparateBuckets() {
+        exhaust("10.0.0.1");
+
+        assertDoesNotThrow(() -> rateLimiter.acquire(Limit.AUTH_IP, "10.0.0.2"));
+        assertDoesNotThrow(() -> rateLimiter.acquire(Limit.LOGIN_IDENTIFIER, "10.0.0.1"));
+        assertDoesNotThrow(() -> rateLimiter.acquire(Limit.AUTH_IP, null));
+    }
+
+    @Test
+    void evictsTheBucketsClosestToFullPastMaxKeys() {
+        exhaust("busy");
+        rateLimiter.acquire(Limit.AUTH_IP, "a");
+        rateLimiter.acquire(Limit.AUTH_IP, "b");
+        rateLimiter.acquire(Limit.AUTH_IP, "c");
+        assertEquals(4.0, keys());
+
+        // A fifth key trims the map to 90% of max-keys, dropping full and nearly full buckets only
+        rateLimiter.acquire(Limit.AUTH_IP, "d");
+
+        assertEquals(3.0, keys());
+        assertEquals(20, rejectedRetryAfter("busy"));
+    }
+
+    @Test
+    void sweepDropsBucketsThatHaveRefilled() {
+        exhaust("10.0.0.1");
+        rateLimiter.acquire(Limit.AUTH_IP, "10.0.0.2");
+
+        now += 20 * SECOND;
+        rateLimiter.evictFull();
+        assertEquals(1.0, keys());
+
+        now += 40 * SECOND;
+        rateLimiter.evictFull();
+        assertEquals(0.0, keys());
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    private void exhaust(String key) {
+        for (int i = 0; i < 3; i++) {
+            rateLimiter.acquire(Limit.AUTH_IP, key);
+        }
+    }
+
+    private long rejectedRetryAfter(String key) {
+        return assertThrows(RateLimitExceededException.class, () -> rateLimiter.acquire(Limit.AUTH_IP, key))
+                .getRetryAfterSeconds();
+    }
+
+    private double keys() {
+        return meterRegistry.get("echo.rate-limit.keys").tag("limit", "auth_ip").gauge().value();
+    }
+}
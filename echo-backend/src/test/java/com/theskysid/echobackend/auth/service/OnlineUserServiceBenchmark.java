@@ -0,0 +1,99 @@
+package com.theskysid.echobackend.auth.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Connect/disconnect churn from eight threads, each on its own users (a reconnect storm after a
+ * deploy), plus the isOnline read every presence fan-out makes:
+ * <ul>
+ *     <li>singleMonitor: every call under one lock, as OnlineUserService used to synchronize</li>
+ *     <li>concurrent: OnlineUserService as it is, per-user compute and lock-free reads</li>
+ * </ul>
+ * Run with:
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main OnlineUserServiceBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class OnlineUserServiceBenchmark {
+
+    private static final int USERS_PER_THREAD = 1_000;
+
+    @Param({"singleMonitor", "concurrent"})
+    public String locking;
+
+    private OnlineUserService onlineUserService;
+    private final Object monitor = new Object();
+    private final AtomicInteger threads = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private String[] usernames;
+        private int next;
+        private long session;
+
+        @Setup
+        public void setUp(OnlineUserServiceBenchmark benchmark) {
+            int thread = benchmark.threads.getAndIncrement();
+            usernames = new String[USERS_PER_THREAD];
+            for (int i = 0; i < USERS_PER_THREAD; i++) {
+                usernames[i] = "user-" + thread + "-" + i;
+            }
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        onlineUserService = new OnlineUserService(event -> { });
+    }
+
+    @TearDown
+    public void tearDown() {
+        onlineUserService.shutdown();
+    }
+
+    @Benchmark
+    public boolean connectAndDisconnect(Cursor cursor) {
+        String username = cursor.usernames[cursor.next++ % USERS_PER_THREAD];
+        String sessionId = username + "#" + cursor.session++;
+        if ("singleMonitor".equals(locking)) {
+            synchronized (monitor) {
+                onlineUserService.registerSession(username, sessionId);
+            }
+            boolean online;
+            synchronized (monitor) {
+                online = onlineUserService.isOnline(username);
+            }
+            synchronized (monitor) {
+                onlineUserService.unregisterSession(sessionId);
+            }
+            return online;
+        }
+        onlineUserService.registerSession(username, sessionId);
+        boolean online = onlineUserService.isOnline(username);
+        onlineUserService.unregisterSession(sessionId);
+        return online;
+    }
+}
@@ -0,0 +1,126 @@
+package com.theskysid.echobackend.auth.service;
+
+import com.theskysid.echobackend.auth.service.OnlineUserService.PresenceChanged;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Sessions of the same users opening and closing on many threads while grace timers fire, with a
+ * short grace period so LEAVEs race reconnects. Checks that each user's events alternate JOIN/LEAVE
+ * by sequence, and that a listener dropping events for which isLatest is false (as PresenceBroadcaster
+ * does) ends with every user's real state, whatever order the events reached it in.
+ */
+class OnlineUserServiceStressTest {
+
+    private static final int USERS = 1_000;
+    private static final int THREADS = 8;
+    private static final long RUN_MILLIS = 3_000;
+
+    private final BlockingQueue<PresenceChanged> published = new LinkedBlockingQueue<>();
+    // Some publishers stall between leaving compute and handing the event over, widening the reordering window
+    private final OnlineUserService onlineUserService = new OnlineUserService(event -> {
+        if (ThreadLocalRandom.current().nextInt(8) == 0) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(ThreadLocalRandom.current().nextInt(500)));
+        }
+        published.add((PresenceChanged) event);
+    }, 50);
+
+    @AfterEach
+    void shutdown() {
+        onlineUserService.shutdown();
+    }
+
+    @Test
+    void listenerSeesEachUsersLatestStateDespiteReordering() throws Exception {
+        List<PresenceChanged> received = new ArrayList<>();
+        Map<String, Boolean> shown = new ConcurrentHashMap<>();
+        AtomicBoolean listening = new AtomicBoolean(true);
+        Thread listener = new Thread(() -> {
+            try {
+                while (listening.get() || !published.isEmpty()) {
+                    PresenceChanged event = published.poll(10, TimeUnit.MILLISECONDS);
+                    if (event == null) {
+                        continue;
+                    }
+                    received.add(event);
+                    if (onlineUserService.isLatest(event)) {
+                        shown.put(event.username(), event.online());
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "presence-listener");
+        listener.start();
+
+        // Users below USERS / 2 keep one session open at the end, the rest close everything
+        CountDownLatch done = new CountDownLatch(THREADS);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RUN_MILLIS);
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int session = 0;
+                while (System.nanoTime() < deadline) {
+                    String username = "user" + random.nextInt(USERS);
+                    String sessionId = "t" + thread + "-" + session++;
+                    onlineUserService.registerSession(username, sessionId);
+                    if (random.nextInt(4) == 0) {
+                        Thread.yield();
+                    }
+                    onlineUserService.unregisterSession(sessionId);
+                }
+                if (thread == 0) {
+                    for (int user = 0; user < USERS / 2; user++) {
+                        onlineUserService.registerSession("user" + user, "final-" + user);
+                    }
+                }
+                done.countDown();
+            }, "presence-stress-" + t).start();
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+
+        long quiet = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (onlineUserService.onlineCount() > USERS / 2 && System.nanoTime() < quiet) {
+            Thread.sleep(20);
+        }
+        assertEquals(USERS / 2, onlineUserService.onlineCount());
+        listening.set(false);
+        listener.join(TimeUnit.SECONDS.toMillis(5));
+
+        Map<String, List<PresenceChanged>> byUser = new HashMap<>();
+        for (PresenceChanged event : received) {
+            byUser.computeIfAbsent(event.username(), ignored -> new ArrayList<>()).add(event);
+        }
+        for (List<PresenceChanged> events : byUser.values()) {
+            events.sort(Comparator.comparingLong(PresenceChanged::sequence));
+            for (int i = 0; i < events.size(); i++) {
+                assertEquals(i % 2 == 0, events.get(i).online(), "transitions out of order: " + events);
+            }
+        }
+
+        for (int user = 0; user < USERS; user++) {
+            String username = "user" + user;
+            boolean online = onlineUserService.isOnline(username);
+            assertEquals(user < USERS / 2, online);
+            assertEquals(online, shown.getOrDefault(username, false), "listener shows a stale state for " + username);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.theskysid.echobackend.auth.service;
+
+import com.theskysid.echobackend.auth.token.entity.UserTokenEpoch;
+import com.theskysid.echobackend.auth.token.repository.UserTokenEpochRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Two nodes sharing user_token_epochs (a mocked repository over one list of rows), each with its own
+ * TokenEpochService, as when a logout on one node is followed by a login on another.
+ */
+class TokenEpochServiceTest {
+
+    private static final long USER_ID = 42L;
+
+    private final List<UserTokenEpoch> rows = new ArrayList<>();
+    private final UserTokenEpochRepository repository = mock(UserTokenEpochRepository.class);
+
+    private TokenEpochService nodeA;
+    private TokenEpochService nodeB;
+
+    @BeforeEach
+    void setUp() {
+        when(repository.databaseNow()).thenAnswer(invocation -> LocalDateTime.now());
+        when(repository.findByUpdatedAtAfter(any())).thenAnswer(invocation -> rows.stream()
+                .filter(row -> row.getUpdatedAt().isAfter(invocation.getArgument(0)))
+                .toList());
+        when(repository.findById(anyLong())).thenAnswer(invocation -> rows.stream()
+                .filter(row -> row.getUserId().equals(invocation.getArgument(0)))
+                .findFirst());
+        when(repository.bump(anyLong())).thenAnswer(invocation -> {
+            Long userId = invocation.getArgument(0);
+            UserTokenEpoch row = rows.stream().filter(existing -> existing.getUserId().equals(userId))
+                    .findFirst()
+                    .orElseGet(() -> {
+                        UserTokenEpoch created = new UserTokenEpoch();
+                        created.setUserId(userId);
+                        rows.add(created);
+                        return created;
+                    });
+            row.setEpoch(row.getEpoch() + 1);
+            row.setUpdatedAt(LocalDateTime.now());
+            return 1;
+        });
+
+        nodeA = node();
+        nodeB = node();
+    }
+
+    @Test
+    void tokenIssuedRightAfterARevocationOnAnotherNodeSurvivesTheRefresh() {
+        nodeA.revokeAll(USER_ID);
+        // Node B has not refreshed yet, so its own view still has the old epoch
+        assertEquals(0, nodeB.currentEpoch(USER_ID));
+
+        long issued = nodeB.epochForNewToken(USER_ID);
+        nodeB.refresh();
+
+        assertEquals(1, issued);
+        assertFalse(nodeB.isRevoked(USER_ID, issued));
+        assertFalse(nodeA.isRevoked(USER_ID, issued));
+    }
+
+    @Test
+    void tokenFromBeforeTheRevocationIsRevokedOnBothNodesAfterRefresh() {
+        long before = nodeB.epochForNewToken(USER_ID);
+
+        nodeA.revokeAll(USER_ID);
+        nodeB.refresh();
+
+        assertTrue(nodeA.isRevoked(USER_ID, before));
+        assertTrue(nodeB.isRevoked(USER_ID, before));
+    }
+
+    @Test
+    void userWithoutRevocationsGetsEpochZero() {
+        assertEquals(0, nodeA.epochForNewToken(USER_ID));
+        assertFalse(nodeA.isRevoked(USER_ID, 0));
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    private TokenEpochService node() {
+        TokenEpochService service = new TokenEpochService();
+        ReflectionTestUtils.setField(service, "userTokenEpochRepository", repository);
+        ReflectionTestUtils.setField(service, "jwtExpirationMillis", 3_600_000L);
+        service.init();
+        return service;
+    }
+}
@@ -0,0 +1,118 @@
+package com.theskysid.echobackend.auth.util;
+
+import com.theskysid.echobackend.auth.util.HashedTimingWheel.Timeout;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A wheel of 8 slots and 10 ns ticks (one turn is 80 ns), driven by hand from a fake clock instead
+ * of its worker thread.
+ */
+class HashedTimingWheelTest {
+
+    private final List<String> fired = new ArrayList<>();
+    private long now = 1_000;
+    private HashedTimingWheel wheel;
+
+    @BeforeEach
+    void setUp() {
+        wheel = new HashedTimingWheel(null, 10, 8, () -> now);
+    }
+
+    @Test
+    void firesWithinOneTickAfterTheDeadlineAndNeverBefore() {
+        schedule("a", 25);
+
+        advanceTo(1_024);
+        assertEquals(List.of(), fired);
+
+        // Due at 1 025, run by the tick at 1 030
+        advanceTo(1_029);
+        assertEquals(List.of(), fired);
+        advanceTo(1_030);
+        assertEquals(List.of("a"), fired);
+
+        advanceTo(1_200);
+        assertEquals(List.of("a"), fired);
+    }
+
+    @Test
+    void timeoutsLongerThanOneTurnWaitForTheirDeadline() {
+        schedule("long", 205);
+
+        // Passes the same slot at 1 050 and 1 130 without firing
+        advanceTo(1_200);
+        assertEquals(List.of(), fired);
+        advanceTo(1_210);
+        assertEquals(List.of("long"), fired);
+    }
+
+    @Test
+    void cancelledTimeoutsNeverRun() {
+        Timeout cancelledBeforeTransfer = schedule("before", 30);
+        cancelledBeforeTransfer.cancel();
+        Timeout cancelledInSlot = schedule("in-slot", 30);
+        schedule("kept", 30);
+
+        advanceTo(1_010);
+        cancelledInSlot.cancel();
+        advanceTo(1_100);
+
+        assertEquals(List.of("kept"), fired);
+        assertTrue(cancelledInSlot.isCancelled());
+    }
+
+    @Test
+    void pastDeadlinesRunOnTheNextTick() {
+        advanceTo(1_095);
+        schedule("late", -50);
+        schedule("now", 0);
+
+        advanceTo(1_099);
+        assertEquals(List.of(), fired);
+        advanceTo(1_100);
+        assertEquals(List.of("late", "now"), fired);
+    }
+
+    @Test
+    void aFailingTaskDoesNotStopTheOthersInItsSlot() {
+        wheel.schedule(timeout -> {
+            throw new IllegalStateException("boom");
+        }, 10, TimeUnit.NANOSECONDS);
+        schedule("after", 10);
+
+        advanceTo(1_010);
+        assertEquals(List.of("after"), fired);
+    }
+
+    @Test
+    void catchesUpOnEveryTickMissedByALongPause() {
+        for (int i = 1; i <= 40; i++) {
+            schedule("t" + i, i * 10L);
+        }
+
+        advanceTo(1_400);
+
+        assertEquals(40, fired.size());
+        assertEquals("t1", fired.get(0));
+        assertEquals("t40", fired.get(39));
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    private Timeout schedule(String name, long delayNanos) {
+        return wheel.schedule(timeout -> fired.add(name), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void advanceTo(long nanos) {
+        now = nanos;
+        wheel.advance();
+    }
+}
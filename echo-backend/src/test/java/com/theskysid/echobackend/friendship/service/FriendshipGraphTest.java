@@ -0,0 +1,152 @@
+package com.theskysid.echobackend.friendship.service;
+
+import com.theskysid.echobackend.friendship.repository.FriendshipRepository;
+import com.theskysid.echobackend.messaging.relay.CacheInvalidation;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Updates that land while a user's friend ids are being read: the read may answer its own caller,
+ * but must never be cached over the update it missed.
+ */
+class FriendshipGraphTest {
+
+    private static final long ALICE = 1L;
+    private static final long BOB = 2L;
+
+    // The friendships table, as accepted friend ids per user
+    private final Map<Long, List<Long>> friendIds = new ConcurrentHashMap<>();
+    private final FriendshipRepository repository = mock(FriendshipRepository.class);
+    private final ExecutorService loader = Executors.newSingleThreadExecutor();
+
+    private CountDownLatch queryStarted;
+    private CountDownLatch queryReleased;
+    private FriendshipGraph graph;
+
+    @BeforeEach
+    void setUp() {
+        friendIds.put(ALICE, List.of(BOB));
+        friendIds.put(BOB, List.of(ALICE));
+        queryStarted = new CountDownLatch(1);
+        queryReleased = new CountDownLatch(0);
+        when(repository.findAcceptedFriendIds(anyLong())).thenAnswer(invocation -> {
+            // Read the rows first, then stall: the snapshot is what the query would return
+            List<Long> snapshot = friendIds.getOrDefault(invocation.<Long>getArgument(0), List.of());
+            queryStarted.countDown();
+            queryReleased.await(5, TimeUnit.SECONDS);
+            return snapshot;
+        });
+
+        graph = new FriendshipGraph();
+        ReflectionTestUtils.setField(graph, "friendshipRepository", repository);
+        ReflectionTestUtils.setField(graph, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(graph, "eventPublisher", mock(ApplicationEventPublisher.class));
+        ReflectionTestUtils.setField(graph, "maxUsers", 100);
+        ReflectionTestUtils.setField(graph, "idleMinutes", 30L);
+        ReflectionTestUtils.setField(graph, "maxAgeMinutes", 10L);
+        graph.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        loader.shutdownNow();
+    }
+
+    @Test
+    void loadsOnceAndAnswersBothDirectionsFromMemory() {
+        assertTrue(graph.areFriends(ALICE, BOB));
+        assertTrue(graph.areFriends(BOB, ALICE));
+        assertTrue(graph.areFriends(ALICE, BOB));
+
+        verify(repository, times(1)).findAcceptedFriendIds(anyLong());
+    }
+
+    @Test
+    void removalDuringALoadIsNotOverwrittenByTheStaleRead() throws Exception {
+        Future<Boolean> staleLookup = startStalledLookup();
+
+        unfriend();
+        graph.friendshipRemoved(ALICE, BOB);
+        queryReleased.countDown();
+
+        // The lookup that raced the removal answers from its own read, but does not cache it
+        assertTrue(staleLookup.get(5, TimeUnit.SECONDS));
+        assertFalse(graph.areFriends(ALICE, BOB));
+        assertFalse(graph.areFriends(BOB, ALICE));
+        verify(repository, times(2)).findAcceptedFriendIds(ALICE);
+    }
+
+    @Test
+    void remoteInvalidationDuringALoadIsNotOverwrittenByTheStaleRead() throws Exception {
+        Future<Boolean> staleLookup = startStalledLookup();
+
+        // Another node removed the friendship and told this one
+        unfriend();
+        graph.onCacheInvalidation(new CacheInvalidation("friendship-graph", ALICE, true));
+        graph.onCacheInvalidation(new CacheInvalidation("friendship-graph", BOB, true));
+        queryReleased.countDown();
+
+        assertTrue(staleLookup.get(5, TimeUnit.SECONDS));
+        assertFalse(graph.areFriends(ALICE, BOB));
+    }
+
+    @Test
+    void localEchoOfAnInvalidationIsIgnored() {
+        assertTrue(graph.areFriends(ALICE, BOB));
+
+        graph.onCacheInvalidation(CacheInvalidation.local("friendship-graph", ALICE));
+        assertTrue(graph.areFriends(ALICE, BOB));
+
+        verify(repository, times(1)).findAcceptedFriendIds(anyLong());
+    }
+
+    @Test
+    void additionUpdatesALoadedUserInPlace() {
+        friendIds.put(ALICE, List.of());
+        friendIds.put(BOB, List.of());
+        assertFalse(graph.areFriends(ALICE, BOB));
+
+        graph.friendshipAdded(ALICE, BOB);
+
+        assertTrue(graph.areFriends(ALICE, BOB));
+        assertEquals(1, graph.friendIdsOf(ALICE).length);
+        verify(repository, times(1)).findAcceptedFriendIds(anyLong());
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    // A first lookup of ALICE whose query has read the rows and is held until queryReleased
+    private Future<Boolean> startStalledLookup() throws InterruptedException {
+        queryReleased = new CountDownLatch(1);
+        Future<Boolean> lookup = loader.submit(() -> graph.areFriends(ALICE, BOB));
+        assertTrue(queryStarted.await(5, TimeUnit.SECONDS));
+        return lookup;
+    }
+
+    private void unfriend() {
+        friendIds.put(ALICE, List.of());
+        friendIds.put(BOB, List.of());
+    }
+}
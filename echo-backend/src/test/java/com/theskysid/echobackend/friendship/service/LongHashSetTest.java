@@ -0,0 +1,117 @@
+package com.theskysid.echobackend.friendship.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Adds and removes checked against a java.util.HashSet, across table growth, the rebuild done by
+ * every removal, and probe chains in a half-full table.
+ */
+class LongHashSetTest {
+
+    @Test
+    void growsFromEmptyAndKeepsEveryValue() {
+        LongHashSet set = LongHashSet.EMPTY;
+        for (long value = 1; value <= 1_000; value++) {
+            set = set.with(value * 7919);
+            assertEquals(value, set.size());
+        }
+        for (long value = 1; value <= 1_000; value++) {
+            assertTrue(set.contains(value * 7919));
+            assertFalse(set.contains(value * 7919 + 1));
+        }
+    }
+
+    @Test
+    void matchesHashSetUnderRandomAddsAndRemoves() {
+        Random random = new Random(42);
+        Set<Long> expected = new HashSet<>();
+        LongHashSet set = LongHashSet.EMPTY;
+        for (int i = 0; i < 20_000; i++) {
+            // A small range so values are re-added after removal and chains get rebuilt often
+            long value = random.nextInt(512) - 64;
+            if (random.nextInt(3) == 0) {
+                set = set.without(value);
+                expected.remove(value);
+            } else {
+                set = set.with(value);
+                expected.add(value);
+            }
+            assertEquals(expected.size(), set.size());
+        }
+        for (long value = -64; value < 448; value++) {
+            assertEquals(expected.contains(value), set.contains(value), "value " + value);
+        }
+        assertArrayEquals(sorted(expected), sortedArray(set));
+    }
+
+    @Test
+    void removingFromAHalfFullTableKeepsTheRestReachable() {
+        // 16 values in 32 slots: linear probing leaves chains that removals must not break
+        List<Long> values = new ArrayList<>();
+        for (long i = 1; i <= 16; i++) {
+            values.add(i);
+        }
+        LongHashSet set = LongHashSet.of(values);
+
+        for (int i = 0; i < values.size(); i += 2) {
+            set = set.without(values.get(i));
+        }
+        for (int i = 0; i < values.size(); i++) {
+            assertEquals(i % 2 == 1, set.contains(values.get(i)));
+        }
+        assertEquals(8, set.size());
+    }
+
+    @Test
+    void tracksZeroOutsideTheTable() {
+        LongHashSet set = LongHashSet.of(List.of(0L, 0L, 5L));
+        assertEquals(2, set.size());
+        assertTrue(set.contains(0));
+
+        LongHashSet withoutZero = set.without(0);
+        assertFalse(withoutZero.contains(0));
+        assertTrue(withoutZero.contains(5));
+        assertEquals(1, withoutZero.size());
+        assertArrayEquals(new long[]{0, 5}, sortedArray(set));
+    }
+
+    @Test
+    void updatesReturnCopiesAndNoOpsReturnTheSameSet() {
+        LongHashSet original = LongHashSet.of(List.of(1L, 2L, 3L));
+
+        LongHashSet added = original.with(4);
+        LongHashSet removed = original.without(2);
+
+        assertFalse(original.contains(4));
+        assertTrue(original.contains(2));
+        assertTrue(added.contains(4));
+        assertFalse(removed.contains(2));
+        assertSame(original, original.with(3));
+        assertSame(original, original.without(99));
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    private static long[] sorted(Set<Long> values) {
+        return values.stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    private static long[] sortedArray(LongHashSet set) {
+        long[] values = set.toArray();
+        Arrays.sort(values);
+        return values;
+    }
+}
@@ -0,0 +1,113 @@
+package com.theskysid.echobackend.messaging.broker;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Time for one /topic/public message to reach every subscriber, Spring's simple broker against
+ * {@link ShardedBrokerMessageHandler}. sendCost burns CPU per delivered frame to stand in for STOMP
+ * encoding and the socket write done by the real clientOutboundChannel.
+ * <p>
+ * Run with:
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main ShardedBrokerBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShardedBrokerBenchmark {
+
+    private static final String DESTINATION = "/topic/public";
+
+    @Param({"simple", "sharded"})
+    public String broker;
+
+    @Param({"1000", "10000"})
+    public int subscribers;
+
+    @Param({"0", "100"})
+    public int sendCost;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private SimpleBrokerMessageHandler handler;
+    private Message<byte[]> message;
+
+    @Setup
+    public void setUp() {
+        ExecutorSubscribableChannel clientInboundChannel = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+        MessageChannel clientOutboundChannel = (frame, timeout) -> {
+            if (sendCost > 0) {
+                Blackhole.consumeCPU(sendCost);
+            }
+            delivered.incrementAndGet();
+            return true;
+        };
+
+        List<String> prefixes = List.of("/topic", "/queue");
+        int shards = Runtime.getRuntime().availableProcessors();
+        handler = "sharded".equals(broker)
+                ? new ShardedBrokerMessageHandler(clientInboundChannel, clientOutboundChannel, brokerChannel,
+                        prefixes, shards, 1024)
+                : new SimpleBrokerMessageHandler(clientInboundChannel, clientOutboundChannel, brokerChannel, prefixes);
+        handler.start();
+
+        for (int i = 0; i < subscribers; i++) {
+            SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+            subscribe.setSessionId("session-" + i);
+            subscribe.setSubscriptionId("sub-0");
+            subscribe.setDestination(DESTINATION);
+            handler.handleMessage(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+        }
+
+        SimpMessageHeaderAccessor publish = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        publish.setDestination(DESTINATION);
+        message = MessageBuilder.createMessage(
+                "{\"type\":\"CHAT\",\"content\":\"hello\"}".getBytes(StandardCharsets.UTF_8),
+                publish.getMessageHeaders());
+    }
+
+    @TearDown
+    public void tearDown() {
+        handler.stop();
+    }
+
+    @Benchmark
+    public long fanOut() {
+        long target = delivered.get() + subscribers;
+        handler.handleMessage(message);
+        long count;
+        while ((count = delivered.get()) < target) {
+            Thread.onSpinWait();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,132 @@
+package com.theskysid.echobackend.messaging.broker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Per-session ordering across destinations of very different fan-out: a session subscribed to a
+ * crowded topic and to its own queue must see frames in publish order, whichever is delivered first.
+ */
+class ShardedBrokerMessageHandlerTest {
+
+    private static final String TOPIC = "/topic/public";
+    private static final String QUEUE = "/queue/dm-session-0";
+    private static final int TOPIC_SUBSCRIBERS = 200;
+
+    private final Map<String, List<String>> received = new ConcurrentHashMap<>();
+    private final AtomicInteger delivered = new AtomicInteger();
+    private final CountDownLatch dispatchersReleased = new CountDownLatch(1);
+    private ShardedBrokerMessageHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        MessageChannel clientOutboundChannel = (frame, timeout) -> {
+            if (Thread.currentThread().getName().startsWith("echo-broker-shard-")) {
+                awaitRelease();
+            }
+            String sessionId = SimpMessageHeaderAccessor.getSessionId(frame.getHeaders());
+            received.computeIfAbsent(sessionId, ignored -> new CopyOnWriteArrayList<>())
+                    .add(new String((byte[]) frame.getPayload(), StandardCharsets.UTF_8));
+            delivered.incrementAndGet();
+            return true;
+        };
+        handler = new ShardedBrokerMessageHandler(new ExecutorSubscribableChannel(), clientOutboundChannel,
+                new ExecutorSubscribableChannel(), List.of("/topic", "/queue"), 4, 1024);
+        handler.start();
+
+        for (int i = 0; i < TOPIC_SUBSCRIBERS; i++) {
+            subscribe("session-" + i, TOPIC);
+        }
+        subscribe("session-0", QUEUE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        dispatchersReleased.countDown();
+        handler.stop();
+    }
+
+    @Test
+    void directFrameDoesNotOvertakeAQueuedBroadcast() throws InterruptedException {
+        // The dispatchers hold the broadcast until the DM has been published
+        publish(TOPIC, "broadcast");
+        publish(QUEUE, "dm");
+        dispatchersReleased.countDown();
+
+        awaitDelivered(TOPIC_SUBSCRIBERS + 1);
+        assertEquals(List.of("broadcast", "dm"), received.get("session-0"));
+    }
+
+    @Test
+    void interleavedPublishesArriveInOrderForEverySession() throws InterruptedException {
+        dispatchersReleased.countDown();
+        List<String> published = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String destination = i % 3 == 0 ? TOPIC : QUEUE;
+            publish(destination, destination + "#" + i);
+            published.add(destination + "#" + i);
+        }
+
+        int topicFrames = (int) published.stream().filter(payload -> payload.startsWith(TOPIC)).count();
+        awaitDelivered(topicFrames * TOPIC_SUBSCRIBERS + published.size() - topicFrames);
+        assertEquals(published, received.get("session-0"));
+        for (int i = 1; i < TOPIC_SUBSCRIBERS; i++) {
+            assertEquals(published.stream().filter(payload -> payload.startsWith(TOPIC)).toList(),
+                    received.get("session-" + i));
+        }
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    private void subscribe(String sessionId, String destination) {
+        SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        subscribe.setSessionId(sessionId);
+        subscribe.setSubscriptionId("sub-" + destination);
+        subscribe.setDestination(destination);
+        handler.handleMessage(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+    }
+
+    private void publish(String destination, String payload) {
+        SimpMessageHeaderAccessor publish = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        publish.setDestination(destination);
+        Message<byte[]> message = MessageBuilder.createMessage(payload.getBytes(StandardCharsets.UTF_8),
+                publish.getMessageHeaders());
+        handler.handleMessage(message);
+    }
+
+    private void awaitRelease() {
+        try {
+            dispatchersReleased.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitDelivered(int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (delivered.get() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(delivered.get() >= expected, "delivered " + delivered.get() + " of " + expected);
+    }
+}
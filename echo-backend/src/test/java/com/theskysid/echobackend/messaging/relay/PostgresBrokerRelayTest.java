@@ -0,0 +1,136 @@
+package com.theskysid.echobackend.messaging.relay;
+
+import com.theskysid.echobackend.EchoBackendApplication;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+
+import java.security.Principal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Two nodes sharing one database: a message sent on one node reaches sessions on both, exactly once,
+ * and only the original frame (not the per-session copies) goes over NOTIFY.
+ */
+class PostgresBrokerRelayTest {
+
+    private static final String USER = "relay-test-user";
+
+    private ConfigurableApplicationContext nodeA;
+    private ConfigurableApplicationContext nodeB;
+
+    @BeforeEach
+    void startNodes() {
+        nodeA = startNode();
+        nodeB = startNode();
+    }
+
+    @AfterEach
+    void stopNodes() {
+        if (nodeA != null) {
+            nodeA.close();
+        }
+        if (nodeB != null) {
+            nodeB.close();
+        }
+    }
+
+    @Test
+    void userDestinationIsDeliveredOnceOnEachNodeAndRelayedOnce() throws Exception {
+        AtomicInteger deliveredOnA = connect(nodeA, "session-a", "/queue/relay-test");
+        AtomicInteger deliveredOnB = connect(nodeB, "session-b", "/queue/relay-test");
+        double publishedByA = published(nodeA);
+        double publishedByB = published(nodeB);
+
+        nodeA.getBean(SimpMessagingTemplate.class).convertAndSend("/user/" + USER + "/queue/relay-test", "hello");
+
+        await(() -> deliveredOnB.get());
+        // Leave time for any duplicate to arrive
+        Thread.sleep(1000);
+        assertEquals(1, deliveredOnA.get());
+        assertEquals(1, deliveredOnB.get());
+        assertEquals(1.0, published(nodeA) - publishedByA, 0.0);
+        assertEquals(0.0, published(nodeB) - publishedByB, 0.0);
+    }
+
+    @Test
+    void topicIsDeliveredOnceOnEachNode() throws Exception {
+        AtomicInteger deliveredOnA = subscribe(nodeA, "session-a", "/topic/relay-test");
+        AtomicInteger deliveredOnB = subscribe(nodeB, "session-b", "/topic/relay-test");
+
+        nodeA.getBean(SimpMessagingTemplate.class).convertAndSend("/topic/relay-test", "hello");
+
+        await(() -> deliveredOnB.get());
+        Thread.sleep(1000);
+        assertEquals(1, deliveredOnA.get());
+        assertEquals(1, deliveredOnB.get());
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    private static ConfigurableApplicationContext startNode() {
+        return new SpringApplicationBuilder(EchoBackendApplication.class)
+                .properties("server.port=0", "spring.jmx.enabled=false", "websocket.relay.enabled=true")
+                .run();
+    }
+
+    // Registers USER with a session on the node (as a STOMP CONNECT would) and subscribes it to the user queue
+    private static AtomicInteger connect(ConfigurableApplicationContext node, String sessionId, String queue) {
+        SimpMessageHeaderAccessor connected = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT_ACK);
+        connected.setSessionId(sessionId);
+        Principal user = () -> USER;
+        node.publishEvent(new SessionConnectedEvent(node,
+                MessageBuilder.createMessage(new byte[0], connected.getMessageHeaders()), user));
+        return subscribe(node, sessionId, queue + "-user" + sessionId);
+    }
+
+    private static AtomicInteger subscribe(ConfigurableApplicationContext node, String sessionId, String destination) {
+        SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        subscribe.setSessionId(sessionId);
+        subscribe.setSubscriptionId("sub-0");
+        subscribe.setDestination(destination);
+        node.getBean("simpleBrokerMessageHandler", AbstractBrokerMessageHandler.class)
+                .handleMessage(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+
+        AtomicInteger delivered = new AtomicInteger();
+        node.getBean("clientOutboundChannel", AbstractSubscribableChannel.class).addInterceptor(new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                if (sessionId.equals(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()))
+                        && SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE) {
+                    delivered.incrementAndGet();
+                }
+                return message;
+            }
+        });
+        return delivered;
+    }
+
+    private static double published(ConfigurableApplicationContext node) {
+        return node.getBean(MeterRegistry.class).counter("echo.relay.frames", "direction", "published").count();
+    }
+
+    private static void await(DoubleSupplier count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (count.getAsDouble() < 1 && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+}
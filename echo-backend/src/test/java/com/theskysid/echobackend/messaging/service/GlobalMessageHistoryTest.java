@@ -0,0 +1,113 @@
+package com.theskysid.echobackend.messaging.service;
+
+import com.theskysid.echobackend.messaging.entity.ChatMessage;
+import com.theskysid.echobackend.messaging.repository.ChatMessageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Syncing rows saved by other nodes into the ring, against an in-memory table standing in for
+ * chat_messages, where rows become visible in the order their batches commit rather than by id.
+ */
+class GlobalMessageHistoryTest {
+
+    private final List<ChatMessage> committed = new CopyOnWriteArrayList<>();
+    private final ChatMessageRepository repository = mock(ChatMessageRepository.class);
+    private GlobalMessageHistory history;
+
+    @BeforeEach
+    void setUp() {
+        when(repository.findLatestGlobalMessages(any(), any())).thenAnswer(invocation -> committed.stream()
+                .sorted(Comparator.comparing(ChatMessage::getId).reversed())
+                .limit(((Pageable) invocation.getArgument(1)).getPageSize())
+                .toList());
+        when(repository.findGlobalMessagesAfter(any(), anyLong(), any())).thenAnswer(invocation -> committed.stream()
+                .filter(message -> message.getId() > (Long) invocation.getArgument(1))
+                .sorted(Comparator.comparing(ChatMessage::getId))
+                .limit(((Pageable) invocation.getArgument(2)).getPageSize())
+                .toList());
+
+        history = new GlobalMessageHistory();
+        ReflectionTestUtils.setField(history, "chatMessageRepository", repository);
+        ReflectionTestUtils.setField(history, "capacity", 100);
+        ReflectionTestUtils.setField(history, "retentionDays", 7);
+        ReflectionTestUtils.setField(history, "syncIntervalMs", 0L);
+        ReflectionTestUtils.setField(history, "syncOverlapMs", 200L);
+    }
+
+    @Test
+    void lowerIdCommittedAfterAHigherOneIsStillSynced() throws InterruptedException {
+        commit(1);
+        history.load();
+        Thread.sleep(250);
+
+        // Node B's batch (id 3) commits while node A's (id 2) is still open
+        commit(3);
+        assertEquals(List.of(1L, 3L), ids(history.page(null, 10)));
+
+        commit(2);
+        assertEquals(List.of(1L, 2L, 3L), ids(history.page(null, 10)));
+    }
+
+    @Test
+    void rowsAlreadyInTheRingAreNotDuplicatedByTheOverlap() {
+        commit(1);
+        commit(2);
+        history.load();
+        history.appendAll(List.of(message(3)));
+        commit(3);
+        commit(4);
+
+        history.page(null, 10);
+        assertEquals(List.of(1L, 2L, 3L, 4L), ids(history.page(null, 10)));
+    }
+
+    @Test
+    void rereadStartsFromWhatWasSyncedOneOverlapAgo() throws InterruptedException {
+        commit(1);
+        history.load();
+        commit(2);
+        history.page(null, 10);
+        verify(repository, never()).findGlobalMessagesAfter(any(), eq(2L), any());
+
+        Thread.sleep(250);
+        history.page(null, 10);
+        verify(repository).findGlobalMessagesAfter(any(), eq(2L), any());
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    private void commit(long id) {
+        committed.add(message(id));
+    }
+
+    private static ChatMessage message(long id) {
+        ChatMessage message = new ChatMessage();
+        message.setId(id);
+        message.setType(ChatMessage.MessageType.CHAT);
+        message.setSender("user" + id);
+        message.setContent("message " + id);
+        message.setTimestamp(LocalDateTime.now());
+        return message;
+    }
+
+    private static List<Long> ids(List<ChatMessage> messages) {
+        return messages.stream().map(ChatMessage::getId).toList();
+    }
+}
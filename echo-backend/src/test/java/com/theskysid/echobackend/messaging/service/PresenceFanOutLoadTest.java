@@ -0,0 +1,157 @@
+package com.theskysid.echobackend.messaging.service;
+
+import com.theskysid.echobackend.auth.service.OnlineUserService;
+import com.theskysid.echobackend.messaging.service.PresenceBroadcaster.Scope;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Presence frames per second at 1k, 5k and 10k online users, GLOBAL against FRIENDS scope, while 1% of
+ * users go offline or come back online every second. Every user has 20 accepted friends.
+ * GLOBAL sends each change to everyone online; FRIENDS only to the user's online friends, coalesced
+ * per presence.coalesce-ms. Frames are counted by echo.presence.frames.
+ * <p>
+ * Needs the application database, like contextLoads. Run with -Decho.load-tests=true.
+ */
+@SpringBootTest(properties = "presence.scope=FRIENDS")
+@EnabledIfSystemProperty(named = "echo.load-tests", matches = "true")
+class PresenceFanOutLoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(PresenceFanOutLoadTest.class);
+
+    private static final int FRIENDS_PER_USER = 20;
+    private static final long WARMUP_MILLIS = 3_000;
+    private static final long MEASURE_MILLIS = 5_000;
+    private static final long TICK_MILLIS = 100;
+    // Longer than the disconnect grace period plus a coalescing window
+    private static final long SETTLE_MILLIS = 3_000;
+
+    @Autowired
+    private PresenceBroadcaster presenceBroadcaster;
+
+    @Autowired
+    private OnlineUserService onlineUserService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void friendScopedPresenceSendsFewerFramesAsUsersGrow() throws InterruptedException {
+        for (int users : List.of(1_000, 5_000, 10_000)) {
+            String prefix = "presence-load-" + UUID.randomUUID().toString().substring(0, 8) + "-";
+            List<String> usernames = seedUsers(prefix, users);
+            try {
+                double global = framesPerSecond(Scope.GLOBAL, usernames);
+                double friends = framesPerSecond(Scope.FRIENDS, usernames);
+                logger.info("{} users, {} changes/s: GLOBAL {} frames/s, FRIENDS {} frames/s",
+                        users, users / 100, String.format("%,.0f", global), String.format("%,.0f", friends));
+                assertTrue(friends < global, "friend-scoped presence should send fewer frames");
+            } finally {
+                deleteUsers(prefix);
+            }
+        }
+        ReflectionTestUtils.setField(presenceBroadcaster, "scope", Scope.FRIENDS);
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    private double framesPerSecond(Scope scope, List<String> usernames) throws InterruptedException {
+        ReflectionTestUtils.setField(presenceBroadcaster, "scope", scope);
+        Map<String, String> sessions = new HashMap<>();
+        int session = 0;
+        for (String username : usernames) {
+            String sessionId = "presence-load-" + session++;
+            onlineUserService.registerSession(username, sessionId);
+            sessions.put(username, sessionId);
+        }
+        Thread.sleep(SETTLE_MILLIS);
+
+        // 1% of users change state per second
+        int changesPerTick = Math.max(1, (int) (usernames.size() / 100 * TICK_MILLIS / 1000));
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.MILLISECONDS.toNanos(WARMUP_MILLIS);
+        long end = measureFrom + TimeUnit.MILLISECONDS.toNanos(MEASURE_MILLIS);
+        double framesBefore = Double.NaN;
+        for (long tick = start; tick < end; tick += TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS)) {
+            if (Double.isNaN(framesBefore) && tick >= measureFrom) {
+                framesBefore = frames();
+            }
+            for (int i = 0; i < changesPerTick; i++) {
+                String username = usernames.get(random.nextInt(usernames.size()));
+                String sessionId = sessions.remove(username);
+                if (sessionId != null) {
+                    onlineUserService.unregisterSession(sessionId);
+                } else {
+                    sessionId = "presence-load-" + session++;
+                    onlineUserService.registerSession(username, sessionId);
+                    sessions.put(username, sessionId);
+                }
+            }
+            long sleepNanos = tick + TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS) - System.nanoTime();
+            if (sleepNanos > 0) {
+                TimeUnit.NANOSECONDS.sleep(sleepNanos);
+            }
+        }
+        double frames = frames() - framesBefore;
+
+        sessions.values().forEach(onlineUserService::unregisterSession);
+        Thread.sleep(SETTLE_MILLIS);
+        return frames * 1000.0 / MEASURE_MILLIS;
+    }
+
+    private double frames() {
+        return meterRegistry.get("echo.presence.frames").counter().count();
+    }
+
+    // Users in one batch, then a ring where each befriends the next FRIENDS_PER_USER / 2 (accepted)
+    private List<String> seedUsers(String prefix, int users) {
+        List<Object[]> rows = new ArrayList<>();
+        List<String> usernames = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            String username = prefix + i;
+            usernames.add(username);
+            rows.add(new Object[]{username, username + "@example.test"});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO users (username, email, auth_provider, registered_at) " +
+                "VALUES (?, ?, 'EMAIL', LOCALTIMESTAMP)", rows);
+
+        List<Long> ids = jdbcTemplate.queryForList(
+                "SELECT id FROM users WHERE username LIKE ? ORDER BY id", Long.class, prefix + "%");
+        List<Object[]> friendships = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            for (int offset = 1; offset <= FRIENDS_PER_USER / 2; offset++) {
+                friendships.add(new Object[]{ids.get(i), ids.get((i + offset) % ids.size())});
+            }
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO friendships (requester_id, addressee_id, status, created_at, updated_at) " +
+                "VALUES (?, ?, 'ACCEPTED', LOCALTIMESTAMP, LOCALTIMESTAMP)", friendships);
+        return usernames;
+    }
+
+    private void deleteUsers(String prefix) {
+        jdbcTemplate.update("DELETE FROM friendships WHERE requester_id IN (SELECT id FROM users WHERE username LIKE ?)",
+                prefix + "%");
+        jdbcTemplate.update("DELETE FROM users WHERE username LIKE ?", prefix + "%");
+    }
+}
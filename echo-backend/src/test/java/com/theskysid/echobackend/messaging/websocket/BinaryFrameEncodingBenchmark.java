@@ -0,0 +1,125 @@
+package com.theskysid.echobackend.messaging.websocket;
+
+import com.theskysid.echobackend.messaging.dto.DirectMessageDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.MimeTypeUtils;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one broadcast reaching every CBOR subscriber through {@link BinaryFrameEncoding}, from four
+ * threads at once:
+ * <ul>
+ *     <li>object: sent through the JSON converter, CBOR written straight from the DTO once per broadcast</li>
+ *     <li>json: JSON-only frame (as relayed from another node), transcoded once per broadcast</li>
+ *     <li>perFrame: no shared header, transcoded for every subscriber</li>
+ * </ul>
+ * Run with:
+ * <pre>
+ * mvn test-compile exec:exec -Dexec.classpathScope=test -Dexec.executable=java \
+ *     -Dexec.args="-cp %classpath org.openjdk.jmh.Main BinaryFrameEncodingBenchmark"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class BinaryFrameEncodingBenchmark {
+
+    private static final String DESTINATION = "/topic/public";
+
+    @Param({"object", "json", "perFrame"})
+    public String source;
+
+    @Param({"1", "100"})
+    public int subscribers;
+
+    private BinaryFrameEncoding encoding;
+    private MessageConverter jsonConverter;
+    private ChannelInterceptor brokerChannelInterceptor;
+    private DirectMessageDTO payload;
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws Exception {
+        encoding = new BinaryFrameEncoding();
+        ReflectionTestUtils.setField(encoding, "objectMapperBuilder", Jackson2ObjectMapperBuilder.json());
+        encoding.init();
+        jsonConverter = encoding.jsonMessageConverter();
+        brokerChannelInterceptor = encoding.brokerChannelInterceptor();
+
+        for (int i = 0; i < subscribers; i++) {
+            Map<String, Object> attributes = new HashMap<>();
+            encoding.nativeEndpointInterceptor().beforeHandshake(null, null, null, attributes);
+            StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+            connect.setSessionId("session-" + i);
+            connect.setSessionAttributes(attributes);
+            connect.setNativeHeader(BinaryFrameEncoding.ENCODING_HEADER, BinaryFrameEncoding.CBOR);
+            encoding.preSend(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()), null);
+        }
+
+        payload = DirectMessageDTO.builder()
+                .id(42L)
+                .conversationId(7L)
+                .senderId(1L)
+                .senderUsername("alice")
+                .recipientUsername("bob")
+                .content("See you at the station at half past six")
+                .timestamp(LocalDateTime.now())
+                .build();
+        json = (byte[]) jsonConverter.toMessage(payload, null).getPayload();
+    }
+
+    @Benchmark
+    public void broadcast(Blackhole blackhole) {
+        Message<?> published = publish();
+        for (int i = 0; i < subscribers; i++) {
+            SimpMessageHeaderAccessor copy = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            copy.copyHeadersIfAbsent(published.getHeaders());
+            copy.setSessionId("session-" + i);
+            copy.setSubscriptionId("sub-0");
+            blackhole.consume(encoding.preSend(
+                    MessageBuilder.createMessage(published.getPayload(), copy.getMessageHeaders()), null));
+        }
+    }
+
+    // The message as the broker sees it before fanning out
+    private Message<?> publish() {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setDestination(DESTINATION);
+        if ("object".equals(source)) {
+            return jsonConverter.toMessage(payload, headers.getMessageHeaders());
+        }
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        Message<byte[]> message = MessageBuilder.createMessage(json, headers.getMessageHeaders());
+        return "json".equals(source) ? brokerChannelInterceptor.preSend(message, null) : message;
+    }
+}
@@ -0,0 +1,153 @@
+package com.theskysid.echobackend.messaging.websocket;
+
+import com.theskysid.echobackend.friendship.entity.Friendship;
+import com.theskysid.echobackend.friendship.service.FriendshipService;
+import com.theskysid.echobackend.messaging.dto.DirectMessageRequestDTO;
+import com.theskysid.echobackend.user.entity.AuthProvider;
+import com.theskysid.echobackend.user.entity.User;
+import com.theskysid.echobackend.user.repository.UserRepository;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Statements and throughput of DirectMessageWsController.sendDirectMessage, with a fresh WebSocket
+ * session per send (nothing cached: sender and conversation resolved and access-checked every time)
+ * against one session (steady state from {@link DmSessionContext}).
+ * <p>
+ * Needs the application database, like contextLoads. Run with -Decho.load-tests=true.
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@EnabledIfSystemProperty(named = "echo.load-tests", matches = "true")
+class DirectMessageSendLoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(DirectMessageSendLoadTest.class);
+
+    private static final int SENDS = 2_000;
+
+    @Autowired
+    private DirectMessageWsController directMessageWsController;
+
+    @Autowired
+    private SessionContextRegistry sessionContextRegistry;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private FriendshipService friendshipService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private User alice;
+    private User bob;
+
+    private record Result(long statements, long nanos) {
+
+        double statementsPerSend() {
+            return (double) statements / SENDS;
+        }
+
+        double sendsPerSecond() {
+            return SENDS * 1_000_000_000.0 / nanos;
+        }
+    }
+
+    @BeforeEach
+    void createFriends() {
+        String suffix = UUID.randomUUID().toString().substring(0, 8);
+        alice = userRepository.save(user("dm-load-a-" + suffix));
+        bob = userRepository.save(user("dm-load-b-" + suffix));
+        Friendship request = friendshipService.sendFriendRequest(alice, bob.getUsername());
+        friendshipService.acceptFriendRequest(bob, request.getId());
+    }
+
+    @AfterEach
+    void deleteFriends() {
+        jdbcTemplate.update("DELETE FROM direct_messages WHERE sender_id IN (?, ?)", alice.getId(), bob.getId());
+        jdbcTemplate.update("DELETE FROM conversations WHERE participant_one_id IN (?, ?) OR participant_two_id IN (?, ?)",
+                alice.getId(), bob.getId(), alice.getId(), bob.getId());
+        jdbcTemplate.update("DELETE FROM friendships WHERE requester_id IN (?, ?)", alice.getId(), bob.getId());
+        userRepository.deleteAllById(List.of(alice.getId(), bob.getId()));
+    }
+
+    @Test
+    void steadyStateSendIsTheInsertAndTheCounterUpdate() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.setStatisticsEnabled(true);
+
+        // Creates the conversation and fills the one long-lived session context
+        send("warm", 0);
+
+        Result uncached = run(statistics, i -> "cold-" + i);
+        Result cached = run(statistics, i -> "warm");
+
+        logger.info("DM send without session context: {} statements/send, {} sends/s",
+                String.format("%.2f", uncached.statementsPerSend()), String.format("%.0f", uncached.sendsPerSecond()));
+        logger.info("DM send with session context:    {} statements/send, {} sends/s",
+                String.format("%.2f", cached.statementsPerSend()), String.format("%.0f", cached.sendsPerSecond()));
+
+        assertTrue(cached.statementsPerSend() <= 2.0, "steady state should be the insert plus the counter update");
+        assertTrue(cached.statementsPerSend() < uncached.statementsPerSend());
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    private Result run(Statistics statistics, IntFunction<String> sessionIds) {
+        long statementsBefore = statistics.getPrepareStatementCount();
+        long start = System.nanoTime();
+        for (int i = 0; i < SENDS; i++) {
+            send(sessionIds.apply(i), i);
+        }
+        long nanos = System.nanoTime() - start;
+        for (int i = 0; i < SENDS; i++) {
+            sessionContextRegistry.removeSession(sessionIds.apply(i));
+        }
+        return new Result(statistics.getPrepareStatementCount() - statementsBefore, nanos);
+    }
+
+    private void send(String sessionId, int sequence) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        Map<String, Object> sessionAttributes = new HashMap<>();
+        sessionAttributes.put("username", alice.getUsername());
+        headers.setSessionAttributes(sessionAttributes);
+
+        DirectMessageRequestDTO request = new DirectMessageRequestDTO();
+        request.setRecipientUsername(bob.getUsername());
+        request.setContent("load test message " + sequence);
+        request.setType("MESSAGE");
+        directMessageWsController.sendDirectMessage(request, headers);
+    }
+
+    private static User user(String username) {
+        return User.builder()
+                .username(username)
+                .email(username + "@example.test")
+                .authProvider(AuthProvider.EMAIL)
+                .build();
+    }
+}
@@ -0,0 +1,77 @@
+package com.theskysid.echobackend.messaging.websocket;
+
+import com.theskysid.echobackend.messaging.websocket.FlowControlledSessionDecorator.FrameType;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Classifying frames as StompEncoder writes them, from the header the producer set.
+ */
+class FlowControlledSessionDecoratorTest {
+
+    private final StompEncoder encoder = new StompEncoder();
+
+    @Test
+    void readsTheFrameTypeHeaderOfTextAndBinaryFrames() {
+        for (FrameType frameType : FrameType.values()) {
+            byte[] frame = encode(StompCommand.MESSAGE, "{\"content\":\"hello\"}", frameType.headers());
+
+            assertEquals(frameType, FlowControlledSessionDecorator.classify(
+                    new TextMessage(new String(frame, StandardCharsets.UTF_8))));
+            assertEquals(frameType, FlowControlledSessionDecorator.classify(new BinaryMessage(frame)));
+        }
+    }
+
+    @Test
+    void ignoresTheBodyAndUntaggedFrames() {
+        // A chat message whose text looks like a typing frame is still content
+        byte[] frame = encode(StompCommand.MESSAGE, "{\"type\":\"TYPING\",\"echo-frame-type:TYPING\":1}", Map.of());
+
+        assertEquals(FrameType.CONTENT, FlowControlledSessionDecorator.classify(
+                new TextMessage(new String(frame, StandardCharsets.UTF_8))));
+        assertEquals(FrameType.CONTENT, FlowControlledSessionDecorator.classify(new BinaryMessage(frame)));
+    }
+
+    @Test
+    void onlyMessageFramesAreDroppable() {
+        byte[] frame = encode(StompCommand.ERROR, "", FrameType.TYPING.headers());
+
+        assertEquals(FrameType.CONTENT, FlowControlledSessionDecorator.classify(new BinaryMessage(frame)));
+    }
+
+    @Test
+    void leavesTheBinaryPayloadPositionUntouched() {
+        byte[] frame = encode(StompCommand.MESSAGE, "{}", FrameType.PRESENCE.headers());
+        ByteBuffer payload = ByteBuffer.wrap(frame);
+
+        FlowControlledSessionDecorator.classify(new BinaryMessage(payload));
+
+        assertEquals(0, payload.position());
+        assertEquals(frame.length, payload.remaining());
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    private byte[] encode(StompCommand command, String body, Map<String, Object> nativeHeaders) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setDestination("/topic/public");
+        accessor.setSubscriptionId("sub-0");
+        accessor.setMessageId("1");
+        nativeHeaders.forEach((name, value) -> accessor.setNativeHeader(name, value.toString()));
+        Message<byte[]> message = MessageBuilder.createMessage(body.getBytes(StandardCharsets.UTF_8),
+                accessor.getMessageHeaders());
+        return encoder.encode(message);
+    }
+}
@@ -0,0 +1,110 @@
+package com.theskysid.echobackend.messaging.websocket;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Inbound frames per second through a clientInboundChannel-shaped channel when every frame makes a
+ * slow Postgres call (SELECT pg_sleep, standing in for a raised round trip), comparing Spring's
+ * default inbound pool with {@link SessionOrderedVirtualThreadExecutor}. The virtual executor is also
+ * checked to keep each session's frames in order.
+ * <p>
+ * Needs the application database, like contextLoads. Run with -Decho.load-tests=true.
+ */
+@SpringBootTest(properties = "spring.datasource.hikari.maximum-pool-size=64")
+@EnabledIfSystemProperty(named = "echo.load-tests", matches = "true")
+class InboundExecutorLoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(InboundExecutorLoadTest.class);
+
+    private static final int SESSIONS = 200;
+    private static final int FRAMES_PER_SESSION = 10;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void virtualThreadsKeepInboundThroughputUpWhenPostgresIsSlow() throws Exception {
+        for (int latencyMillis : List.of(5, 20, 50)) {
+            ThreadPoolTaskExecutor pool = springDefaultInboundPool();
+            double poolRate = framesPerSecond(pool, latencyMillis, false);
+            pool.shutdown();
+
+            double virtualRate = framesPerSecond(
+                    new SessionOrderedVirtualThreadExecutor("echo-ws-load-"), latencyMillis, true);
+
+            logger.info("Postgres +{} ms: pool {} frames/s, virtual {} frames/s",
+                    latencyMillis, String.format("%.0f", poolRate), String.format("%.0f", virtualRate));
+        }
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    // Same sizing as the pool Spring's message broker configuration gives clientInboundChannel
+    private static ThreadPoolTaskExecutor springDefaultInboundPool() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Runtime.getRuntime().availableProcessors() * 2);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setThreadNamePrefix("echo-ws-load-pool-");
+        executor.initialize();
+        return executor;
+    }
+
+    private double framesPerSecond(TaskExecutor executor, int latencyMillis, boolean checkOrder)
+            throws InterruptedException {
+        int total = SESSIONS * FRAMES_PER_SESSION;
+        CountDownLatch handled = new CountDownLatch(total);
+        Map<String, AtomicInteger> nextExpected = new ConcurrentHashMap<>();
+        AtomicInteger outOfOrder = new AtomicInteger();
+
+        ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel(executor);
+        MessageHandler handler = message -> {
+            jdbcTemplate.queryForObject("SELECT pg_sleep(?)", Object.class, latencyMillis / 1000.0);
+            String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+            int sequence = (Integer) message.getPayload();
+            if (nextExpected.computeIfAbsent(sessionId, ignored -> new AtomicInteger()).getAndIncrement() != sequence) {
+                outOfOrder.incrementAndGet();
+            }
+            handled.countDown();
+        };
+        channel.subscribe(handler);
+
+        long start = System.nanoTime();
+        for (int sequence = 0; sequence < FRAMES_PER_SESSION; sequence++) {
+            for (int session = 0; session < SESSIONS; session++) {
+                SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+                headers.setSessionId("load-session-" + session);
+                channel.send(MessageBuilder.createMessage(sequence, headers.getMessageHeaders()));
+            }
+        }
+        assertTrue(handled.await(5, TimeUnit.MINUTES), "frames were not all handled");
+        long nanos = System.nanoTime() - start;
+
+        if (checkOrder) {
+            assertEquals(0, outOfOrder.get(), "frames of a session ran out of order");
+        }
+        return total * 1_000_000_000.0 / nanos;
+    }
+}
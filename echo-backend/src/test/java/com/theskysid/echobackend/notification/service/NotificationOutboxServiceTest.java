@@ -0,0 +1,256 @@
+package com.theskysid.echobackend.notification.service;
+
+import com.theskysid.echobackend.notification.entity.OutboxNotification;
+import com.theskysid.echobackend.notification.entity.OutboxNotification.Channel;
+import com.theskysid.echobackend.notification.entity.OutboxNotification.Status;
+import com.theskysid.echobackend.notification.repository.NotificationOutboxRepository;
+import com.theskysid.echobackend.notification.sender.NotificationSender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Claiming, retry, lease expiry and superseding in the notification outbox, with a scripted SMS sender
+ * in place of Twilio (no provider is called).
+ * <p>
+ * Needs the application database, like contextLoads.
+ */
+@SpringBootTest(properties = {
+        "notification.sms.provider=scripted",
+        "notification.poll-interval-ms=50",
+        "notification.retry.initial-backoff-ms=10",
+        "notification.retry.max-backoff-ms=50",
+        "notification.retry.max-attempts=3"
+})
+class NotificationOutboxServiceTest {
+
+    @Autowired
+    private NotificationOutboxService notificationOutboxService;
+
+    @Autowired
+    private NotificationOutboxRepository outboxRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ScriptedSmsSender sender;
+
+    private final List<String> recipients = new ArrayList<>();
+
+    @TestConfiguration
+    static class ScriptedSenderConfig {
+
+        @Bean
+        ScriptedSmsSender scriptedSmsSender() {
+            return new ScriptedSmsSender();
+        }
+    }
+
+    /**
+     * Records every SMS, and fails the first n sends to a recipient when told to.
+     */
+    static class ScriptedSmsSender implements NotificationSender {
+
+        private final Map<String, AtomicInteger> failuresLeft = new ConcurrentHashMap<>();
+        private final Map<String, List<String>> delivered = new ConcurrentHashMap<>();
+
+        @Override
+        public Channel channel() {
+            return Channel.SMS;
+        }
+
+        @Override
+        public void send(String recipient, String subject, String body) {
+            AtomicInteger failures = failuresLeft.get(recipient);
+            if (failures != null && failures.getAndDecrement() > 0) {
+                throw new IllegalStateException("provider unavailable");
+            }
+            delivered.computeIfAbsent(recipient, ignored -> new CopyOnWriteArrayList<>()).add(body);
+        }
+
+        void failFirst(String recipient, int sends) {
+            failuresLeft.put(recipient, new AtomicInteger(sends));
+        }
+
+        List<String> deliveredTo(String recipient) {
+            return delivered.getOrDefault(recipient, List.of());
+        }
+    }
+
+    @AfterEach
+    void deleteRows() {
+        outboxRepository.deleteAll(outboxRepository.findAll().stream()
+                .filter(row -> recipients.contains(row.getRecipient()))
+                .toList());
+    }
+
+    @Test
+    void claimTakesDueRowsAndExpiredLeasesOnly() {
+        String recipient = recipient();
+        // Far enough ahead that the running dispatcher never sees these rows as due
+        LocalDateTime now = LocalDateTime.now().plusYears(10);
+        Long due = save(recipient, Status.PENDING, 0, now.minusMinutes(1)).getId();
+        save(recipient, Status.PENDING, 0, now.plusMinutes(1));
+        Long leaseExpired = save(recipient, Status.SENDING, 1, now.minusSeconds(1)).getId();
+        save(recipient, Status.SENDING, 1, now.plusMinutes(1));
+        save(recipient, Status.SENT, 1, now.minusMinutes(5));
+
+        LocalDateTime leaseUntil = now.plusSeconds(60);
+        List<OutboxNotification> claimed = inTransaction(() ->
+                outboxRepository.claimDue(Channel.SMS.name(), now, leaseUntil, 10));
+
+        claimed.sort(Comparator.comparing(OutboxNotification::getId));
+        assertEquals(List.of(due, leaseExpired), claimed.stream().map(OutboxNotification::getId).toList());
+        for (OutboxNotification row : claimed) {
+            assertEquals(Status.SENDING, row.getStatus());
+            assertEquals(leaseUntil, row.getNextAttemptAt());
+        }
+        assertEquals(1, claimed.get(0).getAttempts());
+        assertEquals(2, claimed.get(1).getAttempts());
+
+        // Both are leased now, so nothing is left to claim until the lease runs out
+        assertTrue(inTransaction(() -> outboxRepository.claimDue(Channel.SMS.name(), now, leaseUntil, 10)).isEmpty());
+        assertEquals(2, inTransaction(() ->
+                outboxRepository.claimDue(Channel.SMS.name(), leaseUntil.plusSeconds(1), leaseUntil.plusSeconds(61), 10)).size());
+    }
+
+    @Test
+    void claimRespectsTheLimit() {
+        String recipient = recipient();
+        LocalDateTime now = LocalDateTime.now().plusYears(10);
+        for (int i = 0; i < 3; i++) {
+            save(recipient, Status.PENDING, 0, now.minusMinutes(1));
+        }
+
+        assertEquals(2, inTransaction(() ->
+                outboxRepository.claimDue(Channel.SMS.name(), now, now.plusSeconds(60), 2)).size());
+    }
+
+    @Test
+    void failedSendIsRetriedUntilItSucceeds() throws InterruptedException {
+        String recipient = recipient();
+        sender.failFirst(recipient, 2);
+
+        Long id = enqueue(recipient, "code 1");
+
+        OutboxNotification row = awaitStatus(id, Status.SENT);
+        assertEquals(3, row.getAttempts());
+        assertNull(row.getBody());
+        assertEquals(List.of("code 1"), sender.deliveredTo(recipient));
+    }
+
+    @Test
+    void sendIsGivenUpAfterMaxAttempts() throws InterruptedException {
+        String recipient = recipient();
+        sender.failFirst(recipient, 10);
+
+        Long id = enqueue(recipient, "code 1");
+
+        OutboxNotification row = awaitStatus(id, Status.FAILED);
+        assertEquals(3, row.getAttempts());
+        assertTrue(row.getLastError().contains("provider unavailable"));
+        assertNull(row.getBody());
+        assertTrue(sender.deliveredTo(recipient).isEmpty());
+    }
+
+    @Test
+    void rowOfADeadWorkerIsSentOnceItsLeaseExpires() throws InterruptedException {
+        String recipient = recipient();
+        Long id = save(recipient, Status.SENDING, 1, LocalDateTime.now().minusSeconds(1)).getId();
+
+        OutboxNotification row = awaitStatus(id, Status.SENT);
+        assertEquals(2, row.getAttempts());
+        assertEquals(List.of("body"), sender.deliveredTo(recipient));
+    }
+
+    @Test
+    void newOtpSupersedesOneStillQueued() throws InterruptedException {
+        String recipient = recipient();
+        // Both in one transaction, so the dispatcher cannot send the first before it is superseded
+        List<Long> ids = inTransaction(() -> {
+            notificationOutboxService.enqueueReplacing(Channel.SMS, recipient, null, "code 1", null);
+            notificationOutboxService.enqueueReplacing(Channel.SMS, recipient, null, "code 2", null);
+            return outboxRepository.findAll().stream()
+                    .filter(row -> recipient.equals(row.getRecipient()))
+                    .map(OutboxNotification::getId)
+                    .sorted()
+                    .toList();
+        });
+
+        awaitStatus(ids.get(1), Status.SENT);
+        OutboxNotification superseded = outboxRepository.findById(ids.get(0)).orElseThrow();
+        assertEquals(Status.FAILED, superseded.getStatus());
+        assertEquals("Superseded", superseded.getLastError());
+        assertEquals(List.of("code 2"), sender.deliveredTo(recipient));
+    }
+
+    // ── Helpers ─────────────────────────────────────────────────────
+
+    private String recipient() {
+        String recipient = "+1555" + UUID.randomUUID().toString().replace("-", "").substring(0, 10);
+        recipients.add(recipient);
+        return recipient;
+    }
+
+    private Long enqueue(String recipient, String body) {
+        return inTransaction(() -> {
+            notificationOutboxService.enqueue(Channel.SMS, recipient, null, body, null);
+            return outboxRepository.findAll().stream()
+                    .filter(row -> recipient.equals(row.getRecipient()))
+                    .findFirst()
+                    .orElseThrow()
+                    .getId();
+        });
+    }
+
+    private OutboxNotification save(String recipient, Status status, int attempts, LocalDateTime nextAttemptAt) {
+        return outboxRepository.save(OutboxNotification.builder()
+                .channel(Channel.SMS)
+                .status(status)
+                .recipient(recipient)
+                .body("body")
+                .attempts(attempts)
+                .nextAttemptAt(nextAttemptAt)
+                .createdAt(LocalDateTime.now())
+                .build());
+    }
+
+    private <T> T inTransaction(java.util.function.Supplier<T> work) {
+        return new TransactionTemplate(transactionManager).execute(status -> work.get());
+    }
+
+    private OutboxNotification awaitStatus(Long id, Status status) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            OutboxNotification row = outboxRepository.findById(id).orElseThrow();
+            if (row.getStatus() == status) {
+                return row;
+            }
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("notification " + id + " is " + row.getStatus() + ", expected " + status);
+            }
+            Thread.sleep(20);
+        }
+    }
+}
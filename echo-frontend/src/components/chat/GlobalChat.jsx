@@ -14,7 +14,10 @@ const GlobalChat = ({ chat, ui, layout }) => {
         setShowEmojiPicker,
         isTyping,
         formatTime,
-        messagesEndRef
+        messagesEndRef,
+        hasOlderMessages,
+        loadingOlderMessages,
+        loadOlderMessages
     } = chat || {};
 
     const { username, currentUser } = ui || {};
@@ -72,6 +75,16 @@ const GlobalChat = ({ chat, ui, layout }) => {
             </div>
 
             <div className="messages-container">
+                {hasOlderMessages && loadOlderMessages && (
+                    <button
+                        type="button"
+                        onClick={loadOlderMessages}
+                        disabled={loadingOlderMessages}
+                        className="load-older-btn"
+                    >
+                        {loadingOlderMessages ? 'Loading…' : 'Load earlier messages'}
+                    </button>
+                )}
                 {messages.map((msg) => (
                     <div key={msg.id} className={`message ${msg.type.toLowerCase()}`}>
                         {msg.type === 'JOIN' && (
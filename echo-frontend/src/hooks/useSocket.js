@@ -3,6 +3,9 @@ import SockJS from 'sockjs-client';
 import { Stomp } from '@stomp/stompjs';
 import { authService, api } from '../services/authService';
 
+// Page size for GET /api/messages/global; older pages load on demand
+const GLOBAL_HISTORY_PAGE_SIZE = 100;
+
 const useSocket = ({
     username,
     userColor,
@@ -18,6 +21,8 @@ const useSocket = ({
     const [onlineUsers, setOnlineUsers] = useState(new Set());
     const [showEmojiPicker, setShowEmojiPicker] = useState(false);
     const [isTyping, setIsTyping] = useState('');
+    const [hasOlderMessages, setHasOlderMessages] = useState(false);
+    const [loadingOlderMessages, setLoadingOlderMessages] = useState(false);
 
     const stompClient = useRef(null);
     const socketRef = useRef(null);
@@ -26,12 +31,18 @@ const useSocket = ({
     const reconnectTimeoutRef = useRef(null);
     const isMountedRef = useRef(true);
     const isInitialScrollRef = useRef(true);
+    const skipNextScrollRef = useRef(false);
 
     const scrollToBottom = (behavior = "smooth") => {
         messagesEndRef.current?.scrollIntoView({ behavior });
     };
 
     useEffect(() => {
+        if (skipNextScrollRef.current) {
+            // Older history was prepended; stay where the reader is
+            skipNextScrollRef.current = false;
+            return;
+        }
         if (isInitialScrollRef.current && messages.length > 0) {
             isInitialScrollRef.current = false;
             scrollToBottom("auto");
@@ -169,6 +180,38 @@ const useSocket = ({
                     if (setRefreshTrigger) setRefreshTrigger(prev => prev + 1);
                 });
 
+                // Global chat messages the server could not save
+                stompClient.current.subscribe(`/user/${username}/queue/errors`, (msg) => {
+                    const event = JSON.parse(msg.body);
+                    if (event?.error) {
+                        pushNotification(event.error);
+                    }
+                });
+
+                // Friend-scoped presence (presence.scope=FRIENDS): a snapshot of online friends after
+                // joining, then batched online/offline changes
+                stompClient.current.subscribe(`/user/${username}/queue/presence`, (msg) => {
+                    const delta = JSON.parse(msg.body);
+                    const cameOnline = delta?.online || [];
+                    const wentOffline = delta?.offline || [];
+
+                    if (delta?.snapshot) {
+                        setOnlineUsers(new Set([...cameOnline, username]));
+                        return;
+                    }
+
+                    setOnlineUsers(prev => {
+                        const newUsers = new Set(prev);
+                        cameOnline.forEach(user => newUsers.add(user));
+                        wentOffline.forEach(user => newUsers.delete(user));
+                        return newUsers;
+                    });
+
+                    cameOnline
+                        .filter(user => user !== username)
+                        .forEach(user => pushNotification(`${user} is online now`));
+                });
+
                 stompClient.current.send("/app/chat.addUser", {}, JSON.stringify({
                     sender: username,
                     type: 'JOIN',
@@ -190,10 +233,11 @@ const useSocket = ({
                         console.error('Error fetching initial online users:', error);
                     });
 
-                api.get('/api/messages/global')
+                api.get('/api/messages/global', { params: { limit: GLOBAL_HISTORY_PAGE_SIZE } })
                     .then(response => {
                         if (isMountedRef.current && Array.isArray(response.data)) {
                             setMessages(response.data);
+                            setHasOlderMessages(response.data.length === GLOBAL_HISTORY_PAGE_SIZE);
                         }
                     })
                     .catch(error => {
@@ -219,6 +263,28 @@ const useSocket = ({
         };
     }, [username, userColor, loadFriendsData, pushNotification, friendsListRef, dmHandlers, setUnreadDms, setRefreshTrigger]);
 
+    const loadOlderMessages = async () => {
+        // History rows are at the front, so the first saved CHAT message is the oldest one loaded
+        const oldest = messages.find(msg => msg.type === 'CHAT' && Number.isInteger(msg.id));
+        if (!oldest || loadingOlderMessages) return;
+
+        setLoadingOlderMessages(true);
+        try {
+            const response = await api.get('/api/messages/global', {
+                params: { before: oldest.id, limit: GLOBAL_HISTORY_PAGE_SIZE }
+            });
+            if (isMountedRef.current && Array.isArray(response.data)) {
+                skipNextScrollRef.current = response.data.length > 0;
+                setMessages(prev => [...response.data, ...prev]);
+                setHasOlderMessages(response.data.length === GLOBAL_HISTORY_PAGE_SIZE);
+            }
+        } catch (error) {
+            console.error('Error fetching older global chat history:', error);
+        } finally {
+            if (isMountedRef.current) setLoadingOlderMessages(false);
+        }
+    };
+
     const sendMessage = (e) => {
         e.preventDefault();
         if (message.trim() && stompClient.current && stompClient.current.connected) {
@@ -265,7 +331,10 @@ const useSocket = ({
         showEmojiPicker,
         setShowEmojiPicker,
         addEmoji,
-        messagesEndRef
+        messagesEndRef,
+        hasOlderMessages,
+        loadingOlderMessages,
+        loadOlderMessages
     };
 };
 
@@ -155,7 +155,10 @@ const ChatArea = () => {
         showEmojiPicker,
         setShowEmojiPicker,
         addEmoji,
-        messagesEndRef
+        messagesEndRef,
+        hasOlderMessages,
+        loadingOlderMessages,
+        loadOlderMessages
     } = useSocket({
         username,
         userColor,
@@ -233,6 +236,9 @@ const ChatArea = () => {
         setShowEmojiPicker,
         formatTime,
         messagesEndRef,
+        hasOlderMessages,
+        loadingOlderMessages,
+        loadOlderMessages,
         onlineUsers,
         openChats,
         setOpenChats,
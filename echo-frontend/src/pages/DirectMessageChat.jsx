@@ -78,6 +78,12 @@ const DirectMessageChat = ({
             messageIdsRef.current.add(messageId);
             setMessages((prev) => [...prev, incomingMsg]);
             setIsTyping(false);
+
+            // Seen as it arrived, so keep the server-side unread count at zero
+            if (incomingMsg.senderUsername === recipientUsername) {
+                conversationService.markRead(incomingMsg.conversationId)
+                    .catch((err) => console.error('Error marking conversation as read:', err));
+            }
         }
     }, [conversation?.id, currentUser, recipientUsername]);
 
@@ -110,6 +116,9 @@ const DirectMessageChat = ({
                 });
 
                 setMessages(sortedHistory);
+
+                conversationService.markRead(conv.id)
+                    .catch((err) => console.error('Error marking conversation as read:', err));
             } catch (err) {
                 console.error('Error initializing DM conversation:', err);
                 if (isMounted) {
@@ -6,6 +6,10 @@ const FindFriendsModal = ({ onClose, onFriendsChange, refreshTrigger }) => {
     const [activeTab, setActiveTab] = useState('search'); // 'search' | 'incoming' | 'rejected'
     const [searchQuery, setSearchQuery] = useState('');
     const [searchResults, setSearchResults] = useState([]);
+    // Query the shown results belong to, and the cursor for its next page
+    const [searchedQuery, setSearchedQuery] = useState('');
+    const [searchCursor, setSearchCursor] = useState(null);
+    const [isLoadingMore, setIsLoadingMore] = useState(false);
     const [incomingRequests, setIncomingRequests] = useState([]);
     const [rejectedRequests, setRejectedRequests] = useState([]);
     const [isLoading, setIsLoading] = useState(false);
@@ -45,8 +49,11 @@ const FindFriendsModal = ({ onClose, onFriendsChange, refreshTrigger }) => {
         }
         setIsLoading(true);
         try {
-            const results = await friendService.searchUsers(searchQuery.trim());
-            setSearchResults(results || []);
+            const query = searchQuery.trim();
+            const page = await friendService.searchUsers(query);
+            setSearchResults(page.users || []);
+            setSearchedQuery(query);
+            setSearchCursor(page.nextCursor);
         } catch (err) {
             console.error('Search failed:', err);
             const msg = err.response?.data?.error || err.response?.data?.message || err.message || 'Search failed';
@@ -56,6 +63,22 @@ const FindFriendsModal = ({ onClose, onFriendsChange, refreshTrigger }) => {
         }
     };
 
+    const handleLoadMore = async () => {
+        if (!searchCursor || isLoadingMore) return;
+        setIsLoadingMore(true);
+        try {
+            const page = await friendService.searchUsers(searchedQuery, searchCursor);
+            setSearchResults(prev => [...prev, ...(page.users || [])]);
+            setSearchCursor(page.nextCursor);
+        } catch (err) {
+            console.error('Loading more results failed:', err);
+            const msg = err.response?.data?.error || err.response?.data?.message || err.message || 'Search failed';
+            alert(msg);
+        } finally {
+            setIsLoadingMore(false);
+        }
+    };
+
     const handleSendRequest = async (username) => {
         try {
             await friendService.sendRequest(username);
@@ -218,6 +241,14 @@ const FindFriendsModal = ({ onClose, onFriendsChange, refreshTrigger }) => {
                                     </div>
                                 ))
                             )}
+
+                            {searchCursor && (
+                                <div className="ffm-load-more">
+                                    <button onClick={handleLoadMore} disabled={isLoadingMore} className="ffm-btn-refresh">
+                                        {isLoadingMore ? '…' : 'Load more'}
+                                    </button>
+                                </div>
+                            )}
                         </div>
                     )}
 
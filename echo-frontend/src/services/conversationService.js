@@ -25,6 +25,14 @@ export const conversationService = {
         return response.data;
     },
 
+    /**
+     * Reset the current user's unread count for a conversation
+     */
+    markRead: async (conversationId) => {
+        const response = await api.post(`/api/conversations/${conversationId}/read`);
+        return response.data;
+    },
+
     /**
      * Update retention policy (SIX_HOURS, ONE_DAY, SEVEN_DAYS)
      */
@@ -26,11 +26,17 @@ export const friendService = {
     },
 
     /**
-     * Search users by username query
+     * Search users by username query. Pass the previous page's nextCursor to continue;
+     * nextCursor is null on the last page.
      */
-    searchUsers: async (query) => {
-        const response = await api.get(`/api/friends/search?q=${encodeURIComponent(query)}`);
-        return response.data;
+    searchUsers: async (query, cursor = null) => {
+        const response = await api.get('/api/friends/search', {
+            params: cursor ? { q: query, cursor } : { q: query }
+        });
+        return {
+            users: response.data,
+            nextCursor: response.headers['x-next-cursor'] || null
+        };
     },
 
     /**